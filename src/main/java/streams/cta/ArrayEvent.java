@@ -0,0 +1,78 @@
+package streams.cta;
+
+import stream.Data;
+import streams.cta.io.Names;
+
+import java.io.Serializable;
+
+/**
+ * The typed form of an array event. All telescope data is held in {@link TelescopeEvent}s which are
+ * stored under the single key {@link #KEY}. The {@link streams.cta.cleaning.TailCut}, the
+ * {@link streams.cta.features.Hillas} and the {@link streams.cta.stereo.Stereo} processors work on
+ * it directly when the item contains it. No per telescope keys have to be built, split or merged.
+ *
+ *     <streams.cta.CreateArrayEvent />
+ *     <streams.cta.cleaning.TailCut />
+ *     <streams.cta.features.Hillas />
+ *     <streams.cta.stereo.Stereo />
+ *     <streams.cta.ArrayEventKeys />
+ *     <streams.cta.io.CSVWriter url="file:./features.csv" keys="telescope:*:shower:*,stereo:*" />
+ *
+ * The {@link ArrayEventKeys} processor makes the typed values available under the old keys again for
+ * processors which only know about keys.
+ */
+public final class ArrayEvent implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String KEY = "@array_event";
+
+    /**
+     * The triggered telescopes in the order of the 'array:triggered_telescopes' key.
+     */
+    public final TelescopeEvent[] telescopes;
+
+    public boolean hasStereo = false;
+    public double directionX = Double.NaN;
+    public double directionY = Double.NaN;
+    public double directionZ = Double.NaN;
+    public double impactX = Double.NaN;
+    public double impactY = Double.NaN;
+
+    public ArrayEvent(TelescopeEvent[] telescopes) {
+        this.telescopes = telescopes;
+    }
+
+    /**
+     * @return the telescope with the given id or null if it is not part of this event
+     */
+    public TelescopeEvent telescope(int telescopeId) {
+        for (TelescopeEvent telescope : telescopes) {
+            if (telescope.telescopeId == telescopeId) {
+                return telescope;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the typed event stored in the item or null if there is none
+     */
+    public static ArrayEvent get(Data item) {
+        Serializable value = item.get(KEY);
+        return value instanceof ArrayEvent ? (ArrayEvent) value : null;
+    }
+
+    /**
+     * Create the typed event from the triggered telescopes and their 'telescope:id:raw:photons' keys.
+     */
+    public static ArrayEvent fromKeys(Data item) {
+        int[] triggered = (int[]) item.get(Names.TRIGGERED_TELESCOPE_IDS);
+        TelescopeEvent[] telescopes = new TelescopeEvent[triggered.length];
+        for (int i = 0; i < triggered.length; i++) {
+            int id = triggered[i];
+            telescopes[i] = new TelescopeEvent(id, (double[]) item.get("telescope:" + id + ":raw:photons"));
+        }
+        return new ArrayEvent(telescopes);
+    }
+}
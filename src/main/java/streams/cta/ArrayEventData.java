@@ -0,0 +1,288 @@
+package streams.cta;
+
+import stream.Data;
+import stream.data.DataFactory;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A data item which shows the values of the {@link ArrayEvent} in the wrapped item under the keys
+ * used before the typed event existed. For example 'telescope:7:shower:width' returns the width of
+ * telescope 7 and 'stereo:estimated_impact_position:x' the estimated impact position.
+ *
+ * Nothing is copied. Values are read from the typed event when they are requested. The keys are only
+ * built when the keys of the item are iterated. All other keys are those of the wrapped item.
+ * Putting or removing one of the typed keys only changes what this item shows. The typed event
+ * itself is not changed.
+ */
+final class ArrayEventData extends AbstractMap<String, Serializable> implements Data {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String TELESCOPE_PREFIX = "telescope:";
+    private static final String STEREO_PREFIX = "stereo:";
+
+    //the keys of a telescope after the 'telescope:id:' prefix. in the order the old processors wrote them.
+    private static final String[] TELESCOPE_KEYS = {
+            "raw:photons", "shower", "shower:number_of_pixel", "shower:size", "shower:total_photons",
+            "shower:cog:x", "shower:cog:y", "shower:width", "shower:length", "shower:delta", "shower:psi",
+            "shower:skewness", "shower:kurtosis", "shower:phi", "shower:miss", "shower:r"
+    };
+
+    private static final String[] STEREO_KEYS = {
+            "stereo:estimated_direction", "stereo:estimated_direction:x", "stereo:estimated_direction:y",
+            "stereo:estimated_direction:z", "stereo:estimated_impact_position",
+            "stereo:estimated_impact_position:x", "stereo:estimated_impact_position:y"
+    };
+
+    private final Data item;
+    private final ArrayEvent event;
+
+    //typed keys which have been put or removed
+    private final Map<String, Serializable> changed = new HashMap<>();
+    private final Set<String> removed = new HashSet<>();
+
+    ArrayEventData(Data item, ArrayEvent event) {
+        this.item = item;
+        this.event = event;
+    }
+
+    /**
+     * @return the value of the typed event for the key or null if the key is not one of its keys
+     */
+    private Serializable typedValue(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        String k = (String) key;
+        if (k.startsWith(TELESCOPE_PREFIX)) {
+            int end = k.indexOf(':', TELESCOPE_PREFIX.length());
+            if (end < 0) {
+                return null;
+            }
+            int id;
+            try {
+                id = Integer.parseInt(k.substring(TELESCOPE_PREFIX.length(), end));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            TelescopeEvent telescope = event.telescope(id);
+            return telescope == null ? null : telescopeValue(telescope, k.substring(end + 1));
+        }
+        if (k.startsWith(STEREO_PREFIX)) {
+            return stereoValue(k);
+        }
+        return null;
+    }
+
+    private static Serializable telescopeValue(TelescopeEvent t, String key) {
+        switch (key) {
+            case "raw:photons":
+                return t.photons;
+            case "shower":
+                return t.shower;
+            case "shower:number_of_pixel":
+                return t.shower == null ? null : t.shower.size();
+        }
+        if (!t.hasHillas) {
+            return null;
+        }
+        switch (key) {
+            case "shower:size":
+            case "shower:total_photons":
+                return t.size;
+            case "shower:cog:x":
+                return t.cogX;
+            case "shower:cog:y":
+                return t.cogY;
+            case "shower:width":
+                return t.width;
+            case "shower:length":
+                return t.length;
+            case "shower:delta":
+            case "shower:psi":
+                return t.delta;
+            case "shower:skewness":
+                return t.skewness;
+            case "shower:kurtosis":
+                return t.kurtosis;
+            case "shower:phi":
+                return t.phi;
+            case "shower:miss":
+                return t.miss;
+            case "shower:r":
+                return t.r;
+            default:
+                return null;
+        }
+    }
+
+    private Serializable stereoValue(String key) {
+        if (!event.hasStereo) {
+            return null;
+        }
+        switch (key) {
+            case "stereo:estimated_direction":
+                return new double[]{event.directionX, event.directionY, event.directionZ};
+            case "stereo:estimated_direction:x":
+                return event.directionX;
+            case "stereo:estimated_direction:y":
+                return event.directionY;
+            case "stereo:estimated_direction:z":
+                return event.directionZ;
+            case "stereo:estimated_impact_position":
+                return new double[]{event.impactX, event.impactY};
+            case "stereo:estimated_impact_position:x":
+                return event.impactX;
+            case "stereo:estimated_impact_position:y":
+                return event.impactY;
+            default:
+                return null;
+        }
+    }
+
+    private boolean isTyped(Object key) {
+        return changed.containsKey(key) || removed.contains(key) || typedValue(key) != null;
+    }
+
+    @Override
+    public Serializable get(Object key) {
+        if (changed.containsKey(key)) {
+            return changed.get(key);
+        }
+        if (removed.contains(key)) {
+            return null;
+        }
+        Serializable value = typedValue(key);
+        return value != null ? value : item.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (changed.containsKey(key)) {
+            return true;
+        }
+        if (removed.contains(key)) {
+            return false;
+        }
+        return typedValue(key) != null || item.containsKey(key);
+    }
+
+    @Override
+    public Serializable put(String key, Serializable value) {
+        if (isTyped(key)) {
+            Serializable previous = get(key);
+            changed.put(key, value);
+            removed.remove(key);
+            return previous;
+        }
+        return item.put(key, value);
+    }
+
+    @Override
+    public Serializable remove(Object key) {
+        if (isTyped(key)) {
+            Serializable previous = get(key);
+            changed.remove(key);
+            removed.add((String) key);
+            item.remove(key);
+            return previous;
+        }
+        return item.remove(key);
+    }
+
+    @Override
+    public void clear() {
+        for (String key : keys()) {
+            remove(key);
+        }
+    }
+
+    /**
+     * Build the list of all keys. The keys of the wrapped item come first, the typed keys last.
+     */
+    private List<String> keys() {
+        List<String> keys = new ArrayList<>();
+        for (String key : item.keySet()) {
+            if (!removed.contains(key) && typedValue(key) == null && !changed.containsKey(key)) {
+                keys.add(key);
+            }
+        }
+        for (TelescopeEvent telescope : event.telescopes) {
+            for (String suffix : TELESCOPE_KEYS) {
+                if (telescopeValue(telescope, suffix) != null) {
+                    addTypedKey(keys, TELESCOPE_PREFIX + telescope.telescopeId + ":" + suffix);
+                }
+            }
+        }
+        if (event.hasStereo) {
+            for (String key : STEREO_KEYS) {
+                addTypedKey(keys, key);
+            }
+        }
+        for (String key : changed.keySet()) {
+            if (typedValue(key) == null) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    private void addTypedKey(List<String> keys, String key) {
+        if (!removed.contains(key)) {
+            keys.add(key);
+        }
+    }
+
+    @Override
+    public Data createCopy() {
+        return DataFactory.create(this);
+    }
+
+    @Override
+    public Set<Entry<String, Serializable>> entrySet() {
+        return new AbstractSet<Entry<String, Serializable>>() {
+            @Override
+            public Iterator<Entry<String, Serializable>> iterator() {
+                Iterator<String> keys = keys().iterator();
+                return new Iterator<Entry<String, Serializable>>() {
+                    private String last;
+
+                    @Override
+                    public boolean hasNext() {
+                        return keys.hasNext();
+                    }
+
+                    @Override
+                    public Entry<String, Serializable> next() {
+                        last = keys.next();
+                        return new SimpleImmutableEntry<>(last, get(last));
+                    }
+
+                    @Override
+                    public void remove() {
+                        if (last == null) {
+                            throw new IllegalStateException();
+                        }
+                        ArrayEventData.this.remove(last);
+                        last = null;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return keys().size();
+            }
+        };
+    }
+}
@@ -0,0 +1,23 @@
+package streams.cta;
+
+import stream.Data;
+import stream.Processor;
+
+/**
+ * Shows the values of the typed {@link ArrayEvent} under the old per telescope and stereo keys, so
+ * processors like the CSVWriter or RemoveKeys can be used on them. The item is wrapped in a view
+ * which reads the values from the typed event when they are requested. Nothing is copied.
+ *
+ * Items without a typed event are passed on unchanged.
+ */
+public class ArrayEventKeys implements Processor {
+
+    @Override
+    public Data process(Data item) {
+        ArrayEvent event = ArrayEvent.get(item);
+        if (event == null || item instanceof ArrayEventData) {
+            return item;
+        }
+        return new ArrayEventData(item, event);
+    }
+}
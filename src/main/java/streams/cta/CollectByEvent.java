@@ -2,13 +2,17 @@ package streams.cta;
 
 import com.google.common.collect.Lists;
 import com.google.common.primitives.Ints;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 
 import stream.Data;
 import stream.Keys;
-import stream.Processor;
+import stream.ProcessContext;
+import stream.ProcessorList;
 import stream.annotations.Parameter;
 import stream.data.DataFactory;
 
@@ -18,17 +22,87 @@ import stream.data.DataFactory;
  *
  * This is useful when reading in per telescope image feature data from a CSV file or something
  * similar.
+ *
+ * By default the rows of one event have to arrive one after another. An event is complete when the
+ * first row of the next event arrives. With keyed="true" the rows may arrive in any order, e.g. from
+ * several copies of a process. The events are then assembled by id. An event is complete once it
+ * has as many rows as given by 'array:num_triggered_telescopes'. Events which are not complete are
+ * emitted anyway when
+ *
+ *  - timeout milliseconds have passed since their first row arrived,
+ *  - watermark more rows have arrived since their first row or
+ *  - more than maxInFlight events are being assembled. The oldest events are evicted.
+ *
+ * The timeout is checked whenever a row arrives. With emitIncomplete="false" these events are
+ * dropped instead.
+ *
+ * The collected events are passed to the processors nested in this processor. The events still
+ * being assembled when the process finishes are passed to them as well. Processors following this
+ * one only see the events completed by a row, so processors that should see every event have to be
+ * nested:
+ *
+ *     <streams.cta.CollectByEvent keyed="true" timeout="1000">
+ *         <streams.cta.stereo.Stereo />
+ *         <streams.cta.io.CSVWriter url="file:./events.csv" />
+ *     </streams.cta.CollectByEvent>
+ *
+ * The number of complete, expired, evicted and flushed events and the time from the first row of an
+ * event to its assembly are logged when the process finishes.
  */
-public class CollectByEvent implements Processor {
+public class CollectByEvent extends ProcessorList {
+
+    static Logger log = LoggerFactory.getLogger(CollectByEvent.class);
 
     @Parameter(description = "Save collected telescopes under this key.", required = false)
     String key = "unique_event_id";
 
+    @Parameter(description = "Assemble the events by id. The rows of the events may arrive in any order.",
+            defaultValue = "false", required = false)
+    boolean keyed = false;
+
+    @Parameter(description = "Emit an event this many milliseconds after its first row arrived, even " +
+            "if it is not complete. 0 disables the timeout.", defaultValue = "0", required = false)
+    long timeout = 0;
+
+    @Parameter(description = "Emit an event once this many rows arrived after its first row, even " +
+            "if it is not complete. 0 disables the watermark.", defaultValue = "0", required = false)
+    long watermark = 0;
+
+    @Parameter(description = "Maximum number of events being assembled at once. The oldest events " +
+            "are evicted when more events are started.", defaultValue = "10000", required = false)
+    int maxInFlight = 10000;
+
+    @Parameter(description = "Emit the events which expired, were evicted or are left when the process " +
+            "finishes. Otherwise they are dropped.", defaultValue = "true", required = false)
+    boolean emitIncomplete = true;
+
     private Integer previousId = null;
     private List<Data> items = new ArrayList<>();
 
+    //state of the keyed assembly
+    private final PartialEvents partials = new PartialEvents();
+    private long rows = 0;
+    private long completeEvents = 0;
+    private long expiredEvents = 0;
+    private long evictedEvents = 0;
+    private long flushedEvents = 0;
+    private long emittedEvents = 0;
+    private long totalLatency = 0;
+    private long maxLatency = 0;
+
+    @Override
+    public void init(ProcessContext context) throws Exception {
+        super.init(context);
+        if (keyed && maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight has to be at least 1");
+        }
+    }
+
     @Override
     public Data process(Data inputItem) {
+        if (keyed) {
+            return processKeyed(inputItem);
+        }
         if (previousId == null) {
             previousId = (Integer) inputItem.get(key);
         }
@@ -37,26 +111,7 @@ public class CollectByEvent implements Processor {
             items.add(inputItem);
             return null;
         } else {
-            Data outputItem = DataFactory.create();
-            List<Integer> triggeredTelescopes = Lists.newArrayList();
-
-            for (Data telescopeData : items) {
-                int telescopeId = (int) telescopeData.get("telescope:id");
-                triggeredTelescopes.add(telescopeId);
-
-                //add new data using the prefix telescope:<id>:
-                String prefix = "telescope:" + telescopeId + ":";
-                for (String key : Keys.select(telescopeData, "shower:*,prediction:*,type:*")) {
-                    outputItem.put(prefix + key, telescopeData.get(key));
-                }
-            }
-
-            //add common data stored in one of the old items.
-            Data oldItem = items.get(0);
-            for (String key : Keys.select(oldItem, "mc:*,array:*,event_id,run_id,unique_event_id,source_file")) {
-                outputItem.put(key, oldItem.get(key));
-            }
-            outputItem.put("array:triggered_telescopes", Ints.toArray(triggeredTelescopes));
+            Data outputItem = collect(items);
 
             //clear the list of items and add the next on which has already been recieved
             items.clear();
@@ -64,7 +119,182 @@ public class CollectByEvent implements Processor {
 
             //set the new id to compare new items to
             previousId = id;
-            return outputItem;
+            return super.process(outputItem);
         }
     }
+
+    private Data processKeyed(Data inputItem) {
+        Serializable value = inputItem.get(key);
+        if (!(value instanceof Number)) {
+            throw new IllegalArgumentException("Item has no numeric value for the key " + key);
+        }
+        long id = ((Number) value).longValue();
+        long now = System.nanoTime();
+
+        PartialEvents.Partial partial = partials.get(id);
+        if (partial == null) {
+            partial = partials.start(id, now, rows);
+        }
+        rows++;
+        partial.rows.add(inputItem);
+        if (partial.expected < 0) {
+            Serializable expected = inputItem.get("array:num_triggered_telescopes");
+            if (expected instanceof Number) {
+                partial.expected = ((Number) expected).intValue();
+            }
+        }
+
+        Data result = null;
+        if (partial.isComplete()) {
+            partials.remove(partial);
+            completeEvents++;
+            result = emit(partial, now);
+        }
+        expire(now);
+        return result;
+    }
+
+    /**
+     * Emit the oldest events while there are too many or they are too old.
+     */
+    private void expire(long now) {
+        PartialEvents.Partial oldest = partials.oldest();
+        while (oldest != null) {
+            if (partials.size() > maxInFlight) {
+                evictedEvents++;
+            } else if ((timeout > 0 && now - oldest.started >= timeout * 1000000L)
+                    || (watermark > 0 && rows - oldest.firstRow > watermark)) {
+                expiredEvents++;
+            } else {
+                break;
+            }
+            partials.remove(oldest);
+            if (emitIncomplete) {
+                emit(oldest, now);
+            }
+            oldest = partials.oldest();
+        }
+    }
+
+    private Data emit(PartialEvents.Partial partial, long now) {
+        long latency = now - partial.started;
+        totalLatency += latency;
+        maxLatency = Math.max(maxLatency, latency);
+        emittedEvents++;
+        return super.process(collect(partial.rows));
+    }
+
+    private static Data collect(List<Data> items) {
+        Data outputItem = DataFactory.create();
+        List<Integer> triggeredTelescopes = Lists.newArrayList();
+
+        for (Data telescopeData : items) {
+            int telescopeId = (int) telescopeData.get("telescope:id");
+            triggeredTelescopes.add(telescopeId);
+
+            //add new data using the prefix telescope:<id>:
+            String prefix = "telescope:" + telescopeId + ":";
+            for (String key : Keys.select(telescopeData, "shower:*,prediction:*,type:*")) {
+                outputItem.put(prefix + key, telescopeData.get(key));
+            }
+        }
+
+        //add common data stored in one of the old items.
+        Data oldItem = items.get(0);
+        for (String key : Keys.select(oldItem, "mc:*,array:*,event_id,run_id,unique_event_id,source_file")) {
+            outputItem.put(key, oldItem.get(key));
+        }
+        outputItem.put("array:triggered_telescopes", Ints.toArray(triggeredTelescopes));
+        return outputItem;
+    }
+
+    /**
+     * Pass the events still being assembled to the nested processors.
+     */
+    @Override
+    public void finish() throws Exception {
+        if (!items.isEmpty()) {
+            super.process(collect(items));
+            items.clear();
+            previousId = null;
+        }
+
+        long now = System.nanoTime();
+        for (PartialEvents.Partial partial = partials.oldest(); partial != null; partial = partials.oldest()) {
+            partials.remove(partial);
+            flushedEvents++;
+            if (emitIncomplete) {
+                emit(partial, now);
+            }
+        }
+
+        if (keyed) {
+            log.info("Assembled {} events from {} rows. {} complete, {} expired, {} evicted, {} flushed at finish. " +
+                            "Latency mean {} ms, max {} ms.",
+                    emittedEvents, rows, completeEvents, expiredEvents, evictedEvents, flushedEvents,
+                    getMeanLatencyMillis(), getMaxLatencyMillis());
+        }
+        super.finish();
+    }
+
+    @Override
+    public void resetState() throws Exception {
+        super.resetState();
+        previousId = null;
+        items.clear();
+        for (PartialEvents.Partial partial = partials.oldest(); partial != null; partial = partials.oldest()) {
+            partials.remove(partial);
+        }
+    }
+
+    public long getCompleteEvents() {
+        return completeEvents;
+    }
+
+    public long getExpiredEvents() {
+        return expiredEvents;
+    }
+
+    public long getEvictedEvents() {
+        return evictedEvents;
+    }
+
+    public long getFlushedEvents() {
+        return flushedEvents;
+    }
+
+    /**
+     * @return the mean time in milliseconds from the first row of an event until it was emitted
+     */
+    public double getMeanLatencyMillis() {
+        return emittedEvents == 0 ? 0 : totalLatency / 1e6 / emittedEvents;
+    }
+
+    public double getMaxLatencyMillis() {
+        return maxLatency / 1e6;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+    public void setKeyed(boolean keyed) {
+        this.keyed = keyed;
+    }
+
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    public void setWatermark(long watermark) {
+        this.watermark = watermark;
+    }
+
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    public void setEmitIncomplete(boolean emitIncomplete) {
+        this.emitIncomplete = emitIncomplete;
+    }
 }
@@ -0,0 +1,32 @@
+package streams.cta;
+
+import stream.Data;
+import stream.Processor;
+import stream.annotations.Parameter;
+
+/**
+ * Creates the typed {@link ArrayEvent} from the images of the triggered telescopes and stores it
+ * under {@link ArrayEvent#KEY}. The 'telescope:id:raw:photons' keys are removed from the item since
+ * the images are part of the typed event now. The {@link ArrayEventKeys} processor shows them again.
+ */
+public class CreateArrayEvent implements Processor {
+
+    @Parameter(required = false, description = "Remove the image keys from the item.", defaultValue = "true")
+    boolean removeImages = true;
+
+    @Override
+    public Data process(Data item) {
+        ArrayEvent event = ArrayEvent.fromKeys(item);
+        if (removeImages) {
+            for (TelescopeEvent telescope : event.telescopes) {
+                item.remove("telescope:" + telescope.telescopeId + ":raw:photons");
+            }
+        }
+        item.put(ArrayEvent.KEY, event);
+        return item;
+    }
+
+    public void setRemoveImages(boolean removeImages) {
+        this.removeImages = removeImages;
+    }
+}
@@ -8,6 +8,9 @@ import stream.annotations.Parameter;
  * Using the 'key' attribute, this processor merges the array of telescopes saved as in the data
  * item into the original data item. It should be applied after SplitByTelescope which should be
  * combined with the ForEach processor list.
+ *
+ * The views created by the SplitByTelescope write their values into the array event directly. There
+ * is nothing left to merge for them.
  */
 public class MergeByTelescope implements Processor {
 
@@ -24,6 +27,12 @@ public class MergeByTelescope implements Processor {
 
         //create a new data item for each triggered telescope
         for (Data telescope : triggeredTelescopes) {
+            if (telescope == null) {
+                continue;
+            }
+            if (telescope instanceof TelescopeView && ((TelescopeView) telescope).parent == item) {
+                continue;
+            }
             int id = (int) telescope.get("telescope:id");
             String prefix = "telescope:" + id + ":";
             for (String key : telescope.keySet()) {
@@ -0,0 +1,141 @@
+package streams.cta;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import stream.Data;
+
+/**
+ * The events which are being assembled by the {@link CollectByEvent}. The events are found by id in
+ * an open addressing table with linear probing. They are also linked in the order in which they were
+ * started, so the oldest event is found without searching.
+ *
+ * Instances of this class are not thread-safe.
+ */
+final class PartialEvents {
+
+    static final class Partial {
+        final long id;
+        final List<Data> rows = new ArrayList<>();
+        //number of telescopes expected for the event or -1 if unknown
+        int expected = -1;
+        //System.nanoTime() when the first row arrived
+        final long started;
+        //number of rows received before the first row of this event
+        final long firstRow;
+
+        private Partial older;
+        private Partial newer;
+
+        Partial(long id, long started, long firstRow) {
+            this.id = id;
+            this.started = started;
+            this.firstRow = firstRow;
+        }
+
+        boolean isComplete() {
+            return expected >= 0 && rows.size() >= expected;
+        }
+    }
+
+    private Partial[] table = new Partial[64];
+    private int size = 0;
+    private Partial oldest;
+    private Partial newest;
+
+    private int home(long id, int length) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & (length - 1);
+    }
+
+    Partial get(long id) {
+        int mask = table.length - 1;
+        for (int i = home(id, table.length); table[i] != null; i = (i + 1) & mask) {
+            if (table[i].id == id) {
+                return table[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Start a new event. There must be no event with the same id.
+     */
+    Partial start(long id, long started, long firstRow) {
+        if (2 * (size + 1) > table.length) {
+            resize(2 * table.length);
+        }
+        Partial partial = new Partial(id, started, firstRow);
+        insert(table, partial);
+        size++;
+
+        partial.older = newest;
+        if (newest != null) {
+            newest.newer = partial;
+        } else {
+            oldest = partial;
+        }
+        newest = partial;
+        return partial;
+    }
+
+    void remove(Partial partial) {
+        int mask = table.length - 1;
+        int i = home(partial.id, table.length);
+        while (table[i] != partial) {
+            i = (i + 1) & mask;
+        }
+        //shift the following entries of the probe sequence back, so no lookup stops at the gap.
+        for (int j = (i + 1) & mask; table[j] != null; j = (j + 1) & mask) {
+            int h = home(table[j].id, table.length);
+            boolean movable = i <= j ? (h <= i || h > j) : (h <= i && h > j);
+            if (movable) {
+                table[i] = table[j];
+                i = j;
+            }
+        }
+        table[i] = null;
+        size--;
+
+        if (partial.older != null) {
+            partial.older.newer = partial.newer;
+        } else {
+            oldest = partial.newer;
+        }
+        if (partial.newer != null) {
+            partial.newer.older = partial.older;
+        } else {
+            newest = partial.older;
+        }
+        partial.older = null;
+        partial.newer = null;
+    }
+
+    /**
+     * @return the event started first of all events in the table or null if it is empty
+     */
+    Partial oldest() {
+        return oldest;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void insert(Partial[] table, Partial partial) {
+        int mask = table.length - 1;
+        int i = home(partial.id, table.length);
+        while (table[i] != null) {
+            i = (i + 1) & mask;
+        }
+        table[i] = partial;
+    }
+
+    private void resize(int length) {
+        Partial[] larger = new Partial[length];
+        for (Partial partial = oldest; partial != null; partial = partial.newer) {
+            insert(larger, partial);
+        }
+        table = larger;
+    }
+}
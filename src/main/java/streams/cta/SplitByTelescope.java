@@ -22,6 +22,12 @@ import java.util.Set;
  *
  * 'shower:width'
  *
+ * By default the items of the telescopes are views on the array event. They do not hold any values
+ * themselves. Reading a key reads the prefixed key of the array event and writing a key writes the
+ * prefixed key of the array event. So splitting and merging copies nothing. Set copy="true" to get
+ * independent items with copies of the values instead, e.g. when the items are passed on to other
+ * processes.
+ *
  * Created by kbruegge on 2/17/17.
  */
 public class SplitByTelescope implements Processor {
@@ -29,15 +35,32 @@ public class SplitByTelescope implements Processor {
     @Parameter(description = "Save collected telescopes under this key.", required = true)
     String key = "@telescopes";
 
+    @Parameter(description = "Copy the values of each telescope into a new item instead of creating a " +
+            "view on the array event.", required = false, defaultValue = "false")
+    boolean copy = false;
+
     public void setKey(String key) {
         this.key = key;
     }
 
+    public void setCopy(boolean copy) {
+        this.copy = copy;
+    }
+
     @Override
     public Data process(Data item) {
 
         int[] triggeredTelescopes = (int[]) item.get("array:triggered_telescopes");
 
+        if (!copy) {
+            Data[] views = new Data[triggeredTelescopes.length];
+            for (int i = 0; i < triggeredTelescopes.length; i++) {
+                views[i] = new TelescopeView(item, triggeredTelescopes[i]);
+            }
+            item.put(key, views);
+            return item;
+        }
+
         //collect all telescopes first in the list
         Data[] items = new Data[triggeredTelescopes.length];
         int i = 0;
@@ -0,0 +1,45 @@
+package streams.cta;
+
+import streams.hexmap.Shower;
+
+import java.io.Serializable;
+
+/**
+ * The data of one telescope within an {@link ArrayEvent}. The image, the cleaned shower and the
+ * Hillas parameters are held in plain fields instead of data keys like 'telescope:7:shower:width'.
+ * The Hillas parameters are NaN until they have been calculated.
+ */
+public final class TelescopeEvent implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public final int telescopeId;
+
+    /**
+     * The raw image in estimated number of photons per pixel.
+     */
+    public double[] photons;
+
+    /**
+     * The signal pixels selected by the cleaning. Null before the cleaning.
+     */
+    public Shower shower;
+
+    public boolean hasHillas = false;
+    public double size = Double.NaN;
+    public double cogX = Double.NaN;
+    public double cogY = Double.NaN;
+    public double width = Double.NaN;
+    public double length = Double.NaN;
+    public double delta = Double.NaN;
+    public double skewness = Double.NaN;
+    public double kurtosis = Double.NaN;
+    public double phi = Double.NaN;
+    public double miss = Double.NaN;
+    public double r = Double.NaN;
+
+    public TelescopeEvent(int telescopeId, double[] photons) {
+        this.telescopeId = telescopeId;
+        this.photons = photons;
+    }
+}
@@ -0,0 +1,170 @@
+package streams.cta;
+
+import stream.Data;
+import stream.data.DataFactory;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Shows the keys 'telescope:id:*' of an array event without the prefix. For example
+ * 'telescope:2:shower:width' of the array event is 'shower:width' in the view. Nothing is copied.
+ * Reading a key reads the prefixed key of the array event and putting or removing a key changes the
+ * prefixed key of the array event directly.
+ *
+ * The view also shows the keys shared by all telescopes of the event: 'array:*', 'mc:*', 'event_id',
+ * 'run_id', 'unique_event_id' and 'source_file' as well as 'telescope:id'. These are read from the
+ * array event unless a key of the same name has been put into the view.
+ */
+final class TelescopeView extends AbstractMap<String, Serializable> implements Data {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String ID_KEY = "telescope:id";
+
+    final Data parent;
+    final int telescopeId;
+    private final String prefix;
+
+    //shared keys removed from this view
+    private Set<String> removed;
+
+    TelescopeView(Data parent, int telescopeId) {
+        this.parent = parent;
+        this.telescopeId = telescopeId;
+        this.prefix = "telescope:" + telescopeId + ":";
+    }
+
+    private static boolean isShared(String key) {
+        return key.startsWith("array:") || key.startsWith("mc:") || key.equals("event_id")
+                || key.equals("run_id") || key.equals("unique_event_id") || key.equals("source_file");
+    }
+
+    private boolean isVisibleShared(String key) {
+        if (removed != null && removed.contains(key)) {
+            return false;
+        }
+        return key.equals(ID_KEY) || (isShared(key) && parent.containsKey(key));
+    }
+
+    private Serializable shared(String key) {
+        if (removed != null && removed.contains(key)) {
+            return null;
+        }
+        if (key.equals(ID_KEY)) {
+            return telescopeId;
+        }
+        return isShared(key) ? parent.get(key) : null;
+    }
+
+    @Override
+    public Serializable get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        Serializable value = parent.get(prefix + key);
+        return value != null ? value : shared((String) key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (!(key instanceof String)) {
+            return false;
+        }
+        return parent.containsKey(prefix + key) || isVisibleShared((String) key);
+    }
+
+    @Override
+    public Serializable put(String key, Serializable value) {
+        Serializable previous = get(key);
+        parent.put(prefix + key, value);
+        return previous;
+    }
+
+    @Override
+    public Serializable remove(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        String k = (String) key;
+        Serializable previous = get(k);
+        parent.remove(prefix + k);
+        if (k.equals(ID_KEY) || isShared(k)) {
+            if (removed == null) {
+                removed = new HashSet<>();
+            }
+            removed.add(k);
+        }
+        return previous;
+    }
+
+    private List<String> keys() {
+        List<String> keys = new ArrayList<>();
+        Set<String> own = new HashSet<>();
+        for (String key : parent.keySet()) {
+            if (key.startsWith(prefix)) {
+                String k = key.substring(prefix.length());
+                keys.add(k);
+                own.add(k);
+            }
+        }
+        for (String key : parent.keySet()) {
+            if (!own.contains(key) && isShared(key) && isVisibleShared(key)) {
+                keys.add(key);
+            }
+        }
+        if (!own.contains(ID_KEY) && isVisibleShared(ID_KEY)) {
+            keys.add(ID_KEY);
+        }
+        return keys;
+    }
+
+    @Override
+    public Data createCopy() {
+        return DataFactory.create(this);
+    }
+
+    @Override
+    public Set<Entry<String, Serializable>> entrySet() {
+        return new AbstractSet<Entry<String, Serializable>>() {
+            @Override
+            public Iterator<Entry<String, Serializable>> iterator() {
+                Iterator<String> keys = keys().iterator();
+                return new Iterator<Entry<String, Serializable>>() {
+                    private String last;
+
+                    @Override
+                    public boolean hasNext() {
+                        return keys.hasNext();
+                    }
+
+                    @Override
+                    public Entry<String, Serializable> next() {
+                        last = keys.next();
+                        return new SimpleImmutableEntry<>(last, get(last));
+                    }
+
+                    @Override
+                    public void remove() {
+                        if (last == null) {
+                            throw new IllegalStateException();
+                        }
+                        TelescopeView.this.remove(last);
+                        last = null;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return keys().size();
+            }
+        };
+    }
+}
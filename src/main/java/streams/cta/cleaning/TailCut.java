@@ -2,13 +2,18 @@ package streams.cta.cleaning;
 
 import stream.Data;
 import stream.annotations.Parameter;
+import streams.cta.ArrayEvent;
 import streams.cta.CTARawDataProcessor;
+import streams.cta.TelescopeEvent;
 import streams.hexmap.Shower;
 
 /**
  * A heuristic to find signal pixels in the image. Its based on a ideas from the equivalent
  * fact-tools processors, HESS methods and some things in ctapipe.
  *
+ * When the item contains a typed {@link ArrayEvent} all of its telescopes are cleaned at once and
+ * the showers are stored in the telescope events.
+ *
  * @author Kai Bruegge on 14.02.17
  */
 public class TailCut extends CTARawDataProcessor {
@@ -17,16 +22,37 @@ public class TailCut extends CTARawDataProcessor {
     public Double[] levels = {10.0, 8.0, 4.5};
 
 
+    @Override
+    public Data process(Data input) {
+        ArrayEvent event = ArrayEvent.get(input);
+        if (event == null) {
+            return super.process(input);
+        }
+        for (TelescopeEvent telescope : event.telescopes) {
+            telescope.shower = clean(telescope.telescopeId, telescope.photons);
+        }
+        return input;
+    }
+
     @Override
     public Data process(Data input, double[] image) {
 
         int cameraId = (int) input.get("telescope:id");
+        Shower shower = clean(cameraId, image);
+
+        input.put("shower", shower);
+        input.put("shower:number_of_pixel", shower.size());
+        return input;
+    }
+
+    private Shower clean(int cameraId, double[] image) {
         Shower shower = new Shower(cameraId);
 
         //add the pixels over the first threshold
+        final double threshold = levels[0];
         for (int pixelId = 0; pixelId < image.length; pixelId++) {
             double weight = image[pixelId];
-            if (weight > levels[0]) {
+            if (weight > threshold) {
                 shower.addPixel(pixelId, weight);
             }
         }
@@ -35,9 +61,6 @@ public class TailCut extends CTARawDataProcessor {
         for (int l = 1; l < levels.length; l++) {
             shower.dilate(image, levels[l]);
         }
-
-        input.put("shower", shower);
-        input.put("shower:number_of_pixel", shower.signalPixels.size());
-        return input;
+        return shower;
     }
 }
@@ -4,8 +4,6 @@ import stream.Data;
 import streams.cta.CTACleanedDataProcessor;
 import streams.hexmap.Shower;
 
-import static streams.hexmap.Shower.SignalPixel;
-
 /**
  * Calculate the center of gravity COG, which is the weighted center of the shower pixels.
  *
@@ -26,11 +24,17 @@ public class COG extends CTACleanedDataProcessor {
         double cogY = 0;
         double size = 0;
 
+        final int[] ids = shower.pixelIds;
+        final double[] weights = shower.weights;
+        final double[] xs = shower.geometry().pixelXPositions;
+        final double[] ys = shower.geometry().pixelYPositions;
+
         // find weighted center of the shower pixels.
-        for (SignalPixel pixel : shower.signalPixels) {
-            cogX += pixel.xPositionInMM * pixel.weight;
-            cogY += pixel.yPositionInMM * pixel.weight;
-            size += pixel.weight;
+        for (int i = 0; i < shower.size(); i++) {
+            double weight = weights[i];
+            cogX += xs[ids[i]] * weight;
+            cogY += ys[ids[i]] * weight;
+            size += weight;
         }
 
         cogX /= size;
@@ -0,0 +1,186 @@
+package streams.cta.features;
+
+import stream.Data;
+import streams.cta.ArrayEvent;
+import streams.cta.CTACleanedDataProcessor;
+import streams.cta.TelescopeEvent;
+import streams.hexmap.Shower;
+
+import static java.lang.Math.*;
+
+/**
+ * Calculates all Hillas parameters of a shower in two passes over the signal pixels. This replaces
+ * chains like Size, COG and WidthLengthDelta and writes the keys of all of them.
+ *
+ * The first pass sums the weights and the first and second order moments. The eigenvalues and the
+ * orientation of the 2x2 covariance matrix are then calculated in closed form. The second pass
+ * projects the pixels onto the main axis to get the skewness and the kurtosis.
+ *
+ * Pixel positions are shifted by the position of the first pixel before summing up the second
+ * order moments. This keeps the sums small and avoids cancellation when the covariance is
+ * calculated from them.
+ *
+ * When the item contains a typed {@link ArrayEvent} the parameters of all its cleaned telescopes are
+ * calculated at once and stored in the fields of the telescope events.
+ *
+ * See (Whipple and Reynolds et al. 1993) for the definitions of the parameters.
+ */
+public class Hillas extends CTACleanedDataProcessor {
+
+    /**
+     * The parameters of one shower. One instance is reused for all showers.
+     */
+    private static final class Parameters {
+        double size;
+        double cogX;
+        double cogY;
+        double width;
+        double length;
+        double delta;
+        double skewness;
+        double kurtosis;
+        double phi;
+        double miss;
+        double r;
+    }
+
+    private final Parameters p = new Parameters();
+
+    @Override
+    public Data process(Data input) {
+        ArrayEvent event = ArrayEvent.get(input);
+        if (event == null) {
+            return super.process(input);
+        }
+        for (TelescopeEvent t : event.telescopes) {
+            if (t.shower != null) {
+                calculate(t.shower, p);
+                t.size = p.size;
+                t.cogX = p.cogX;
+                t.cogY = p.cogY;
+                t.width = p.width;
+                t.length = p.length;
+                t.delta = p.delta;
+                t.skewness = p.skewness;
+                t.kurtosis = p.kurtosis;
+                t.phi = p.phi;
+                t.miss = p.miss;
+                t.r = p.r;
+                t.hasHillas = true;
+            }
+        }
+        return input;
+    }
+
+    @Override
+    public Data process(Data input, Shower shower) {
+        calculate(shower, p);
+
+        input.put("shower:size", p.size);
+        input.put("shower:total_photons", p.size);
+        input.put("shower:cog:x", p.cogX);
+        input.put("shower:cog:y", p.cogY);
+        input.put("shower:width", p.width);
+        input.put("shower:length", p.length);
+        input.put("shower:delta", p.delta);
+        input.put("shower:psi", p.delta);
+        input.put("shower:skewness", p.skewness);
+        input.put("shower:kurtosis", p.kurtosis);
+        input.put("shower:phi", p.phi);
+        input.put("shower:miss", p.miss);
+        input.put("shower:r", p.r);
+
+        return input;
+    }
+
+    /**
+     * Calculate the parameters of the shower and store them in the given holder.
+     */
+    private static void calculate(Shower shower, Parameters p) {
+        final int n = shower.size();
+        final int[] ids = shower.pixelIds;
+        final double[] weights = shower.weights;
+        final double[] xs = shower.geometry().pixelXPositions;
+        final double[] ys = shower.geometry().pixelYPositions;
+
+        final double x0 = n > 0 ? xs[ids[0]] : 0;
+        final double y0 = n > 0 ? ys[ids[0]] : 0;
+
+        double size = 0;
+        double sumX = 0, sumY = 0;
+        double sumXX = 0, sumYY = 0, sumXY = 0;
+
+        for (int i = 0; i < n; i++) {
+            double w = weights[i];
+            double x = xs[ids[i]] - x0;
+            double y = ys[ids[i]] - y0;
+
+            size += w;
+            sumX += w * x;
+            sumY += w * y;
+            sumXX += w * x * x;
+            sumYY += w * y * y;
+            sumXY += w * x * y;
+        }
+
+        // center of gravity in the shifted coordinates
+        final double mx = sumX / size;
+        final double my = sumY / size;
+
+        //the covariance matrix
+        final double sxx = sumXX / size - mx * mx;
+        final double syy = sumYY / size - my * my;
+        final double sxy = sumXY / size - mx * my;
+
+        // closed form eigenvalues of the symmetric 2x2 matrix. The larger one is the variance along
+        // the main axis of the shower.
+        final double halfTrace = (sxx + syy) / 2;
+        final double root = sqrt((sxx - syy) * (sxx - syy) / 4 + sxy * sxy);
+
+        //rounding can make things less than zero. just set to zero then.
+        final double length = sqrt(max(halfTrace + root, 0));
+        final double width = sqrt(max(halfTrace - root, 0));
+
+        //angle between the x axis and the main axis of the shower.
+        final double delta = 0.5 * atan2(2 * sxy, sxx - syy);
+        final double cosDelta = cos(delta);
+        final double sinDelta = sin(delta);
+
+        final double cogX = mx + x0;
+        final double cogY = my + y0;
+
+        //distance between the main axis and the camera center
+        final double miss = abs(cogY * cosDelta - cogX * sinDelta);
+        final double r = sqrt(cogX * cogX + cogY * cogY);
+        final double phi = atan2(cogY, cogX);
+
+        //higher order moments along the main axis
+        double m2 = 0, m3 = 0, m4 = 0;
+        for (int i = 0; i < n; i++) {
+            double w = weights[i];
+            double l = cosDelta * (xs[ids[i]] - cogX) + sinDelta * (ys[ids[i]] - cogY);
+            double l2 = l * l;
+            m2 += w * l2;
+            m3 += w * l2 * l;
+            m4 += w * l2 * l2;
+        }
+        m2 /= size;
+        m3 /= size;
+        m4 /= size;
+
+        final double skewness = m3 / (m2 * sqrt(m2));
+        final double kurtosis = m4 / (m2 * m2);
+
+        p.size = size;
+        p.cogX = cogX;
+        p.cogY = cogY;
+        p.width = width;
+        p.length = length;
+        p.delta = delta;
+        p.skewness = skewness;
+        p.kurtosis = kurtosis;
+        p.phi = phi;
+        p.miss = miss;
+        p.r = r;
+    }
+}
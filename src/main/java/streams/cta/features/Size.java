@@ -14,7 +14,10 @@ public class Size extends CTACleanedDataProcessor {
     @Override
     public Data process(Data input, Shower shower) {
 
-        double size = shower.signalPixels.stream().mapToDouble(e -> e.weight).sum();
+        double size = 0;
+        for (int i = 0; i < shower.size(); i++) {
+            size += shower.weights[i];
+        }
         input.put("shower:total_photons", size);
         return input;
     }
@@ -7,8 +7,6 @@ import stream.Data;
 import streams.cta.CTACleanedDataProcessor;
 import streams.hexmap.Shower;
 
-import static streams.hexmap.Shower.SignalPixel;
-
 /**
  * Calculate the Width, Length and Delta from the spacial distribution of shower pixels, by use of
  * the covariance Matrix and its Eigenvalues of it.
@@ -61,14 +59,18 @@ public class WidthLengthDelta extends CTACleanedDataProcessor {
         double variance_yy = 0;
         double covariance_xy = 0;
 
-        for (SignalPixel pix : shower.signalPixels) {
+        final double[] xs = shower.geometry().pixelXPositions;
+        final double[] ys = shower.geometry().pixelYPositions;
+        for (int i = 0; i < shower.size(); i++) {
 
-            double posx = pix.xPositionInMM;
-            double posy = pix.yPositionInMM;
+            int id = shower.pixelIds[i];
+            double weight = shower.weights[i];
+            double posx = xs[id];
+            double posy = ys[id];
 
-            variance_xx += pix.weight * (posx - cogX) * (posx - cogX);
-            variance_yy += pix.weight * (posy - cogY) * (posy - cogY);
-            covariance_xy += pix.weight * (posx - cogX) * (posy - cogY);
+            variance_xx += weight * (posx - cogX) * (posx - cogX);
+            variance_yy += weight * (posy - cogY) * (posy - cogY);
+            covariance_xy += weight * (posx - cogX) * (posy - cogY);
 
         }
 
@@ -0,0 +1,233 @@
+package streams.cta.io;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import stream.Data;
+import stream.data.DataFactory;
+import stream.io.AbstractStream;
+import stream.io.SourceURL;
+import streams.hexmap.CameraGeometry;
+
+/**
+ * Reads events from the binary container written by the {@link BinaryEventWriter}. The file is
+ * memory mapped and the images are copied from the mapped buffer into arrays with bulk gets. No
+ * text needs to be parsed. The resulting data items contain the same keys as the ones created by
+ * the {@link ImageStream}. So a process only has to swap the stream class.
+ *
+ * The container starts with a header followed by one record per event. All values are little
+ * endian.
+ *
+ *     header:  int magic, int version, byte bytesPerValue (4 or 8),
+ *              int numberOfTelescopes, (int id, int typeOrdinal, int numberOfPixel) per telescope
+ *     record:  int length of the record following this int,
+ *              long event_id, int run_id (Integer.MIN_VALUE if missing),
+ *              string source_file, string timestamp,
+ *              int array:num_triggered_telescopes, int n, int[n] array:triggered_telescopes,
+ *              double mc:alt, mc:az, mc:core_x, mc:core_y, mc:energy, string mc:type,
+ *              int numberOfImages, (int telescopeId, int n, n values) per image
+ *
+ * Strings are written as their length in bytes followed by the UTF-8 bytes. Null is stored as
+ * length -1. Images of telescopes which are not listed in the header are rejected with an IOException.
+ *
+ * The file is mapped in windows of at most 256 MB so files larger than 2 GB can be read as well.
+ */
+public class BinaryEventStream extends AbstractStream {
+
+    static Logger log = LoggerFactory.getLogger(BinaryEventStream.class);
+
+    static final int MAGIC = 0x43544145;
+    static final int VERSION = 1;
+    static final int NO_RUN_ID = Integer.MIN_VALUE;
+
+    private static final long WINDOW_SIZE = 256L << 20;
+
+    private FileChannel channel;
+    private long fileSize;
+
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long position;
+
+    private int bytesPerValue;
+
+    //per telescope id. built from the header
+    private String[] typeIdKeys;
+    private String[] typeNameKeys;
+    private String[] photonKeys;
+    private Integer[] typeIds;
+    private String[] typeNames;
+
+    public BinaryEventStream(SourceURL url) {
+        super(url);
+    }
+
+    public BinaryEventStream() {
+    }
+
+    @Override
+    public void init() throws Exception {
+        super.init();
+        channel = FileChannel.open(Paths.get(url.getFile()), StandardOpenOption.READ);
+        fileSize = channel.size();
+        position = 0;
+
+        ByteBuffer header = map(0, 13);
+        if (header.getInt() != MAGIC) {
+            throw new IOException("Not a binary event file: " + url);
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary event file version " + version);
+        }
+        bytesPerValue = header.get();
+        int numberOfTelescopes = header.getInt();
+
+        header = map(13, numberOfTelescopes * 12);
+        int maxId = 0;
+        int[] ids = new int[numberOfTelescopes];
+        int[] types = new int[numberOfTelescopes];
+        for (int i = 0; i < numberOfTelescopes; i++) {
+            ids[i] = header.getInt();
+            types[i] = header.getInt();
+            header.getInt(); //number of pixel. the images carry their own length.
+            maxId = Math.max(maxId, ids[i]);
+        }
+
+        typeIdKeys = new String[maxId + 1];
+        typeNameKeys = new String[maxId + 1];
+        photonKeys = new String[maxId + 1];
+        typeIds = new Integer[maxId + 1];
+        typeNames = new String[maxId + 1];
+        CameraGeometry.TelescopeType[] telescopeTypes = CameraGeometry.TelescopeType.values();
+        for (int i = 0; i < numberOfTelescopes; i++) {
+            int id = ids[i];
+            typeIdKeys[id] = String.format("telescope:%d:type:id", id);
+            typeNameKeys[id] = String.format("telescope:%d:type:name", id);
+            photonKeys[id] = String.format("telescope:%d:raw:photons", id);
+            typeIds[id] = types[i];
+            typeNames[id] = telescopeTypes[types[i]].toString();
+        }
+
+        position = 13 + numberOfTelescopes * 12L;
+        log.info("Reading binary events from {} with {} telescopes and {} byte values.",
+                url, numberOfTelescopes, bytesPerValue);
+    }
+
+    /**
+     * Get a buffer positioned at the given offset in the file with at least length bytes
+     * remaining. Maps a new window of the file if needed.
+     */
+    private ByteBuffer map(long offset, int length) throws IOException {
+        if (offset + length > fileSize) {
+            throw new IOException("Unexpected end of file in " + url);
+        }
+        if (window == null || offset < windowStart || offset + length > windowStart + window.capacity()) {
+            long size = Math.min(Math.max(WINDOW_SIZE, length), fileSize - offset);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+            window.order(ByteOrder.LITTLE_ENDIAN);
+            windowStart = offset;
+        }
+        window.position((int) (offset - windowStart));
+        return window;
+    }
+
+    @Override
+    public Data readNext() throws Exception {
+        if (position >= fileSize) {
+            return null;
+        }
+
+        int length = map(position, 4).getInt();
+        ByteBuffer buffer = map(position + 4, length);
+        position += 4 + length;
+
+        Data data = DataFactory.create();
+
+        long eventId = buffer.getLong();
+        int runId = buffer.getInt();
+        String sourceFile = getString(buffer);
+        String timestamp = getString(buffer);
+
+        int numTriggeredTelescopes = buffer.getInt();
+        int[] triggeredTelescopes = new int[buffer.getInt()];
+        buffer.asIntBuffer().get(triggeredTelescopes);
+        buffer.position(buffer.position() + 4 * triggeredTelescopes.length);
+
+        double alt = buffer.getDouble();
+        double az = buffer.getDouble();
+        double coreX = buffer.getDouble();
+        double coreY = buffer.getDouble();
+        double energy = buffer.getDouble();
+        String type = getString(buffer);
+
+        int numberOfImages = buffer.getInt();
+        for (int i = 0; i < numberOfImages; i++) {
+            int id = buffer.getInt();
+            if (id < 0 || id >= photonKeys.length || photonKeys[id] == null) {
+                throw new IOException("Telescope " + id + " of event " + eventId + " is not listed in the header of "
+                        + url);
+            }
+            double[] image = new double[buffer.getInt()];
+            if (bytesPerValue == 8) {
+                buffer.asDoubleBuffer().get(image);
+                buffer.position(buffer.position() + 8 * image.length);
+            } else {
+                for (int pixel = 0; pixel < image.length; pixel++) {
+                    image[pixel] = buffer.getFloat();
+                }
+            }
+            data.put(typeIdKeys[id], typeIds[id]);
+            data.put(typeNameKeys[id], typeNames[id]);
+            data.put(photonKeys[id], image);
+        }
+
+        data.put("array:triggered_telescopes", triggeredTelescopes);
+        data.put("array:num_triggered_telescopes", numTriggeredTelescopes);
+
+        data.put("mc:alt", alt);
+        data.put("mc:az", az);
+        data.put("mc:core_x", coreX);
+        data.put("mc:core_y", coreY);
+        data.put("mc:energy", energy);
+        data.put("mc:type", type);
+
+        data.put("event_id", eventId);
+        data.put("timestamp", timestamp);
+        if (runId != NO_RUN_ID) {
+            data.put("run_id", runId);
+            data.put("unique_event_id", ((runId) << 7) + eventId);
+        }
+        data.put("source_file", sourceFile);
+
+        return data;
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws Exception {
+        super.close();
+        window = null;
+        if (channel != null) {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package streams.cta.io;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+import stream.Data;
+import stream.ProcessContext;
+import stream.StatefulProcessor;
+import stream.annotations.Parameter;
+import stream.io.SourceURL;
+import streams.hexmap.CameraMapping;
+import streams.hexmap.TelescopeGeometry;
+
+/**
+ * Writes the raw events as created by the {@link ImageStream} into a binary container which can be
+ * read by the {@link BinaryEventStream}. The images are stored as packed float or double arrays.
+ * See the {@link BinaryEventStream} for a description of the format.
+ *
+ * The header contains the type and number of pixel of all telescopes known to the
+ * {@link CameraMapping}.
+ *
+ * Only the images of the telescopes listed in 'array:triggered_telescopes' are written. Images of
+ * other telescopes in the item are dropped and the records hold no entry for them.
+ */
+public class BinaryEventWriter implements StatefulProcessor {
+
+    static Logger log = LoggerFactory.getLogger(BinaryEventWriter.class);
+
+    @Parameter(required = true, description = "The url to write to")
+    SourceURL url;
+
+    @Parameter(required = false, description = "Store the images as 32 bit floats instead of " +
+            "64 bit doubles. This halves the size of the files.", defaultValue = "false")
+    boolean singlePrecision = false;
+
+    private FileChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocate(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+    private long events = 0;
+
+    @Override
+    public void init(ProcessContext processContext) throws Exception {
+        File file = new File(url.getFile());
+        if (file.getParentFile() != null && !file.getParentFile().exists() && !file.getParentFile().mkdirs()) {
+            log.error(file.getParentFile() + " could not be created.");
+        }
+        channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+        CameraMapping mapping = CameraMapping.getInstance();
+        int numberOfTelescopes = mapping.numberOfTelescopes();
+
+        buffer.clear();
+        buffer.putInt(BinaryEventStream.MAGIC);
+        buffer.putInt(BinaryEventStream.VERSION);
+        buffer.put((byte) (singlePrecision ? 4 : 8));
+        buffer.putInt(numberOfTelescopes);
+        for (int id = 1; id <= numberOfTelescopes; id++) {
+            TelescopeGeometry geometry = mapping.geometryFromId(id);
+            buffer.putInt(id);
+            buffer.putInt(geometry.telescopeType.ordinal());
+            buffer.putInt(geometry.numberOfPixel);
+        }
+        write();
+    }
+
+    @Override
+    public Data process(Data data) {
+        int[] triggeredTelescopes = (int[]) data.get("array:triggered_telescopes");
+
+        //reserve room for the length of the record
+        buffer.clear();
+        buffer.putInt(0);
+
+        ensureRemaining(64);
+        buffer.putLong(((Number) data.get("event_id")).longValue());
+        Serializable runId = data.get("run_id");
+        buffer.putInt(runId == null ? BinaryEventStream.NO_RUN_ID : ((Number) runId).intValue());
+        putString((String) data.get("source_file"));
+        putString((String) data.get("timestamp"));
+
+        ensureRemaining(8 + 4 * triggeredTelescopes.length + 5 * 8);
+        buffer.putInt(((Number) data.get("array:num_triggered_telescopes")).intValue());
+        buffer.putInt(triggeredTelescopes.length);
+        for (int id : triggeredTelescopes) {
+            buffer.putInt(id);
+        }
+
+        buffer.putDouble(getDouble(data, "mc:alt"));
+        buffer.putDouble(getDouble(data, "mc:az"));
+        buffer.putDouble(getDouble(data, "mc:core_x"));
+        buffer.putDouble(getDouble(data, "mc:core_y"));
+        buffer.putDouble(getDouble(data, "mc:energy"));
+        putString((String) data.get("mc:type"));
+
+        int imagesPosition = buffer.position();
+        ensureRemaining(4);
+        buffer.putInt(0);
+        int numberOfImages = 0;
+        for (int id : triggeredTelescopes) {
+            double[] image = (double[]) data.get("telescope:" + id + ":raw:photons");
+            if (image == null) {
+                continue;
+            }
+            ensureRemaining(8 + image.length * (singlePrecision ? 4 : 8));
+            buffer.putInt(id);
+            buffer.putInt(image.length);
+            if (singlePrecision) {
+                for (double value : image) {
+                    buffer.putFloat((float) value);
+                }
+            } else {
+                buffer.asDoubleBuffer().put(image);
+                buffer.position(buffer.position() + 8 * image.length);
+            }
+            numberOfImages++;
+        }
+        buffer.putInt(imagesPosition, numberOfImages);
+        buffer.putInt(0, buffer.position() - 4);
+
+        try {
+            write();
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write event to " + url, e);
+        }
+        events++;
+        return data;
+    }
+
+    private static double getDouble(Data data, String key) {
+        Serializable value = data.get(key);
+        return value == null ? Double.NaN : ((Number) value).doubleValue();
+    }
+
+    private void putString(String s) {
+        if (s == null) {
+            ensureRemaining(4);
+            buffer.putInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        ensureRemaining(4 + bytes.length);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private void ensureRemaining(int bytes) {
+        if (buffer.remaining() < bytes) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(2 * buffer.capacity(), buffer.position() + bytes))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+    }
+
+    private void write() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void resetState() throws Exception {
+    }
+
+    @Override
+    public void finish() throws Exception {
+        channel.force(false);
+        channel.close();
+        log.info("Wrote {} events to {}", events, url);
+    }
+
+    public void setUrl(SourceURL url) {
+        this.url = url;
+    }
+
+    public void setSinglePrecision(boolean singlePrecision) {
+        this.singlePrecision = singlePrecision;
+    }
+}
@@ -1,7 +1,5 @@
 package streams.cta.io;
 
-import com.google.common.base.Joiner;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -14,16 +12,27 @@ import stream.io.SourceURL;
 
 import java.io.File;
 import java.io.FileOutputStream;
-import java.io.PrintWriter;
-import java.util.List;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Serializable;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * CSVWriter writes out the values for the given keys to a csv file.
  * The first line of the CSV file is a header.
  * The header contains the names of the keys found in the data item.
  *
+ * The columns are selected once from the first data item. All following rows contain the values for
+ * the same columns in the same order. Missing values are written as null.
+ *
+ * Rows are formatted into a buffer which is written to the file once it holds bufferSize characters
+ * or once flushInterval milliseconds have passed since the last write. Files ending with .gz or
+ * gzip="true" are written gzip compressed.
+ *
  * @author kai
  */
 public class CSVWriter implements StatefulProcessor {
@@ -36,10 +45,30 @@ public class CSVWriter implements StatefulProcessor {
     @Parameter(required = true)
     Keys keys;
 
+    @Parameter(required = false, description = "Number of characters buffered before they are written " +
+            "to the file.", defaultValue = "65536")
+    int bufferSize = 1 << 16;
+
+    @Parameter(required = false, description = "Write the buffered rows at least every this many " +
+            "milliseconds. 0 only writes when the buffer is full.", defaultValue = "1000")
+    long flushInterval = 1000;
+
+    @Parameter(required = false, description = "Compress the output with gzip. Files with names ending " +
+            "in .gz are always compressed.", defaultValue = "false")
+    boolean gzip = false;
+
 
     private boolean headerWritten = false;
-    private PrintWriter writer;
+    private Writer writer;
     private String seperator = ",";
+    private final String lineSeparator = System.lineSeparator();
+
+    private String[] columns;
+    private final StringBuilder buffer = new StringBuilder();
+    //the buffered rows are copied into this array to write them. Writer.append(CharSequence) would
+    //create a new String for each write instead.
+    private char[] chars;
+    private long lastFlush;
 
 
     @Override
@@ -55,7 +84,14 @@ public class CSVWriter implements StatefulProcessor {
                 }
             }
         }
-        writer = new PrintWriter(new FileOutputStream(file));
+        OutputStream out = new FileOutputStream(file);
+        if (gzip || filePath.endsWith(".gz")) {
+            out = new GZIPOutputStream(out, 1 << 16);
+        }
+        writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        buffer.ensureCapacity(bufferSize + 1024);
+        chars = new char[bufferSize + 1024];
+        lastFlush = System.currentTimeMillis();
     }
 
     @Override
@@ -65,27 +101,84 @@ public class CSVWriter implements StatefulProcessor {
 
     @Override
     public void finish() throws Exception {
+        writeBuffer();
         writer.flush();
         writer.close();
     }
 
     @Override
     public Data process(Data data) {
-        Set<String> selectedKeys = keys.select(data);
         if (!headerWritten){
-            String header = Joiner.on(seperator).join(selectedKeys);
-            writer.println(header);
+            Set<String> selectedKeys = keys.select(data);
+            columns = selectedKeys.toArray(new String[selectedKeys.size()]);
+            buffer.append(String.join(seperator, columns)).append(lineSeparator);
             headerWritten = true;
         }
 
-        List<String> values = selectedKeys.stream()
-                                          .map(data::get)
-                                          .map(String::valueOf)
-                                          .collect(Collectors.toList());
-
-        String joinedValues = Joiner.on(seperator).join(values);
-        writer.println(joinedValues);
-        writer.flush();
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                buffer.append(seperator);
+            }
+            appendValue(data.get(columns[i]));
+        }
+        buffer.append(lineSeparator);
+
+        if (buffer.length() >= bufferSize
+                || (flushInterval > 0 && System.currentTimeMillis() - lastFlush >= flushInterval)) {
+            try {
+                writeBuffer();
+                writer.flush();
+            } catch (IOException e) {
+                throw new RuntimeException("Could not write to " + url, e);
+            }
+        }
         return data;
     }
+
+    /**
+     * Append the value like String.valueOf would format it, without creating a string for the
+     * common number types.
+     */
+    private void appendValue(Serializable value) {
+        if (value instanceof Double) {
+            buffer.append(((Double) value).doubleValue());
+        } else if (value instanceof Integer) {
+            buffer.append(((Integer) value).intValue());
+        } else if (value instanceof Long) {
+            buffer.append(((Long) value).longValue());
+        } else if (value instanceof Float) {
+            buffer.append(((Float) value).floatValue());
+        } else if (value instanceof String) {
+            buffer.append((String) value);
+        } else {
+            buffer.append(value);
+        }
+    }
+
+    private void writeBuffer() throws IOException {
+        int length = buffer.length();
+        if (length == 0) {
+            return;
+        }
+        if (chars.length < length) {
+            //only happens for rows longer than the spare room of the buffer
+            chars = new char[length];
+        }
+        buffer.getChars(0, length, chars, 0);
+        writer.write(chars, 0, length);
+        buffer.setLength(0);
+        lastFlush = System.currentTimeMillis();
+    }
+
+    public void setUrl(SourceURL url) {
+        this.url = url;
+    }
+
+    public void setKeys(Keys keys) {
+        this.keys = keys;
+    }
+
+    public void setGzip(boolean gzip) {
+        this.gzip = gzip;
+    }
 }
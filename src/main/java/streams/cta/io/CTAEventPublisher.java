@@ -0,0 +1,268 @@
+package streams.cta.io;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import stream.Data;
+import stream.ProcessContext;
+import stream.StatefulProcessor;
+import stream.annotations.Parameter;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Publishes the data items over tcp to {@link CTAEventSubscriber}s. The publisher listens on the
+ * given addresses and each subscriber connects to it.
+ *
+ *     <streams.cta.io.CTAEventPublisher addresses="tcp://*:5555" />
+ *
+ * The items are encoded with the given codec and sent as length prefixed frames. Every item goes to
+ * one of the connected subscribers only. Each connection takes the next frame as soon as it has sent
+ * the previous one, so several subscribers share the load and faster subscribers receive more items.
+ * When a subscriber disconnects, the frame it was sending goes to another subscriber.
+ *
+ * At most maxInFlight encoded frames wait to be sent. Once that many are waiting the process blocks
+ * until the subscribers caught up. So a slow subscriber slows down the publisher instead of filling
+ * its memory. Frames still waiting when the process finishes are sent before the connections are
+ * closed.
+ */
+public class CTAEventPublisher implements StatefulProcessor {
+
+    static Logger log = LoggerFactory.getLogger(CTAEventPublisher.class);
+
+    @Parameter(required = true, description = "Comma separated addresses to listen on, e.g. tcp://*:5555")
+    String addresses;
+
+    @Parameter(required = false, description = "Class name of the codec used to encode the items",
+            defaultValue = "streams.cta.io.KryoCodec")
+    String codec = KryoCodec.class.getName();
+
+    @Parameter(required = false, description = "Number of encoded items waiting to be sent before the " +
+            "process blocks.", defaultValue = "64")
+    int maxInFlight = 64;
+
+    @Parameter(required = false, description = "Wait for this many subscribers to connect before the " +
+            "first item is sent.", defaultValue = "1")
+    int subscribers = 1;
+
+    @Parameter(required = false, description = "Log the messages and bytes per second every this many " +
+            "milliseconds. 0 disables the report.", defaultValue = "0")
+    long reportInterval = 0;
+
+    private streams.codec.Codec<Data> itemCodec;
+    private BlockingQueue<byte[]> frames;
+
+    private final List<ServerSocketChannel> servers = new ArrayList<>();
+    private final List<Thread> threads = new ArrayList<>();
+    private final AtomicInteger connections = new AtomicInteger(0);
+    private final Object connectionsChanged = new Object();
+
+    private volatile boolean finishing = false;
+    private volatile IOException error = null;
+    private EventTransport.Rate rate;
+
+    @Override
+    public void init(ProcessContext processContext) throws Exception {
+        if (itemCodec == null) {
+            itemCodec = EventTransport.createCodec(codec);
+        }
+        frames = new ArrayBlockingQueue<>(maxInFlight);
+        rate = new EventTransport.Rate(log, "Published", reportInterval);
+
+        for (InetSocketAddress address : EventTransport.parseAddresses(addresses)) {
+            ServerSocketChannel server = ServerSocketChannel.open();
+            server.bind(address);
+            servers.add(server);
+            log.info("Publishing on {}", server.getLocalAddress());
+
+            Thread acceptor = new Thread(() -> accept(server), "publisher-accept-" + address);
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+    }
+
+    private void accept(ServerSocketChannel server) {
+        try {
+            while (true) {
+                SocketChannel channel = server.accept();
+                channel.socket().setTcpNoDelay(true);
+                log.info("Subscriber {} connected", channel.getRemoteAddress());
+
+                Thread sender = new Thread(() -> send(channel), "publisher-send-" + channel.getRemoteAddress());
+                sender.setDaemon(true);
+                synchronized (threads) {
+                    threads.add(sender);
+                }
+                synchronized (connectionsChanged) {
+                    connections.incrementAndGet();
+                    connectionsChanged.notifyAll();
+                }
+                sender.start();
+            }
+        } catch (ClosedChannelException e) {
+            //the publisher has been finished.
+        } catch (IOException e) {
+            log.error("Could not accept subscribers on " + server, e);
+            error = e;
+        }
+    }
+
+    /**
+     * Send frames over the connection until the publisher finishes or the subscriber disconnects.
+     */
+    private void send(SocketChannel channel) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+        byte[] frame = null;
+        try {
+            while (true) {
+                frame = frames.poll(100, TimeUnit.MILLISECONDS);
+                if (frame == null) {
+                    if (finishing) {
+                        break;
+                    }
+                    continue;
+                }
+
+                int size = EventTransport.LENGTH_BYTES + frame.length;
+                if (buffer.capacity() < size) {
+                    buffer = ByteBuffer.allocateDirect(Math.max(size, 2 * buffer.capacity()));
+                }
+                buffer.clear();
+                buffer.putInt(frame.length);
+                buffer.put(frame);
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                rate.add(size);
+                frame = null;
+            }
+        } catch (IOException e) {
+            log.warn("Subscriber disconnected: {}", e.getMessage());
+            if (frame != null && !frames.offer(frame)) {
+                log.error("Lost one item of a disconnected subscriber. The queue is full.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            synchronized (connectionsChanged) {
+                connections.decrementAndGet();
+                connectionsChanged.notifyAll();
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Could not close connection", e);
+            }
+        }
+    }
+
+    @Override
+    public Data process(Data data) {
+        if (error != null) {
+            throw new RuntimeException("Could not publish on " + addresses, error);
+        }
+        try {
+            waitForSubscribers();
+            frames.put(itemCodec.encode(data));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while publishing on " + addresses, e);
+        } catch (Exception e) {
+            throw new RuntimeException("Could not publish on " + addresses, e);
+        }
+        return data;
+    }
+
+    private void waitForSubscribers() throws InterruptedException {
+        if (connections.get() >= subscribers) {
+            return;
+        }
+        synchronized (connectionsChanged) {
+            while (connections.get() < subscribers) {
+                log.info("Waiting for subscribers. {} of {} connected.", connections.get(), subscribers);
+                connectionsChanged.wait(1000);
+            }
+        }
+    }
+
+    @Override
+    public void resetState() throws Exception {
+    }
+
+    /**
+     * Send the frames still waiting and close all connections.
+     */
+    @Override
+    public void finish() throws Exception {
+        synchronized (connectionsChanged) {
+            while (!frames.isEmpty() && connections.get() > 0) {
+                connectionsChanged.wait(100);
+            }
+        }
+        if (!frames.isEmpty()) {
+            log.error("No subscribers left. {} items have not been sent.", frames.size());
+        }
+
+        finishing = true;
+        for (ServerSocketChannel server : servers) {
+            server.close();
+        }
+        synchronized (threads) {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+        log.info("Published {} items with {} bytes", rate.getMessages(), rate.getBytes());
+    }
+
+    /**
+     * @return the addresses the publisher listens on. Useful to find the port when listening on port 0.
+     */
+    public List<InetSocketAddress> getLocalAddresses() throws IOException {
+        List<InetSocketAddress> result = new ArrayList<>();
+        for (ServerSocketChannel server : servers) {
+            result.add((InetSocketAddress) server.getLocalAddress());
+        }
+        return result;
+    }
+
+    public long getPublishedItems() {
+        return rate.getMessages();
+    }
+
+    public long getPublishedBytes() {
+        return rate.getBytes();
+    }
+
+    public void setAddresses(String addresses) {
+        this.addresses = addresses;
+    }
+
+    public void setItemCodec(streams.codec.Codec<Data> codec) {
+        this.itemCodec = codec;
+    }
+
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    public void setSubscribers(int subscribers) {
+        this.subscribers = subscribers;
+    }
+
+    public void setReportInterval(long reportInterval) {
+        this.reportInterval = reportInterval;
+    }
+}
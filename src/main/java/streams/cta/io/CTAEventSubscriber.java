@@ -0,0 +1,218 @@
+package streams.cta.io;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import stream.Data;
+import stream.annotations.Parameter;
+import stream.io.AbstractStream;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Reads the data items sent by one or more {@link CTAEventPublisher}s. The subscriber connects to
+ * all given addresses and reads the frames from whichever connection has data.
+ *
+ *     <stream id="cta:data" class="streams.cta.io.CTAEventSubscriber" addresses="tcp://127.0.0.1:5555"/>
+ *
+ * Each connection has its own direct receive buffer which is reused for all frames. It only grows
+ * when a frame does not fit. Data is only read from the sockets when the next item is requested, so
+ * tcp flow control slows down the publishers when the process can not keep up. The stream ends once
+ * all publishers closed their connections.
+ *
+ * Several subscribers may connect to the same publisher, e.g. all copies of a process. Each item is
+ * received by only one of them.
+ */
+public class CTAEventSubscriber extends AbstractStream {
+
+    static Logger log = LoggerFactory.getLogger(CTAEventSubscriber.class);
+
+    @Parameter(required = true, description = "Comma separated addresses of the publishers, " +
+            "e.g. tcp://127.0.0.1:5555")
+    String addresses;
+
+    @Parameter(required = false, description = "Class name of the codec used to decode the items. " +
+            "Has to match the codec of the publisher.", defaultValue = "streams.cta.io.KryoCodec")
+    String codec = KryoCodec.class.getName();
+
+    @Parameter(required = false, description = "How many milliseconds to retry connecting to a publisher " +
+            "which is not listening yet.", defaultValue = "10000")
+    long connectTimeout = 10000;
+
+    @Parameter(required = false, description = "Log the messages and bytes per second every this many " +
+            "milliseconds. 0 disables the report.", defaultValue = "0")
+    long reportInterval = 0;
+
+    private streams.codec.Codec<Data> itemCodec;
+    private Selector selector;
+    private final List<Connection> connections = new ArrayList<>();
+    private int nextConnection = 0;
+    private EventTransport.Rate rate;
+
+    private static final class Connection {
+        final SocketChannel channel;
+        //always in write mode. Holds the bytes received but not decoded yet.
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    @Override
+    public void init() throws Exception {
+        super.init();
+        if (itemCodec == null) {
+            itemCodec = EventTransport.createCodec(codec);
+        }
+        rate = new EventTransport.Rate(log, "Received", reportInterval);
+
+        selector = Selector.open();
+        for (InetSocketAddress address : EventTransport.parseAddresses(addresses)) {
+            SocketChannel channel = connect(address);
+            channel.configureBlocking(false);
+            Connection connection = new Connection(channel);
+            channel.register(selector, SelectionKey.OP_READ, connection);
+            connections.add(connection);
+            log.info("Subscribed to {}", address);
+        }
+    }
+
+    private SocketChannel connect(InetSocketAddress address) throws IOException, InterruptedException {
+        long deadline = System.currentTimeMillis() + connectTimeout;
+        while (true) {
+            try {
+                SocketChannel channel = SocketChannel.open(address);
+                channel.socket().setTcpNoDelay(true);
+                return channel;
+            } catch (ConnectException e) {
+                if (System.currentTimeMillis() >= deadline) {
+                    throw e;
+                }
+                Thread.sleep(100);
+            }
+        }
+    }
+
+    @Override
+    public Data readNext() throws Exception {
+        while (!connections.isEmpty()) {
+            //take complete frames from the connections in turn, so no publisher is starved.
+            for (int i = 0; i < connections.size(); i++) {
+                Connection connection = connections.get((nextConnection + i) % connections.size());
+                Data item = nextFrame(connection);
+                if (item != null) {
+                    nextConnection = (nextConnection + i + 1) % connections.size();
+                    return item;
+                }
+            }
+
+            selector.select();
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                Connection connection = (Connection) key.attachment();
+                if (connection.channel.read(connection.buffer) < 0) {
+                    if (connection.buffer.position() > 0) {
+                        log.warn("Connection closed in the middle of a frame. {} bytes are lost.",
+                                connection.buffer.position());
+                    }
+                    key.cancel();
+                    connection.channel.close();
+                    connections.remove(connection);
+                    log.info("Publisher closed the connection. {} connections left.", connections.size());
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Decode the next frame in the buffer of the connection.
+     *
+     * @return the decoded item or null if the buffer does not hold a complete frame yet.
+     */
+    private Data nextFrame(Connection connection) throws Exception {
+        ByteBuffer buffer = connection.buffer;
+        if (buffer.position() < EventTransport.LENGTH_BYTES) {
+            return null;
+        }
+        int length = buffer.getInt(0);
+        if (length < 0 || length > EventTransport.MAX_FRAME_SIZE) {
+            throw new IOException("Invalid frame length " + length + " from " + connection.channel.getRemoteAddress());
+        }
+
+        int size = EventTransport.LENGTH_BYTES + length;
+        if (buffer.position() < size) {
+            if (buffer.capacity() < size) {
+                ByteBuffer larger = ByteBuffer.allocateDirect(Math.max(size, 2 * buffer.capacity()));
+                buffer.flip();
+                larger.put(buffer);
+                connection.buffer = larger;
+            }
+            return null;
+        }
+
+        buffer.flip();
+        buffer.position(EventTransport.LENGTH_BYTES);
+        Data item;
+        if (itemCodec instanceof PooledKryoCodec) {
+            ByteBuffer frame = buffer.slice();
+            frame.limit(length);
+            item = ((PooledKryoCodec) itemCodec).decode(frame);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            item = itemCodec.decode(bytes);
+        }
+        buffer.position(size);
+        buffer.compact();
+        rate.add(size);
+        return item;
+    }
+
+    @Override
+    public void close() throws Exception {
+        super.close();
+        for (Connection connection : connections) {
+            connection.channel.close();
+        }
+        connections.clear();
+        if (selector != null) {
+            selector.close();
+        }
+        if (rate != null) {
+            log.info("Received {} items with {} bytes", rate.getMessages(), rate.getBytes());
+        }
+    }
+
+    public long getReceivedItems() {
+        return rate.getMessages();
+    }
+
+    public void setAddresses(String addresses) {
+        this.addresses = addresses;
+    }
+
+    public void setItemCodec(streams.codec.Codec<Data> codec) {
+        this.itemCodec = codec;
+    }
+
+    public void setConnectTimeout(long connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public void setReportInterval(long reportInterval) {
+        this.reportInterval = reportInterval;
+    }
+}
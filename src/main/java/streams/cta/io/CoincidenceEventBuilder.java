@@ -0,0 +1,523 @@
+package streams.cta.io;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import stream.Data;
+import stream.annotations.Parameter;
+import stream.data.DataFactory;
+import stream.io.Stream;
+import stream.io.multi.AbstractMultiStream;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds array events out of the hits delivered by one inner stream per telescope. Hits whose
+ * timestamps lie within the coincidence window belong to the same array event.
+ *
+ *     <stream id="array" class="streams.cta.io.CoincidenceEventBuilder" window="100" minTelescopes="2">
+ *         <stream id="1" class="streams.cta.io.CTAEventSubscriber" addresses="tcp://telescope1:5555"/>
+ *         <stream id="2" class="streams.cta.io.CTAEventSubscriber" addresses="tcp://telescope2:5555"/>
+ *     </stream>
+ *
+ * A hit is a data item of a single telescope like the ones created by the {@link streams.cta.SplitByTelescope}.
+ * It holds the 'telescope:id', a 'timestamp' and the values of the telescope without prefix. Items
+ * without 'telescope:id' may contain several telescopes in the layout of the {@link ImageStream}, so
+ * e.g. {@link SyntheticImageStream}s can be used as inputs as well. Numeric timestamps are read as
+ * nanoseconds, strings and LocalDateTimes as UTC times.
+ *
+ * The events are created in the layout the Stereo processor expects. The values of the telescopes
+ * are stored under 'telescope:id:*' and the ids in 'array:triggered_telescopes'. Keys like mc:* are
+ * taken from the first hit. Each event gets a consecutive 'event_id' and the timestamp of its
+ * earliest hit.
+ *
+ * The open events are kept in a ring of buckets, each as wide as the window. A hit only has to look
+ * at the buckets next to its own one to find its event, so the cost per hit does not depend on the
+ * trigger rate. The hits of each inner stream have to be ordered by time. The next hit of every
+ * stream is read ahead. The earliest of them is the watermark. Buckets more than one window before
+ * the watermark are complete and their events are emitted. Streams whose next hit lies beyond the
+ * end of the ring wait until the others caught up. Hits earlier than an emitted bucket, e.g. because
+ * they are out of order within their stream, are dropped.
+ *
+ * The watermark can only move on when every stream delivered its next hit. By default a stream which
+ * stops sending hits, e.g. because its telescope does not trigger any more, blocks the events of all
+ * others. With idleTimeout="N" the streams are read on their own threads. A stream which sent no hit
+ * for N milliseconds is left out of the watermark until its next hit arrives. Its hits which arrive
+ * after their events have been emitted are dropped as late hits.
+ *
+ * A telescope takes part in an event only once. A second hit of the same telescope within the
+ * window starts a new event.
+ */
+public class CoincidenceEventBuilder extends AbstractMultiStream {
+
+    static Logger log = LoggerFactory.getLogger(CoincidenceEventBuilder.class);
+
+    @Parameter(required = false, description = "Width of the coincidence window in nanoseconds",
+            defaultValue = "100")
+    long window = 100;
+
+    @Parameter(required = false, description = "Number of buckets in the ring. The ring covers " +
+            "buckets times window nanoseconds. Streams further ahead wait.", defaultValue = "4096")
+    int buckets = 4096;
+
+    @Parameter(required = false, description = "Events with hits of fewer telescopes are dropped.",
+            defaultValue = "1")
+    int minTelescopes = 1;
+
+    @Parameter(required = false, description = "Milliseconds without a hit after which a stream is left " +
+            "out of the watermark until it sends hits again. 0 waits for every stream forever, so a silent " +
+            "stream stops the building of all events.", defaultValue = "0")
+    long idleTimeout = 0;
+
+    private static final class Event {
+        final long bucket;
+        final List<Data> hits = new ArrayList<>(4);
+        final List<Integer> telescopes = new ArrayList<>(4);
+        long first;
+        long last;
+        Serializable timestamp;
+        //next event in the same bucket
+        Event next;
+
+        Event(long bucket, long time, Serializable timestamp) {
+            this.bucket = bucket;
+            this.first = time;
+            this.last = time;
+            this.timestamp = timestamp;
+        }
+    }
+
+    private Stream[] inputs;
+    //the next hit of each input which has not been added to the ring yet and its time
+    private Data[] pending;
+    private long[] pendingTimes;
+    private boolean[] ended;
+
+    //state for reading the inputs on their own threads when an idle timeout is set
+    private static final Data END = DataFactory.create();
+    private BlockingQueue<Data>[] queues;
+    private Thread[] readers;
+    private volatile Exception readerError;
+    //System.currentTimeMillis() when waiting for the next hit of an input started or -1 if not waiting
+    private long[] waitingSince;
+    private boolean[] idle;
+    private int nextIdle = 0;
+
+    private Event[] ring;
+    //the first bucket which has not been emitted yet
+    private long frontier = Long.MIN_VALUE;
+    //the latest bucket holding an event
+    private long newestBucket = Long.MIN_VALUE;
+    private int openEvents = 0;
+
+    private final ArrayDeque<Data> ready = new ArrayDeque<>();
+    private final List<Event> emitting = new ArrayList<>();
+
+    private long eventId = 0;
+    private long hits = 0;
+    private long lateHits = 0;
+    private long droppedEvents = 0;
+
+    @Override
+    public void init() throws Exception {
+        super.init();
+        if (window <= 0) {
+            throw new IllegalArgumentException("The window has to be positive");
+        }
+        if (buckets < 4) {
+            throw new IllegalArgumentException("The ring needs at least 4 buckets");
+        }
+
+        Map<String, Stream> streams = getStreams();
+        inputs = streams.values().toArray(new Stream[streams.size()]);
+        pending = new Data[inputs.length];
+        pendingTimes = new long[inputs.length];
+        ended = new boolean[inputs.length];
+        for (Stream input : inputs) {
+            input.init();
+        }
+        if (idleTimeout > 0) {
+            startReaders();
+        }
+        ring = new Event[buckets];
+        log.info("Building events from {} streams with a window of {} ns", inputs.length, window);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void startReaders() {
+        queues = new BlockingQueue[inputs.length];
+        readers = new Thread[inputs.length];
+        waitingSince = new long[inputs.length];
+        idle = new boolean[inputs.length];
+        Arrays.fill(waitingSince, -1);
+        for (int i = 0; i < inputs.length; i++) {
+            BlockingQueue<Data> queue = new ArrayBlockingQueue<>(1024);
+            Stream input = inputs[i];
+            queues[i] = queue;
+            readers[i] = new Thread(() -> {
+                try {
+                    for (Data hit = input.read(); hit != null; hit = input.read()) {
+                        queue.put(hit);
+                    }
+                } catch (InterruptedException e) {
+                    //closed
+                    return;
+                } catch (Exception e) {
+                    readerError = e;
+                }
+                try {
+                    queue.put(END);
+                } catch (InterruptedException e) {
+                    //closed
+                }
+            }, "CoincidenceEventBuilder " + input.getId());
+            readers[i].setDaemon(true);
+            readers[i].start();
+        }
+    }
+
+    @Override
+    public Data readNext() throws Exception {
+        while (ready.isEmpty()) {
+            //hits still to come are not earlier than the watermark, because each stream is ordered.
+            long watermark = Long.MAX_VALUE;
+            boolean waiting = false;
+            for (int i = 0; i < inputs.length; i++) {
+                if (pending[i] == null && !ended[i]) {
+                    if (queues == null) {
+                        accept(i, inputs[i].read());
+                    } else {
+                        accept(i, queues[i].poll());
+                    }
+                }
+                if (pending[i] != null) {
+                    watermark = Math.min(watermark, pendingTimes[i]);
+                } else if (!ended[i] && !isIdle(i)) {
+                    waiting = true;
+                }
+            }
+            if (waiting) {
+                awaitHit();
+                continue;
+            }
+            if (watermark == Long.MAX_VALUE) {
+                //all streams ended or are idle
+                emitUntil(newestBucket);
+                if (ready.isEmpty() && !allEnded()) {
+                    awaitHit();
+                    continue;
+                }
+                return ready.poll();
+            }
+
+            long watermarkBucket = Math.floorDiv(watermark, window);
+            if (frontier == Long.MIN_VALUE) {
+                frontier = watermarkBucket - 1;
+            }
+            //the hits can only join events which started less than two buckets before them.
+            emitUntil(watermarkBucket - 2);
+
+            //streams ahead of the others wait until their hits fit into the ring
+            for (int i = 0; i < inputs.length; i++) {
+                if (pending[i] != null && Math.floorDiv(pendingTimes[i], window) < frontier + buckets) {
+                    add(pending[i], pendingTimes[i]);
+                    pending[i] = null;
+                }
+            }
+        }
+        return ready.poll();
+    }
+
+    /**
+     * Take the next hit of the input or note that there is none yet.
+     */
+    private void accept(int i, Data hit) throws Exception {
+        if (hit == END || (hit == null && queues == null)) {
+            ended[i] = true;
+            if (readerError != null) {
+                throw readerError;
+            }
+        } else if (hit != null) {
+            pending[i] = hit;
+            pendingTimes[i] = time(hit);
+            if (queues != null) {
+                waitingSince[i] = -1;
+                if (idle[i]) {
+                    idle[i] = false;
+                    log.info("Stream {} sends hits again.", inputs[i].getId());
+                }
+            }
+        } else if (waitingSince[i] < 0) {
+            waitingSince[i] = System.currentTimeMillis();
+        }
+    }
+
+    private boolean isIdle(int i) {
+        if (queues == null || waitingSince[i] < 0) {
+            return false;
+        }
+        if (!idle[i] && System.currentTimeMillis() - waitingSince[i] >= idleTimeout) {
+            idle[i] = true;
+            log.info("Stream {} sent no hit for {} ms. Building events without it.", inputs[i].getId(), idleTimeout);
+        }
+        return idle[i];
+    }
+
+    private boolean allEnded() {
+        for (boolean e : ended) {
+            if (!e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Wait for the next hit of the input which becomes idle first. When all inputs without a hit are
+     * idle already, wait a short time for each of them in turn.
+     */
+    private void awaitHit() throws Exception {
+        int input = -1;
+        for (int i = 0; i < inputs.length; i++) {
+            if (pending[i] == null && !ended[i] && !idle[i]
+                    && (input < 0 || waitingSince[i] < waitingSince[input])) {
+                input = i;
+            }
+        }
+        long timeout;
+        if (input >= 0) {
+            timeout = Math.max(waitingSince[input] + idleTimeout - System.currentTimeMillis(), 1);
+        } else {
+            do {
+                input = nextIdle;
+                nextIdle = (nextIdle + 1) % inputs.length;
+            } while (pending[input] != null || ended[input]);
+            timeout = Math.min(idleTimeout, 100);
+        }
+        accept(input, queues[input].poll(timeout, TimeUnit.MILLISECONDS));
+    }
+
+    private static long time(Data hit) {
+        Serializable timestamp = hit.get("timestamp");
+        if (timestamp instanceof Number) {
+            return ((Number) timestamp).longValue();
+        }
+        LocalDateTime time;
+        if (timestamp instanceof LocalDateTime) {
+            time = (LocalDateTime) timestamp;
+        } else if (timestamp instanceof String) {
+            time = LocalDateTime.parse((String) timestamp);
+        } else {
+            throw new IllegalArgumentException("Hit has no timestamp: " + timestamp);
+        }
+        return time.toEpochSecond(ZoneOffset.UTC) * 1000000000L + time.getNano();
+    }
+
+    private void add(Data hit, long time) {
+        hits++;
+        long bucket = Math.floorDiv(time, window);
+        if (bucket < frontier) {
+            lateHits++;
+            return;
+        }
+
+        int[] ids = telescopeIds(hit);
+        Event event = null;
+        for (long b = Math.max(bucket - 1, frontier); b <= bucket + 1 && event == null; b++) {
+            for (Event e = ring[index(b)]; e != null; e = e.next) {
+                if (e.bucket == b && Math.max(time, e.last) - Math.min(time, e.first) < window
+                        && !containsAny(e.telescopes, ids)) {
+                    event = e;
+                    break;
+                }
+            }
+        }
+        if (event == null) {
+            event = new Event(bucket, time, hit.get("timestamp"));
+            event.next = ring[index(bucket)];
+            ring[index(bucket)] = event;
+            newestBucket = Math.max(newestBucket, bucket);
+            openEvents++;
+        }
+
+        if (time < event.first) {
+            event.first = time;
+            event.timestamp = hit.get("timestamp");
+        }
+        event.last = Math.max(event.last, time);
+        event.hits.add(hit);
+        for (int id : ids) {
+            event.telescopes.add(id);
+        }
+    }
+
+    private int index(long bucket) {
+        return (int) Math.floorMod(bucket, (long) buckets);
+    }
+
+    private static int[] telescopeIds(Data hit) {
+        Serializable id = hit.get("telescope:id");
+        if (id != null) {
+            return new int[]{((Number) id).intValue()};
+        }
+        int[] ids = (int[]) hit.get(Names.TRIGGERED_TELESCOPE_IDS);
+        if (ids == null) {
+            throw new IllegalArgumentException("Hit has neither telescope:id nor " + Names.TRIGGERED_TELESCOPE_IDS);
+        }
+        return ids;
+    }
+
+    private static boolean containsAny(List<Integer> telescopes, int[] ids) {
+        for (int id : ids) {
+            if (telescopes.contains(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Emit the events of all buckets up to and including the given one.
+     */
+    private void emitUntil(long lastBucket) {
+        while (frontier <= lastBucket && frontier != Long.MIN_VALUE) {
+            if (openEvents == 0) {
+                //nothing to emit in between, e.g. after a pause of the triggers
+                frontier = lastBucket + 1;
+                return;
+            }
+            int index = index(frontier);
+            Event e = ring[index];
+            Event keep = null;
+            while (e != null) {
+                Event next = e.next;
+                if (e.bucket == frontier) {
+                    emitting.add(e);
+                    openEvents--;
+                } else {
+                    e.next = keep;
+                    keep = e;
+                }
+                e = next;
+            }
+            ring[index] = keep;
+
+            emitting.sort((a, b) -> Long.compare(a.first, b.first));
+            for (Event event : emitting) {
+                emit(event);
+            }
+            emitting.clear();
+            frontier++;
+        }
+    }
+
+    private void emit(Event event) {
+        if (event.telescopes.size() < minTelescopes) {
+            droppedEvents++;
+            return;
+        }
+
+        Data item = DataFactory.create();
+        for (Data hit : event.hits) {
+            Serializable id = hit.get("telescope:id");
+            if (id == null) {
+                for (Map.Entry<String, Serializable> entry : hit.entrySet()) {
+                    if (entry.getKey().startsWith("telescope:")) {
+                        item.put(entry.getKey(), entry.getValue());
+                    }
+                }
+                continue;
+            }
+            String prefix = "telescope:" + id + ":";
+            for (Map.Entry<String, Serializable> entry : hit.entrySet()) {
+                if (!isShared(entry.getKey())) {
+                    item.put(prefix + entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        Data first = event.hits.get(0);
+        for (Map.Entry<String, Serializable> entry : first.entrySet()) {
+            if (entry.getKey().startsWith("mc:") || entry.getKey().equals("run_id")
+                    || entry.getKey().equals("source_file")) {
+                item.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        int[] triggered = new int[event.telescopes.size()];
+        for (int i = 0; i < triggered.length; i++) {
+            triggered[i] = event.telescopes.get(i);
+        }
+        Arrays.sort(triggered);
+        item.put(Names.TRIGGERED_TELESCOPE_IDS, triggered);
+        item.put(Names.NUM_TRIGGERED_TELESCOPES, triggered.length);
+        item.put("event_id", eventId++);
+        item.put("timestamp", event.timestamp);
+        ready.add(item);
+    }
+
+    /**
+     * @return true for the keys of a hit which describe the whole event instead of the telescope
+     */
+    private static boolean isShared(String key) {
+        return key.startsWith("array:") || key.startsWith("mc:") || key.equals("telescope:id")
+                || key.equals("timestamp") || key.equals("event_id") || key.equals("run_id")
+                || key.equals("unique_event_id") || key.equals("source_file");
+    }
+
+    @Override
+    public void close() throws Exception {
+        super.close();
+        if (inputs == null) {
+            return;
+        }
+        if (readers != null) {
+            for (Thread reader : readers) {
+                reader.interrupt();
+            }
+        }
+        for (Stream input : inputs) {
+            input.close();
+        }
+        log.info("Built {} events from {} hits. {} late hits and {} events with too few telescopes dropped.",
+                eventId, hits, lateHits, droppedEvents);
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getLateHits() {
+        return lateHits;
+    }
+
+    public long getDroppedEvents() {
+        return droppedEvents;
+    }
+
+    public void setWindow(long window) {
+        this.window = window;
+    }
+
+    public void setBuckets(int buckets) {
+        this.buckets = buckets;
+    }
+
+    public void setMinTelescopes(int minTelescopes) {
+        this.minTelescopes = minTelescopes;
+    }
+
+    public void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+}
@@ -0,0 +1,344 @@
+package streams.cta.io;
+
+import stream.Data;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A data item which stores its values by the slots of the {@link KeyRegistry} instead of hashing
+ * the keys into entry objects like a HashMap.
+ *
+ * The slots and values are kept in two arrays in insertion order. An open addressing table of ints
+ * finds the position of a slot. So putting a value allocates nothing once the arrays are large
+ * enough, and copying an item only copies three arrays. Looking up a key costs one lookup in the
+ * registry. Registered keys are interned and their hash codes are cached, so this is cheap for keys
+ * from the {@link KeyRegistry.TelescopeKeys} tables or constants. Code which knows the slot of a key
+ * can skip the registry with {@link #get(int)} and {@link #put(int, Serializable)}.
+ *
+ * Every key put into the item is registered. So this is meant for the fixed set of keys of the CTA
+ * events, not for items with keys built from arbitrary values.
+ *
+ * The items are written by java serialization with their keys, so they can be read by a process
+ * with different slots. Instances of this class are not thread-safe.
+ */
+public final class CompactData extends AbstractMap<String, Serializable> implements Data {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int REMOVED = -1;
+
+    //slot and value of every entry in insertion order. Removed entries have the slot REMOVED.
+    private transient int[] slots;
+    private transient Serializable[] values;
+    //number of positions used in slots and values including removed entries
+    private transient int used;
+    private transient int size;
+
+    //open addressing table with linear probing. Holds position + 1 of the entries, 0 is empty.
+    private transient int[] table;
+    private transient int shift;
+
+    public CompactData() {
+        this(16);
+    }
+
+    public CompactData(int expectedSize) {
+        allocate(Math.max(expectedSize, 4));
+    }
+
+    public CompactData(Map<String, Serializable> values) {
+        this(values.size());
+        putAll(values);
+    }
+
+    private CompactData(CompactData other) {
+        slots = other.slots.clone();
+        values = other.values.clone();
+        table = other.table.clone();
+        shift = other.shift;
+        used = other.used;
+        size = other.size;
+    }
+
+    private void allocate(int capacity) {
+        slots = new int[capacity];
+        values = new Serializable[capacity];
+        int tableSize = Integer.highestOneBit(capacity * 2 - 1) << 1;
+        table = new int[tableSize];
+        shift = 32 - Integer.numberOfTrailingZeros(tableSize);
+        used = 0;
+        size = 0;
+    }
+
+    private int home(int slot) {
+        return (slot * 0x9E3779B9) >>> shift;
+    }
+
+    /**
+     * @return the position of the slot in the entry arrays or -1
+     */
+    private int find(int slot) {
+        int mask = table.length - 1;
+        for (int i = home(slot); ; i = (i + 1) & mask) {
+            int entry = table[i];
+            if (entry == 0) {
+                return -1;
+            }
+            if (slots[entry - 1] == slot) {
+                return entry - 1;
+            }
+        }
+    }
+
+    /**
+     * @return the value stored for the slot of the {@link KeyRegistry} or null
+     */
+    public Serializable get(int slot) {
+        int position = find(slot);
+        return position < 0 ? null : values[position];
+    }
+
+    /**
+     * Store the value for the slot of the {@link KeyRegistry}.
+     *
+     * @return the previous value or null
+     */
+    public Serializable put(int slot, Serializable value) {
+        int position = find(slot);
+        if (position >= 0) {
+            Serializable previous = values[position];
+            values[position] = value;
+            return previous;
+        }
+        if (used == slots.length) {
+            resize();
+        }
+        position = used++;
+        slots[position] = slot;
+        values[position] = value;
+        size++;
+        insert(slot, position);
+        return null;
+    }
+
+    private void insert(int slot, int position) {
+        int mask = table.length - 1;
+        int i = home(slot);
+        while (table[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        table[i] = position + 1;
+    }
+
+    /**
+     * Drop the removed entries and grow the arrays if the item is more than half full.
+     */
+    private void resize() {
+        int[] oldSlots = slots;
+        Serializable[] oldValues = values;
+        int oldUsed = used;
+        allocate(size * 2 > oldSlots.length ? 2 * oldSlots.length : oldSlots.length);
+        for (int position = 0; position < oldUsed; position++) {
+            if (oldSlots[position] != REMOVED) {
+                slots[used] = oldSlots[position];
+                values[used] = oldValues[position];
+                insert(slots[used], used);
+                used++;
+                size++;
+            }
+        }
+    }
+
+    private Serializable removeAt(int position) {
+        Serializable previous = values[position];
+        int mask = table.length - 1;
+        int i = home(slots[position]);
+        while (table[i] != position + 1) {
+            i = (i + 1) & mask;
+        }
+        //shift the following entries of the probe sequence back, so no lookup stops at the gap.
+        for (int j = (i + 1) & mask; table[j] != 0; j = (j + 1) & mask) {
+            int h = home(slots[table[j] - 1]);
+            boolean movable = i <= j ? (h <= i || h > j) : (h <= i && h > j);
+            if (movable) {
+                table[i] = table[j];
+                i = j;
+            }
+        }
+        table[i] = 0;
+        slots[position] = REMOVED;
+        values[position] = null;
+        size--;
+        return previous;
+    }
+
+    @Override
+    public Serializable get(Object key) {
+        int slot = KeyRegistry.slotIfPresent(key);
+        return slot < 0 ? null : get(slot);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        int slot = KeyRegistry.slotIfPresent(key);
+        return slot >= 0 && find(slot) >= 0;
+    }
+
+    @Override
+    public Serializable put(String key, Serializable value) {
+        return put(KeyRegistry.slot(key), value);
+    }
+
+    @Override
+    public Serializable remove(Object key) {
+        int slot = KeyRegistry.slotIfPresent(key);
+        if (slot < 0) {
+            return null;
+        }
+        int position = find(slot);
+        return position < 0 ? null : removeAt(position);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(values, 0, used, null);
+        Arrays.fill(table, 0);
+        used = 0;
+        size = 0;
+    }
+
+    @Override
+    public Data createCopy() {
+        return new CompactData(this);
+    }
+
+    @Override
+    public Set<Entry<String, Serializable>> entrySet() {
+        return new AbstractSet<Entry<String, Serializable>>() {
+            @Override
+            public Iterator<Entry<String, Serializable>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private final class EntryIterator implements Iterator<Entry<String, Serializable>> {
+        private int next = 0;
+        private int last = -1;
+
+        @Override
+        public boolean hasNext() {
+            while (next < used && slots[next] == REMOVED) {
+                next++;
+            }
+            return next < used;
+        }
+
+        @Override
+        public Entry<String, Serializable> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            last = next++;
+            return new CompactEntry(last);
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0 || slots[last] == REMOVED) {
+                throw new IllegalStateException();
+            }
+            removeAt(last);
+            last = -1;
+        }
+    }
+
+    private final class CompactEntry implements Entry<String, Serializable> {
+        private final int position;
+        private final String key;
+
+        CompactEntry(int position) {
+            this.position = position;
+            this.key = KeyRegistry.key(slots[position]);
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public Serializable getValue() {
+            return values[position];
+        }
+
+        @Override
+        public Serializable setValue(Serializable value) {
+            Serializable previous = values[position];
+            values[position] = value;
+            return previous;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry<?, ?> e = (Entry<?, ?>) o;
+            Object value = getValue();
+            return key.equals(e.getKey()) && (value == null ? e.getValue() == null : value.equals(e.getValue()));
+        }
+
+        @Override
+        public int hashCode() {
+            Object value = getValue();
+            return key.hashCode() ^ (value == null ? 0 : value.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + getValue();
+        }
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(size);
+        for (int position = 0; position < used; position++) {
+            if (slots[position] != REMOVED) {
+                out.writeObject(KeyRegistry.key(slots[position]));
+                out.writeObject(values[position]);
+            }
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int n = in.readInt();
+        allocate(Math.max(n, 4));
+        for (int i = 0; i < n; i++) {
+            String key = (String) in.readObject();
+            put(key, (Serializable) in.readObject());
+        }
+    }
+}
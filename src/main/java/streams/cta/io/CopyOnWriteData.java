@@ -0,0 +1,193 @@
+package streams.cta.io;
+
+import stream.Data;
+import stream.data.DataFactory;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A data item on top of a shared item which is never modified. Reading a key returns the value of
+ * the shared item until the key is put or removed. Only the keys changed by the processors are
+ * stored in this item. So creating the item is cheap no matter how many keys the shared item has.
+ *
+ * Like a copy created with {@link DataFactory#create(Data)} the values themselves are shared.
+ * Processors must not change arrays of the shared item in place.
+ */
+final class CopyOnWriteData extends AbstractMap<String, Serializable> implements Data {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Map<String, Serializable> base;
+
+    //the keys put into this item. Created on the first put.
+    private Map<String, Serializable> changed;
+
+    //the keys of the base removed from this item. Created on the first remove.
+    private Set<String> removed;
+
+    CopyOnWriteData(Map<String, Serializable> base) {
+        this.base = base;
+    }
+
+    @Override
+    public Serializable get(Object key) {
+        if (changed != null && changed.containsKey(key)) {
+            return changed.get(key);
+        }
+        if (removed != null && removed.contains(key)) {
+            return null;
+        }
+        return base.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (changed != null && changed.containsKey(key)) {
+            return true;
+        }
+        return base.containsKey(key) && (removed == null || !removed.contains(key));
+    }
+
+    @Override
+    public Serializable put(String key, Serializable value) {
+        Serializable previous = get(key);
+        if (changed == null) {
+            changed = new LinkedHashMap<>();
+        }
+        changed.put(key, value);
+        if (removed != null) {
+            removed.remove(key);
+        }
+        return previous;
+    }
+
+    @Override
+    public Serializable remove(Object key) {
+        Serializable previous = get(key);
+        if (changed != null) {
+            changed.remove(key);
+        }
+        if (key instanceof String && base.containsKey(key)) {
+            if (removed == null) {
+                removed = new HashSet<>();
+            }
+            removed.add((String) key);
+        }
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        changed = null;
+        removed = new HashSet<>(base.keySet());
+    }
+
+    @Override
+    public int size() {
+        int size = base.size() - (removed == null ? 0 : removed.size());
+        if (changed != null) {
+            for (String key : changed.keySet()) {
+                if (!base.containsKey(key) || (removed != null && removed.contains(key))) {
+                    size++;
+                }
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public Data createCopy() {
+        return DataFactory.create(this);
+    }
+
+    @Override
+    public Set<Entry<String, Serializable>> entrySet() {
+        return new AbstractSet<Entry<String, Serializable>>() {
+            @Override
+            public Iterator<Entry<String, Serializable>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return CopyOnWriteData.this.size();
+            }
+        };
+    }
+
+    /**
+     * Iterates over the unchanged keys of the base first and over the changed keys afterwards.
+     */
+    private final class EntryIterator implements Iterator<Entry<String, Serializable>> {
+        private final Iterator<Entry<String, Serializable>> baseEntries = base.entrySet().iterator();
+        private Iterator<Entry<String, Serializable>> changedEntries;
+        private Entry<String, Serializable> next;
+        private String lastKey;
+        private boolean lastFromChanged;
+
+        @Override
+        public boolean hasNext() {
+            if (next != null) {
+                return true;
+            }
+            while (changedEntries == null && baseEntries.hasNext()) {
+                Entry<String, Serializable> entry = baseEntries.next();
+                String key = entry.getKey();
+                if ((removed == null || !removed.contains(key)) && (changed == null || !changed.containsKey(key))) {
+                    next = new SimpleImmutableEntry<>(entry);
+                    return true;
+                }
+            }
+            if (changedEntries == null) {
+                changedEntries = changed == null
+                        ? Collections.<Entry<String, Serializable>>emptyIterator()
+                        : changed.entrySet().iterator();
+            }
+            return changedEntries.hasNext();
+        }
+
+        @Override
+        public Entry<String, Serializable> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Entry<String, Serializable> entry;
+            if (next != null) {
+                entry = next;
+                next = null;
+                lastFromChanged = false;
+            } else {
+                entry = changedEntries.next();
+                lastFromChanged = true;
+            }
+            lastKey = entry.getKey();
+            return entry;
+        }
+
+        @Override
+        public void remove() {
+            if (lastKey == null) {
+                throw new IllegalStateException();
+            }
+            if (lastFromChanged) {
+                changedEntries.remove();
+            }
+            if (base.containsKey(lastKey)) {
+                if (removed == null) {
+                    removed = new HashSet<>();
+                }
+                removed.add(lastKey);
+            }
+            lastKey = null;
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package streams.cta.io;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Watches a directory tree for new files matching a pattern and passes them on once they have been
+ * written completely. Used by the {@link RecursiveDirectoryStream} in watch mode.
+ *
+ * Changes are detected with a {@link WatchService}. On file systems which do not deliver events (like
+ * many network file systems) or when polling is requested, the tree is walked again every poll
+ * interval instead. A file counts as complete when its size did not change for one poll interval.
+ *
+ * The watcher runs on its own thread until it is closed or until one of the stop conditions is met:
+ * a file with the name given as stop file appears in the root directory, or no new file appeared for
+ * longer than the idle timeout. When stopping, all files which are still waiting to settle are passed
+ * on as well.
+ */
+final class DirectoryWatcher {
+
+    static Logger log = LoggerFactory.getLogger(DirectoryWatcher.class);
+
+    private final Path root;
+    private final int maxDepth;
+    private final PathMatcher matcher;
+    private final Consumer<Path> sink;
+
+    private final long pollInterval;
+    private final boolean polling;
+    private final String stopFile;
+    private final long idleTimeout;
+
+    //files which have been passed on already
+    private final Set<Path> known;
+    //files waiting for their size to settle
+    private final Map<Path, Pending> pending = new HashMap<>();
+
+    /**
+     * The size of a waiting file seen at the last check and the time it was first seen with that size.
+     */
+    private static final class Pending {
+        long size = -1;
+        long changed;
+
+        Pending(long changed) {
+            this.changed = changed;
+        }
+    }
+
+    private WatchService watchService;
+    private final Map<WatchKey, Path> watchedDirectories = new HashMap<>();
+
+    private final Thread thread;
+    private volatile boolean closed = false;
+    private volatile boolean finished = false;
+    private long lastNewFile;
+
+    /**
+     * @param root the directory to watch
+     * @param maxDepth the maximum depth of files below the root
+     * @param matcher matches the files to pass on
+     * @param known files which should not be passed on. new files are added to this set.
+     * @param sink receives the complete files
+     * @param pollInterval milliseconds between two checks of the waiting files or walks of the tree
+     * @param polling walk the tree instead of using a watch service
+     * @param stopFile name of a file in the root directory which ends watching. null to disable.
+     * @param idleTimeout milliseconds without new files after which watching ends. 0 to disable.
+     */
+    DirectoryWatcher(Path root, int maxDepth, PathMatcher matcher, Set<Path> known, Consumer<Path> sink,
+                     long pollInterval, boolean polling, String stopFile, long idleTimeout) {
+        this.root = root;
+        this.maxDepth = maxDepth;
+        this.matcher = matcher;
+        this.known = known;
+        this.sink = sink;
+        this.pollInterval = pollInterval;
+        this.polling = polling;
+        this.stopFile = stopFile;
+        this.idleTimeout = idleTimeout;
+        this.thread = new Thread(this::watch, "DirectoryWatcher-" + root.getFileName());
+        this.thread.setDaemon(true);
+    }
+
+    void start() throws IOException {
+        if (!polling) {
+            try {
+                watchService = root.getFileSystem().newWatchService();
+                registerTree(root);
+            } catch (UnsupportedOperationException | IOException e) {
+                log.warn("Cannot watch {}. Polling every {} ms instead.", root, pollInterval);
+                closeWatchService();
+            }
+        }
+        lastNewFile = System.currentTimeMillis();
+        thread.start();
+    }
+
+    /**
+     * @return true once a stop condition was met and all files have been passed on
+     */
+    boolean isFinished() {
+        return finished;
+    }
+
+    private void watch() {
+        try {
+            while (!closed) {
+                if (watchService != null) {
+                    WatchKey key = watchService.poll(pollInterval, TimeUnit.MILLISECONDS);
+                    while (key != null) {
+                        handleEvents(key);
+                        key = watchService.poll();
+                    }
+                } else {
+                    Thread.sleep(pollInterval);
+                    scanTree(root);
+                }
+
+                checkPendingFiles();
+
+                if (stopConditionMet()) {
+                    pending.keySet().forEach(this::passOn);
+                    pending.clear();
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            //closed
+        } catch (IOException e) {
+            log.error("Stopped watching {}", root, e);
+        } finally {
+            finished = true;
+            closeWatchService();
+        }
+    }
+
+    private boolean stopConditionMet() {
+        if (stopFile != null && Files.exists(root.resolve(stopFile))) {
+            log.info("Found {}. Stop watching {}", stopFile, root);
+            return true;
+        }
+        if (idleTimeout > 0 && pending.isEmpty() && System.currentTimeMillis() - lastNewFile > idleTimeout) {
+            log.info("No new files for {} ms. Stop watching {}", idleTimeout, root);
+            return true;
+        }
+        return false;
+    }
+
+    private void handleEvents(WatchKey key) throws IOException {
+        Path directory = watchedDirectories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                //events have been lost. look at the whole tree.
+                scanTree(root);
+                continue;
+            }
+            Path child = directory.resolve((Path) event.context());
+            if (Files.isDirectory(child)) {
+                if (depth(child) < maxDepth) {
+                    registerTree(child);
+                }
+            } else {
+                consider(child);
+            }
+        }
+        if (!key.reset()) {
+            watchedDirectories.remove(key);
+        }
+    }
+
+    private void registerTree(Path start) throws IOException {
+        Files.walkFileTree(start, EnumSet.noneOf(FileVisitOption.class), maxDepth - depth(start),
+                new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                        if (depth(dir) < maxDepth) {
+                            watchedDirectories.put(dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY), dir);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        //files which were created before the directory was registered
+                        consider(file);
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+    }
+
+    private void scanTree(Path start) throws IOException {
+        Files.walkFileTree(start, EnumSet.noneOf(FileVisitOption.class), maxDepth, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                consider(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private int depth(Path path) {
+        return root.relativize(path).getNameCount() - (path.equals(root) ? 1 : 0);
+    }
+
+    private void consider(Path file) {
+        if (known.contains(file) || pending.containsKey(file) || !matcher.matches(file)) {
+            return;
+        }
+        if (Files.isRegularFile(file)) {
+            //the size is checked at the next round.
+            pending.put(file, new Pending(System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * Pass on the waiting files whose size did not change for at least one poll interval. This is
+     * called after every wake up of the watch service, which may be much more often than that.
+     */
+    private void checkPendingFiles() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<Path, Pending>> iterator = pending.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Path, Pending> entry = iterator.next();
+            Pending file = entry.getValue();
+            long size;
+            try {
+                size = Files.size(entry.getKey());
+            } catch (IOException e) {
+                //the file has been removed again.
+                iterator.remove();
+                continue;
+            }
+            if (size != file.size) {
+                file.size = size;
+                file.changed = now;
+            } else if (now - file.changed >= pollInterval) {
+                iterator.remove();
+                passOn(entry.getKey());
+            }
+        }
+    }
+
+    private void passOn(Path file) {
+        known.add(file);
+        lastNewFile = System.currentTimeMillis();
+        log.info("New file {}", file);
+        sink.accept(file);
+    }
+
+    private void closeWatchService() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                log.warn("Could not close watch service for {}", root);
+            }
+            watchService = null;
+        }
+    }
+
+    /**
+     * Stop watching. Waits a short while for the watching thread to end.
+     */
+    void close() throws InterruptedException {
+        closed = true;
+        thread.interrupt();
+        thread.join(TimeUnit.SECONDS.toMillis(5));
+    }
+}
@@ -0,0 +1,70 @@
+package streams.cta.io;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import stream.Data;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds the decoded events of the loop streams once per process. All streams asking for the same
+ * pool share its events. The first stream loads the events while the others wait for it. The
+ * events are dropped once the last stream released the pool.
+ *
+ * The pooled events must not be modified. The loop streams hand out {@link CopyOnWriteData} views.
+ */
+final class EventPool {
+
+    static Logger log = LoggerFactory.getLogger(EventPool.class);
+
+    interface Loader {
+        List<Data> load() throws Exception;
+    }
+
+    private static final class Pool {
+        int users = 0;
+        List<Data> events;
+    }
+
+    private static final Map<String, Pool> POOLS = new HashMap<>();
+
+    private EventPool() {
+    }
+
+    /**
+     * Get the events of the pool with the given name. They are loaded if no other stream did so yet.
+     * Every call has to be followed by a call to {@link #release(String)}.
+     */
+    static List<Data> acquire(String name, Loader loader) throws Exception {
+        Pool pool;
+        synchronized (POOLS) {
+            pool = POOLS.computeIfAbsent(name, n -> new Pool());
+            pool.users++;
+        }
+
+        synchronized (pool) {
+            if (pool.events == null) {
+                try {
+                    pool.events = Collections.unmodifiableList(loader.load());
+                    log.info("Loaded {} events into pool {}", pool.events.size(), name);
+                } catch (Exception e) {
+                    release(name);
+                    throw e;
+                }
+            }
+            return pool.events;
+        }
+    }
+
+    static void release(String name) {
+        synchronized (POOLS) {
+            Pool pool = POOLS.get(name);
+            if (pool != null && --pool.users == 0) {
+                POOLS.remove(name);
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package streams.cta.io;
+
+import org.slf4j.Logger;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Things shared by the {@link CTAEventPublisher} and the {@link CTAEventSubscriber}.
+ *
+ * Items are sent over tcp as frames. Each frame is the length of the encoded item as a big endian
+ * int followed by the bytes of the encoded item.
+ */
+final class EventTransport {
+
+    static final int LENGTH_BYTES = 4;
+
+    //refuse to allocate buffers for frames larger than this. A broken stream most likely.
+    static final int MAX_FRAME_SIZE = 256 << 20;
+
+    private EventTransport() {
+    }
+
+    /**
+     * Parse a comma separated list of addresses like tcp://127.0.0.1:5555. The host * stands for
+     * all local addresses.
+     */
+    static List<InetSocketAddress> parseAddresses(String addresses) {
+        List<InetSocketAddress> result = new ArrayList<>();
+        for (String address : addresses.split(",")) {
+            address = address.trim();
+            if (address.isEmpty()) {
+                continue;
+            }
+            if (!address.startsWith("tcp://")) {
+                throw new IllegalArgumentException("Only tcp:// addresses are supported: " + address);
+            }
+            String hostAndPort = address.substring("tcp://".length());
+            int colon = hostAndPort.lastIndexOf(':');
+            if (colon < 0) {
+                throw new IllegalArgumentException("Address without port: " + address);
+            }
+            String host = hostAndPort.substring(0, colon);
+            int port = Integer.parseInt(hostAndPort.substring(colon + 1));
+            if (host.equals("*")) {
+                result.add(new InetSocketAddress(port));
+            } else {
+                result.add(new InetSocketAddress(host, port));
+            }
+        }
+        if (result.isEmpty()) {
+            throw new IllegalArgumentException("No addresses given");
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    static streams.codec.Codec<stream.Data> createCodec(String className) throws Exception {
+        return (streams.codec.Codec<stream.Data>) Class.forName(className).newInstance();
+    }
+
+    /**
+     * Counts the transferred frames and bytes and logs the rates every reportInterval milliseconds.
+     */
+    static final class Rate {
+        private final Logger log;
+        private final String name;
+        private final long reportInterval;
+
+        private long messages = 0;
+        private long bytes = 0;
+        private long reportedMessages = 0;
+        private long reportedBytes = 0;
+        private long lastReport = System.nanoTime();
+
+        Rate(Logger log, String name, long reportInterval) {
+            this.log = log;
+            this.name = name;
+            this.reportInterval = reportInterval;
+        }
+
+        synchronized void add(long frameBytes) {
+            messages++;
+            bytes += frameBytes;
+            if (reportInterval <= 0) {
+                return;
+            }
+            long now = System.nanoTime();
+            double seconds = (now - lastReport) / 1e9;
+            if (seconds * 1000 >= reportInterval) {
+                log.info("{}: {} messages/s, {} MB/s", name,
+                        String.format("%.1f", (messages - reportedMessages) / seconds),
+                        String.format("%.2f", (bytes - reportedBytes) / seconds / 1e6));
+                reportedMessages = messages;
+                reportedBytes = bytes;
+                lastReport = now;
+            }
+        }
+
+        synchronized long getMessages() {
+            return messages;
+        }
+
+        synchronized long getBytes() {
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package streams.cta.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the tables written by the {@link FeatureTableWriter} chunk by chunk. Only the selected
+ * columns are read from the file. Chunks can be skipped without reading any values by giving ranges
+ * for columns. A chunk is skipped when the minimum and maximum stored for the column show that none
+ * of its values lies within the range.
+ *
+ * For example reading the true energy of all events with an estimated energy above 10 TeV:
+ *
+ *     try (FeatureTableReader reader = FeatureTableReader.open(path)) {
+ *         reader.select("mc:energy", "prediction:energy:mean");
+ *         reader.where("prediction:energy:mean", 10, Double.POSITIVE_INFINITY);
+ *         FeatureTableReader.Chunk chunk = reader.nextChunk();
+ *         while (chunk != null) {
+ *             double[] estimated = chunk.getDoubles("prediction:energy:mean");
+ *             ...
+ *             chunk = reader.nextChunk();
+ *         }
+ *     }
+ *
+ * The ranges only select the chunks. The rows within a chunk still have to be filtered.
+ */
+public class FeatureTableReader implements Closeable {
+
+    private final FileChannel channel;
+    private final String[] names;
+    private final byte[] types;
+    private final Map<String, Integer> columnIndices = new HashMap<>();
+
+    private boolean[] selected;
+    private final List<Range> ranges = new ArrayList<>();
+
+    private long position;
+    private long skippedChunks = 0;
+
+    private static final class Range {
+        final int column;
+        final double lower;
+        final double upper;
+
+        Range(int column, double lower, double upper) {
+            this.column = column;
+            this.lower = lower;
+            this.upper = upper;
+        }
+    }
+
+    /**
+     * The values of the selected columns for the rows of one chunk.
+     */
+    public static final class Chunk {
+        private final int numberOfRows;
+        private final Map<String, Object> columns = new HashMap<>();
+
+        private Chunk(int numberOfRows) {
+            this.numberOfRows = numberOfRows;
+        }
+
+        public int numberOfRows() {
+            return numberOfRows;
+        }
+
+        public double[] getDoubles(String column) {
+            return (double[]) get(column);
+        }
+
+        public int[] getInts(String column) {
+            return (int[]) get(column);
+        }
+
+        public long[] getLongs(String column) {
+            return (long[]) get(column);
+        }
+
+        public String[] getStrings(String column) {
+            return (String[]) get(column);
+        }
+
+        private Object get(String column) {
+            Object values = columns.get(column);
+            if (values == null) {
+                throw new IllegalArgumentException("Column " + column + " has not been selected.");
+            }
+            return values;
+        }
+    }
+
+    private FeatureTableReader(FileChannel channel) throws IOException {
+        this.channel = channel;
+
+        ByteBuffer header = read(0, 12);
+        if (header.getInt() != FeatureTableWriter.MAGIC) {
+            throw new IOException("Not a feature table");
+        }
+        int version = header.getInt();
+        if (version != FeatureTableWriter.VERSION) {
+            throw new IOException("Unsupported feature table version " + version);
+        }
+        int numberOfColumns = header.getInt();
+        position = 12;
+
+        names = new String[numberOfColumns];
+        types = new byte[numberOfColumns];
+        for (int c = 0; c < numberOfColumns; c++) {
+            int length = read(position, 4).getInt();
+            names[c] = new String(read(position + 4, length).array(), StandardCharsets.UTF_8);
+            types[c] = read(position + 4 + length, 1).get();
+            position += 5 + length;
+            columnIndices.put(names[c], c);
+        }
+
+        selected = new boolean[numberOfColumns];
+        Arrays.fill(selected, true);
+    }
+
+    public static FeatureTableReader open(Path path) throws IOException {
+        return new FeatureTableReader(FileChannel.open(path, StandardOpenOption.READ));
+    }
+
+    public String[] columnNames() {
+        return names.clone();
+    }
+
+    /**
+     * Read only the given columns. By default all columns are read.
+     */
+    public FeatureTableReader select(String... columns) {
+        Arrays.fill(selected, false);
+        for (String column : columns) {
+            selected[index(column)] = true;
+        }
+        return this;
+    }
+
+    /**
+     * Skip all chunks in which no value of the column lies within [lower, upper].
+     * Several ranges can be given. A chunk is read only if it may match all of them.
+     */
+    public FeatureTableReader where(String column, double lower, double upper) {
+        int c = index(column);
+        if (types[c] == FeatureTableWriter.STRING) {
+            throw new IllegalArgumentException("Column " + column + " contains strings. There are no ranges.");
+        }
+        ranges.add(new Range(c, lower, upper));
+        return this;
+    }
+
+    /**
+     * @return the number of chunks skipped so far because of the ranges
+     */
+    public long getSkippedChunks() {
+        return skippedChunks;
+    }
+
+    private int index(String column) {
+        Integer c = columnIndices.get(column);
+        if (c == null) {
+            throw new IllegalArgumentException("No column " + column + " in the table.");
+        }
+        return c;
+    }
+
+    /**
+     * Read the next chunk which may contain rows within the given ranges.
+     *
+     * @return the chunk or null at the end of the file
+     */
+    public Chunk nextChunk() throws IOException {
+        int n = names.length;
+        while (position < channel.size()) {
+            ByteBuffer header = read(position, 4 + 20 * n);
+            int numberOfRows = header.getInt();
+
+            double[] min = new double[n];
+            double[] max = new double[n];
+            int[] lengths = new int[n];
+            long chunkLength = 4 + 20 * n;
+            for (int c = 0; c < n; c++) {
+                min[c] = header.getDouble();
+                max[c] = header.getDouble();
+                lengths[c] = header.getInt();
+                chunkLength += lengths[c];
+            }
+
+            long dataPosition = position + 4 + 20 * n;
+            long chunkPosition = position;
+            position += chunkLength;
+
+            if (!mayMatch(min, max)) {
+                skippedChunks++;
+                continue;
+            }
+
+            Chunk chunk = new Chunk(numberOfRows);
+            long columnPosition = dataPosition;
+            for (int c = 0; c < n; c++) {
+                if (selected[c]) {
+                    chunk.columns.put(names[c], decode(types[c], read(columnPosition, lengths[c]), numberOfRows));
+                }
+                columnPosition += lengths[c];
+            }
+            if (columnPosition != chunkPosition + chunkLength) {
+                throw new IOException("Corrupt chunk at " + chunkPosition);
+            }
+            return chunk;
+        }
+        return null;
+    }
+
+    private boolean mayMatch(double[] min, double[] max) {
+        for (Range range : ranges) {
+            //chunks without any value in the column have NaN as min and max and never match.
+            if (!(max[range.column] >= range.lower && min[range.column] <= range.upper)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Object decode(byte type, ByteBuffer buffer, int rows) {
+        switch (type) {
+            case FeatureTableWriter.DOUBLE: {
+                double[] values = new double[rows];
+                buffer.asDoubleBuffer().get(values);
+                return values;
+            }
+            case FeatureTableWriter.INT: {
+                int[] values = new int[rows];
+                buffer.asIntBuffer().get(values);
+                return values;
+            }
+            case FeatureTableWriter.LONG: {
+                long[] values = new long[rows];
+                buffer.asLongBuffer().get(values);
+                return values;
+            }
+            default: {
+                String[] values = new String[rows];
+                for (int i = 0; i < rows; i++) {
+                    int length = buffer.getInt();
+                    if (length >= 0) {
+                        byte[] bytes = new byte[length];
+                        buffer.get(bytes);
+                        values[i] = new String(bytes, StandardCharsets.UTF_8);
+                    }
+                }
+                return values;
+            }
+        }
+    }
+
+    private ByteBuffer read(long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of feature table");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
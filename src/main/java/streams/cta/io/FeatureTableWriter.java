@@ -0,0 +1,305 @@
+package streams.cta.io;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import stream.Data;
+import stream.Keys;
+import stream.ProcessContext;
+import stream.StatefulProcessor;
+import stream.annotations.Parameter;
+import stream.io.SourceURL;
+
+/**
+ * Writes the values of the given keys into a binary table which stores the values column by column.
+ * Rows are grouped into chunks. Each chunk stores the minimum and the maximum of every numeric
+ * column. The {@link FeatureTableReader} uses these to skip whole chunks and reads only the
+ * requested columns.
+ *
+ * The columns and their types are taken from the first data item. Double and float values are
+ * stored as doubles, integer, short and byte values as ints, long values as longs and strings as
+ * UTF-8. Keys with other values, like arrays, are ignored. Missing values are written as NaN for
+ * doubles, {@link #MISSING_INT} and {@link #MISSING_LONG} for integers and null for strings.
+ *
+ * The file is little endian. This way numpy can read the columns directly as '&lt;f8', '&lt;i4' and '&lt;i8'.
+ *
+ *     header: int magic, int version, int numberOfColumns, (string name, byte type) per column
+ *     chunk:  int numberOfRows, (double min, double max, int numberOfBytes) per column,
+ *             the values of each column one after another
+ *
+ * Strings are written as their length in bytes followed by the bytes. Null is stored as length -1.
+ */
+public class FeatureTableWriter implements StatefulProcessor {
+
+    static Logger log = LoggerFactory.getLogger(FeatureTableWriter.class);
+
+    static final int MAGIC = 0x43544146;
+    static final int VERSION = 1;
+
+    static final byte DOUBLE = 0;
+    static final byte INT = 1;
+    static final byte LONG = 2;
+    static final byte STRING = 3;
+
+    public static final int MISSING_INT = Integer.MIN_VALUE;
+    public static final long MISSING_LONG = Long.MIN_VALUE;
+
+    @Parameter(required = true, description = "The url to write to")
+    SourceURL url;
+
+    @Parameter(required = true, description = "The keys to write")
+    Keys keys;
+
+    @Parameter(required = false, description = "Number of rows in each chunk", defaultValue = "10000")
+    int chunkSize = 10000;
+
+    private FileChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocate(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+
+    private String[] names;
+    private byte[] types;
+    private double[][] doubles;
+    private int[][] ints;
+    private long[][] longs;
+    private String[][] strings;
+    private int rows = 0;
+    private long totalRows = 0;
+
+    @Override
+    public void init(ProcessContext processContext) throws Exception {
+        File file = new File(url.getFile());
+        if (file.getParentFile() != null && !file.getParentFile().exists() && !file.getParentFile().mkdirs()) {
+            log.error(file.getParentFile() + " could not be created.");
+        }
+        channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Select the columns from the first item and write the header.
+     */
+    private void createColumns(Data data) throws IOException {
+        Set<String> selectedKeys = keys.select(data);
+        List<String> columnNames = new ArrayList<>();
+        List<Byte> columnTypes = new ArrayList<>();
+        for (String key : selectedKeys) {
+            Serializable value = data.get(key);
+            if (value instanceof Double || value instanceof Float) {
+                columnTypes.add(DOUBLE);
+            } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                columnTypes.add(INT);
+            } else if (value instanceof Long) {
+                columnTypes.add(LONG);
+            } else if (value instanceof String) {
+                columnTypes.add(STRING);
+            } else {
+                log.warn("Ignoring key {}. Values of type {} can not be stored in a column.",
+                        key, value == null ? null : value.getClass().getSimpleName());
+                continue;
+            }
+            columnNames.add(key);
+        }
+
+        int n = columnNames.size();
+        names = columnNames.toArray(new String[n]);
+        types = new byte[n];
+        doubles = new double[n][];
+        ints = new int[n][];
+        longs = new long[n][];
+        strings = new String[n][];
+        for (int c = 0; c < n; c++) {
+            types[c] = columnTypes.get(c);
+            switch (types[c]) {
+                case DOUBLE:
+                    doubles[c] = new double[chunkSize];
+                    break;
+                case INT:
+                    ints[c] = new int[chunkSize];
+                    break;
+                case LONG:
+                    longs[c] = new long[chunkSize];
+                    break;
+                default:
+                    strings[c] = new String[chunkSize];
+            }
+        }
+
+        buffer.clear();
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(n);
+        for (int c = 0; c < n; c++) {
+            putString(names[c]);
+            ensureRemaining(1);
+            buffer.put(types[c]);
+        }
+        write();
+    }
+
+    @Override
+    public Data process(Data data) {
+        try {
+            if (names == null) {
+                createColumns(data);
+            }
+
+            for (int c = 0; c < names.length; c++) {
+                Serializable value = data.get(names[c]);
+                switch (types[c]) {
+                    case DOUBLE:
+                        doubles[c][rows] = value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+                        break;
+                    case INT:
+                        ints[c][rows] = value instanceof Number ? ((Number) value).intValue() : MISSING_INT;
+                        break;
+                    case LONG:
+                        longs[c][rows] = value instanceof Number ? ((Number) value).longValue() : MISSING_LONG;
+                        break;
+                    default:
+                        strings[c][rows] = value == null ? null : value.toString();
+                }
+            }
+
+            if (++rows == chunkSize) {
+                writeChunk();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write to " + url, e);
+        }
+        return data;
+    }
+
+    private void writeChunk() throws IOException {
+        if (rows == 0) {
+            return;
+        }
+        int n = names.length;
+
+        buffer.clear();
+        ensureRemaining(4 + 20 * n);
+        buffer.putInt(rows);
+        int statisticsPosition = buffer.position();
+        buffer.position(statisticsPosition + 20 * n);
+
+        for (int c = 0; c < n; c++) {
+            double min = Double.NaN;
+            double max = Double.NaN;
+            int start = buffer.position();
+            switch (types[c]) {
+                case DOUBLE:
+                    ensureRemaining(8 * rows);
+                    for (int i = 0; i < rows; i++) {
+                        double v = doubles[c][i];
+                        buffer.putDouble(v);
+                        if (!Double.isNaN(v)) {
+                            min = Double.isNaN(min) ? v : Math.min(min, v);
+                            max = Double.isNaN(max) ? v : Math.max(max, v);
+                        }
+                    }
+                    break;
+                case INT:
+                    ensureRemaining(4 * rows);
+                    for (int i = 0; i < rows; i++) {
+                        int v = ints[c][i];
+                        buffer.putInt(v);
+                        if (v != MISSING_INT) {
+                            min = Double.isNaN(min) ? v : Math.min(min, v);
+                            max = Double.isNaN(max) ? v : Math.max(max, v);
+                        }
+                    }
+                    break;
+                case LONG:
+                    ensureRemaining(8 * rows);
+                    for (int i = 0; i < rows; i++) {
+                        long v = longs[c][i];
+                        buffer.putLong(v);
+                        if (v != MISSING_LONG) {
+                            min = Double.isNaN(min) ? v : Math.min(min, v);
+                            max = Double.isNaN(max) ? v : Math.max(max, v);
+                        }
+                    }
+                    break;
+                default:
+                    for (int i = 0; i < rows; i++) {
+                        putString(strings[c][i]);
+                        strings[c][i] = null;
+                    }
+            }
+            int statistics = statisticsPosition + 20 * c;
+            buffer.putDouble(statistics, min);
+            buffer.putDouble(statistics + 8, max);
+            buffer.putInt(statistics + 16, buffer.position() - start);
+        }
+        write();
+
+        totalRows += rows;
+        rows = 0;
+    }
+
+    private void putString(String s) {
+        if (s == null) {
+            ensureRemaining(4);
+            buffer.putInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        ensureRemaining(4 + bytes.length);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private void ensureRemaining(int bytes) {
+        if (buffer.remaining() < bytes) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(2 * buffer.capacity(), buffer.position() + bytes))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+    }
+
+    private void write() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void resetState() throws Exception {
+    }
+
+    @Override
+    public void finish() throws Exception {
+        if (names != null) {
+            writeChunk();
+        }
+        channel.close();
+        log.info("Wrote {} rows to {}", totalRows, url);
+    }
+
+    public void setUrl(SourceURL url) {
+        this.url = url;
+    }
+
+    public void setKeys(Keys keys) {
+        this.keys = keys;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+}
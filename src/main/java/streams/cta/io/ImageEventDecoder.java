@@ -0,0 +1,190 @@
+package streams.cta.io;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import stream.Data;
+import streams.hexmap.CameraGeometry;
+import streams.hexmap.CameraMapping;
+
+/**
+ * Decodes a single CTA event from the json format written by the 'convert_raw_data.py' script.
+ * The tokens are read directly from the {@link JsonReader} into primitive arrays. No intermediate
+ * objects are created by reflection. Numbers are collected in growable buffers which are reused
+ * for all events. The keys for the telescopes are taken from the tables in {@link Names}.
+ *
+ * The resulting data item contains exactly the same keys and values as the one created by the
+ * reflection based reader in the {@link ImageStream}.
+ *
+ * Instances of this class are not thread-safe.
+ */
+public class ImageEventDecoder {
+
+    private final CameraMapping mapping = CameraMapping.getInstance();
+
+    private double[] doubles = new double[2048];
+    private int[] ints = new int[128];
+
+    /**
+     * Decode the next event from the reader and put its values into the given item.
+     * The reader has to be positioned in front of the json object describing the event.
+     *
+     * @param reader the reader to read the tokens from
+     * @param data the data item to fill
+     * @return the id of the event
+     * @throws IOException in case the json is malformed or the underlying stream fails
+     */
+    public long decode(JsonReader reader, Data data) throws IOException {
+        long eventId = 0;
+        String timestamp = null;
+
+        double alt = 0, az = 0, coreX = 0, coreY = 0, energy = 0;
+        String type = null;
+
+        int[] triggeredTelescopes = null;
+        int numTriggeredTelescopes = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (skipNull(reader)) {
+                continue;
+            }
+            switch (name) {
+                case "images":
+                    readImages(reader, data);
+                    break;
+                case "event_id":
+                    eventId = reader.nextLong();
+                    break;
+                case "timestamp":
+                    timestamp = reader.nextString();
+                    break;
+                case "array":
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String field = reader.nextName();
+                        if (skipNull(reader)) {
+                            continue;
+                        }
+                        if (field.equals("triggered_telescopes")) {
+                            triggeredTelescopes = readInts(reader);
+                        } else if (field.equals("num_triggered_telescopes")) {
+                            numTriggeredTelescopes = reader.nextInt();
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                    break;
+                case "mc":
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String field = reader.nextName();
+                        if (skipNull(reader)) {
+                            continue;
+                        }
+                        switch (field) {
+                            case "alt":
+                                alt = reader.nextDouble();
+                                break;
+                            case "az":
+                                az = reader.nextDouble();
+                                break;
+                            case "core_x":
+                                coreX = reader.nextDouble();
+                                break;
+                            case "core_y":
+                                coreY = reader.nextDouble();
+                                break;
+                            case "energy":
+                                energy = reader.nextDouble();
+                                break;
+                            case "type":
+                                type = reader.nextString();
+                                break;
+                            default:
+                                reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        data.put("array:triggered_telescopes", triggeredTelescopes);
+        data.put("array:num_triggered_telescopes", numTriggeredTelescopes);
+
+        data.put("mc:alt", alt);
+        data.put("mc:az", az);
+        data.put("mc:core_x", coreX);
+        data.put("mc:core_y", coreY);
+        data.put("mc:energy", energy);
+        data.put("mc:type", type);
+
+        data.put("event_id", eventId);
+        data.put("timestamp", timestamp);
+
+        return eventId;
+    }
+
+    private void readImages(JsonReader reader, Data data) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            int telescopeId = Integer.parseInt(reader.nextName());
+            if (skipNull(reader)) {
+                continue;
+            }
+            double[] image = readDoubles(reader);
+
+            CameraGeometry.TelescopeType type = mapping.geometryFromId(telescopeId).telescopeType;
+            data.put(Names.TYPE_ID.key(telescopeId), type.ordinal());
+            data.put(Names.TYPE_NAME.key(telescopeId), type.toString());
+            data.put(Names.RAW_PHOTONS.key(telescopeId), image);
+        }
+        reader.endObject();
+    }
+
+    private double[] readDoubles(JsonReader reader) throws IOException {
+        int n = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (n == doubles.length) {
+                doubles = Arrays.copyOf(doubles, 2 * n);
+            }
+            doubles[n++] = reader.nextDouble();
+        }
+        reader.endArray();
+        return Arrays.copyOf(doubles, n);
+    }
+
+    private int[] readInts(JsonReader reader) throws IOException {
+        int n = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (n == ints.length) {
+                ints = Arrays.copyOf(ints, 2 * n);
+            }
+            ints[n++] = reader.nextInt();
+        }
+        reader.endArray();
+        return Arrays.copyOf(ints, n);
+    }
+
+    /**
+     * Gson leaves fields untouched when the json value is null. Do the same here.
+     */
+    private static boolean skipNull(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return true;
+        }
+        return false;
+    }
+}
@@ -17,6 +17,7 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import stream.Data;
+import stream.annotations.Parameter;
 import stream.data.DataFactory;
 import stream.io.AbstractStream;
 import stream.io.SourceURL;
@@ -25,12 +26,35 @@ import streams.hexmap.CameraMapping;
 
 /**
  * Read images stored into json format as created by the 'convert_raw_data.py' script in this repo.
+ * By default the events are parsed by the {@link ImageEventDecoder} which reads the json tokens
+ * directly into primitive arrays. The old Gson reflection based reader can be selected with the
+ * 'gson' parameter.
+ *
+ * With compactData="true" the items are created as {@link CompactData} instead of HashMaps.
+ *
  * Created by kbruegge on 2/14/17.
  */
 public class ImageStream extends AbstractStream {
     static Logger log = LoggerFactory.getLogger(ImageStream.class);
     private CameraMapping mapping;
     private Integer run_id = null;
+    private String sourceFile;
+
+    @Parameter(required = false, description = "Decode the events with the Gson reflection based " +
+            "reader instead of the streaming decoder.", defaultValue = "false")
+    boolean gson = false;
+
+    @Parameter(required = false, description = "Number of events decoded ahead on a background " +
+            "thread. Decompression and parsing then overlap with the processing. " +
+            "0 reads everything on the calling thread.", defaultValue = "0")
+    int readAhead = 0;
+
+    @Parameter(required = false, description = "Create the items as CompactData which stores the values " +
+            "by key slots instead of in a HashMap.", defaultValue = "false")
+    boolean compactData = false;
+
+    private ImageEventDecoder decoder;
+    private ReadAheadQueue readAheadQueue;
 
     public ImageStream(SourceURL url) {
         super(url);
@@ -75,7 +99,7 @@ public class ImageStream extends AbstractStream {
         int numTriggeredTelescopes;
     }
 
-    private Gson gson = new GsonBuilder().setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES).create();
+    private Gson reflectionReader = new GsonBuilder().setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES).create();
 
     private JsonReader reader;
 
@@ -84,8 +108,11 @@ public class ImageStream extends AbstractStream {
         super.init();
         InputStreamReader streamReader = new InputStreamReader(url.openStream(), "UTF-8");
         reader = new JsonReader(streamReader);
+        // python writes NaN and Infinity for missing values. Gson reads those leniently as well.
+        reader.setLenient(true);
         reader.beginArray();
         mapping = CameraMapping.getInstance();
+        decoder = new ImageEventDecoder();
         String filename = Paths.get(url.getPath()).getFileName().toString();
         Matcher matcher = RUN_NUMBER.matcher(filename);
         if (matcher.find()) {
@@ -93,11 +120,26 @@ public class ImageStream extends AbstractStream {
         } else {
             log.warn("Could no extract run_id from filename {}", filename);
         }
+
+        //Add the filename of the file we read from. This will be used to map
+        //event lists to MC production information.
+        sourceFile = Files.getNameWithoutExtension(url.getFile()).replace(".json", "");
+
+        if (readAhead > 0) {
+            readAheadQueue = new ReadAheadQueue("ImageStream " + filename, readAhead, this::decodeNext);
+        }
     }
 
 
     @Override
     public Data readNext() throws Exception {
+        if (readAheadQueue != null) {
+            return readAheadQueue.take();
+        }
+        return decodeNext();
+    }
+
+    private Data decodeNext() throws Exception {
 
         //check whether the end of the file has been reached
         JsonToken token = reader.peek();
@@ -105,14 +147,29 @@ public class ImageStream extends AbstractStream {
             return null;
         }
 
-        Event event = gson.fromJson(reader, Event.class);
+        Data data = compactData ? new CompactData(64) : DataFactory.create();
+        long eventId = gson ? readWithReflection(data) : decoder.decode(reader, data);
+
+        if (run_id != null) {
+            data.put("run_id", run_id);
+            //assuming there are less than maxInt - 128  runs in the montecarlo production, this generates a unique id
+            //for each array-wide event
+            data.put("unique_event_id", ((run_id) << 7) + eventId);
+        }
+
+        data.put("source_file", sourceFile);
+
+        return data;
+    }
+
+    private long readWithReflection(Data data) {
+        Event event = reflectionReader.fromJson(reader, Event.class);
 
-        Data data = DataFactory.create();
         event.images.forEach((telId, image) -> {
-            CameraGeometry.TelescopeType type = mapping.telescopeFromId(telId).telescopeType;
-            data.put(String.format("telescope:%d:type:id", telId), type.ordinal());
-            data.put(String.format("telescope:%d:type:name", telId), type.toString());
-            data.put(String.format("telescope:%d:raw:photons", telId), image);
+            CameraGeometry.TelescopeType type = mapping.geometryFromId(telId).telescopeType;
+            data.put(Names.TYPE_ID.key(telId), type.ordinal());
+            data.put(Names.TYPE_NAME.key(telId), type.toString());
+            data.put(Names.RAW_PHOTONS.key(telId), image);
         });
 
 
@@ -128,25 +185,31 @@ public class ImageStream extends AbstractStream {
 
         data.put("event_id", event.eventId);
         data.put("timestamp", event.timestamp);
-        if (run_id != null) {
-            data.put("run_id", run_id);
-            //assuming there are less than maxInt - 128  runs in the montecarlo production, this generates a unique id
-            //for each array-wide event
-            data.put("unique_event_id", ((run_id) << 7) + event.eventId);
-        }
+        return event.eventId;
+    }
 
+    public void setGson(boolean gson) {
+        this.gson = gson;
+    }
 
-        //Add the filename of the file we read from. This will be used to map
-        //event lists to MC production information.
-        String filename = Files.getNameWithoutExtension(url.getFile()).replace(".json", "");
-        data.put("source_file", filename);
+    public void setReadAhead(int readAhead) {
+        this.readAhead = readAhead;
+    }
 
-        return data;
+    public void setCompactData(boolean compactData) {
+        this.compactData = compactData;
     }
 
     @Override
     public void close() throws Exception {
         super.close();
-        reader.close();
+        if (readAheadQueue != null) {
+            readAheadQueue.close();
+            readAheadQueue = null;
+        }
+        //a loop stream does not init its inner streams when the events are pooled already.
+        if (reader != null) {
+            reader.close();
+        }
     }
 }
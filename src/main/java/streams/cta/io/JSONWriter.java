@@ -0,0 +1,268 @@
+package streams.cta.io;
+
+import com.google.gson.Gson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import stream.Data;
+import stream.Keys;
+import stream.ProcessContext;
+import stream.StatefulProcessor;
+import stream.annotations.Parameter;
+import stream.io.SourceURL;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Serializable;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * JSONWriter writes out the values for the given keys as json objects.
+ *
+ * By default each item is written as a json object on its own line. With writeblock="true" all items
+ * are written into one json array instead.
+ *
+ *     <streams.cta.io.JSONWriter url="file:./datarate.json" keys="@stream,@datarate" writeblock="true"/>
+ *
+ * The items are formatted into a buffer which is written to the file every blockSize items. Numbers,
+ * strings and arrays of doubles, ints and longs are formatted directly. Other values are converted
+ * by Gson. Json has no representation for NaN and infinity. These are written as null. Files ending
+ * with .gz or gzip="true" are written gzip compressed.
+ */
+public class JSONWriter implements StatefulProcessor {
+
+    static Logger log = LoggerFactory.getLogger(JSONWriter.class);
+
+    @Parameter(required = true, description = "The url to write to")
+    SourceURL url;
+
+    @Parameter(required = false, description = "The keys to write. All keys are written by default.")
+    Keys keys;
+
+    @Parameter(required = false, description = "Write all items into one json array instead of one " +
+            "json object per line.", defaultValue = "false")
+    boolean writeblock = false;
+
+    @Parameter(required = false, description = "Number of items buffered before they are written to the file.",
+            defaultValue = "100")
+    int blockSize = 100;
+
+    @Parameter(required = false, description = "Compress the output with gzip. Files with names ending " +
+            "in .gz are always compressed.", defaultValue = "false")
+    boolean gzip = false;
+
+    private Writer writer;
+    private final StringBuilder buffer = new StringBuilder(1 << 16);
+    private char[] chars = new char[0];
+    private final Gson gson = new Gson();
+
+    //remembers for every key seen so far whether it is selected
+    private final Map<String, Boolean> selectedKeys = new HashMap<>();
+    private long items = 0;
+    private int itemsInBuffer = 0;
+
+    @Override
+    public void init(ProcessContext processContext) throws Exception {
+        File file = new File(url.getFile());
+        if (file.getParentFile() != null && !file.getParentFile().exists() && !file.getParentFile().mkdirs()) {
+            log.error(file.getParentFile() + " could not be created.");
+        }
+        OutputStream out = new FileOutputStream(file);
+        if (gzip || url.getFile().endsWith(".gz")) {
+            out = new GZIPOutputStream(out, 1 << 16);
+        }
+        writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        if (writeblock) {
+            buffer.append('[');
+        }
+    }
+
+    @Override
+    public Data process(Data data) {
+        if (writeblock) {
+            buffer.append(items == 0 ? "\n" : ",\n");
+        }
+
+        buffer.append('{');
+        boolean first = true;
+        for (Map.Entry<String, Serializable> entry : data.entrySet()) {
+            if (!isSelected(entry.getKey())) {
+                continue;
+            }
+            if (!first) {
+                buffer.append(',');
+            }
+            first = false;
+            appendString(entry.getKey());
+            buffer.append(':');
+            appendValue(entry.getValue());
+        }
+        buffer.append('}');
+        if (!writeblock) {
+            buffer.append('\n');
+        }
+
+        items++;
+        if (++itemsInBuffer >= blockSize) {
+            try {
+                writeBuffer();
+                writer.flush();
+            } catch (IOException e) {
+                throw new RuntimeException("Could not write to " + url, e);
+            }
+        }
+        return data;
+    }
+
+    private boolean isSelected(String key) {
+        if (keys == null) {
+            return true;
+        }
+        Boolean selected = selectedKeys.get(key);
+        if (selected == null) {
+            selected = !keys.select(Collections.singleton(key)).isEmpty();
+            selectedKeys.put(key, selected);
+        }
+        return selected;
+    }
+
+    private void appendValue(Serializable value) {
+        if (value == null) {
+            buffer.append("null");
+        } else if (value instanceof Double || value instanceof Float) {
+            appendDouble(((Number) value).doubleValue());
+        } else if (value instanceof Integer) {
+            buffer.append(((Integer) value).intValue());
+        } else if (value instanceof Long) {
+            buffer.append(((Long) value).longValue());
+        } else if (value instanceof String) {
+            appendString((String) value);
+        } else if (value instanceof Boolean) {
+            buffer.append(((Boolean) value).booleanValue());
+        } else if (value instanceof double[]) {
+            double[] array = (double[]) value;
+            buffer.append('[');
+            for (int i = 0; i < array.length; i++) {
+                if (i > 0) {
+                    buffer.append(',');
+                }
+                appendDouble(array[i]);
+            }
+            buffer.append(']');
+        } else if (value instanceof int[]) {
+            int[] array = (int[]) value;
+            buffer.append('[');
+            for (int i = 0; i < array.length; i++) {
+                if (i > 0) {
+                    buffer.append(',');
+                }
+                buffer.append(array[i]);
+            }
+            buffer.append(']');
+        } else if (value instanceof long[]) {
+            long[] array = (long[]) value;
+            buffer.append('[');
+            for (int i = 0; i < array.length; i++) {
+                if (i > 0) {
+                    buffer.append(',');
+                }
+                buffer.append(array[i]);
+            }
+            buffer.append(']');
+        } else {
+            buffer.append(gson.toJson(value));
+        }
+    }
+
+    private void appendDouble(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            buffer.append("null");
+        } else {
+            buffer.append(value);
+        }
+    }
+
+    private void appendString(String s) {
+        buffer.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    buffer.append("\\\"");
+                    break;
+                case '\\':
+                    buffer.append("\\\\");
+                    break;
+                case '\n':
+                    buffer.append("\\n");
+                    break;
+                case '\r':
+                    buffer.append("\\r");
+                    break;
+                case '\t':
+                    buffer.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        buffer.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        buffer.append(c);
+                    }
+            }
+        }
+        buffer.append('"');
+    }
+
+    private void writeBuffer() throws IOException {
+        int length = buffer.length();
+        if (chars.length < length) {
+            chars = new char[Math.max(length, 2 * chars.length)];
+        }
+        buffer.getChars(0, length, chars, 0);
+        writer.write(chars, 0, length);
+        buffer.setLength(0);
+        itemsInBuffer = 0;
+    }
+
+    @Override
+    public void resetState() throws Exception {
+    }
+
+    @Override
+    public void finish() throws Exception {
+        if (writeblock) {
+            buffer.append(items == 0 ? "]\n" : "\n]\n");
+        }
+        writeBuffer();
+        writer.close();
+        log.info("Wrote {} items to {}", items, url);
+    }
+
+    public void setUrl(SourceURL url) {
+        this.url = url;
+    }
+
+    public void setKeys(Keys keys) {
+        this.keys = keys;
+    }
+
+    public void setWriteblock(boolean writeblock) {
+        this.writeblock = writeblock;
+    }
+
+    public void setBlockSize(int blockSize) {
+        this.blockSize = blockSize;
+    }
+
+    public void setGzip(boolean gzip) {
+        this.gzip = gzip;
+    }
+}
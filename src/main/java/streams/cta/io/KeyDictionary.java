@@ -0,0 +1,166 @@
+package streams.cta.io;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import stream.Data;
+import stream.data.DataFactory;
+
+/**
+ * Encodes data items as key ids and typed values. Each key is written only once per block into a
+ * dictionary in front of the events. This saves writing long keys like 'telescope:12:raw:photons'
+ * for every single event.
+ *
+ *     dictionary: varint number of keys, string per key
+ *     event:      varint number of entries, (varint key id, byte type, value) per entry
+ *
+ * Arrays of doubles and ints, doubles, ints, longs and strings are written directly. All other
+ * values are written with their class by kryo.
+ *
+ * The decoded keys are interned in the {@link KeyRegistry}, so all items read share the same key
+ * instances. Their hash codes are computed once and equal keys are found by identity when the items
+ * are accessed. Items read as {@link CompactData} are filled by slot without hashing any key.
+ */
+final class KeyDictionary {
+
+    private static final byte OBJECT = 0;
+    private static final byte DOUBLE_ARRAY = 1;
+    private static final byte INT_ARRAY = 2;
+    private static final byte DOUBLE = 3;
+    private static final byte INT = 4;
+    private static final byte LONG = 5;
+    private static final byte STRING = 6;
+    private static final byte NULL = 7;
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> keys = new ArrayList<>();
+
+    /**
+     * Write the item to the output. New keys are added to the dictionary.
+     */
+    void writeEvent(Kryo kryo, Output output, Data data) {
+        output.writeVarInt(data.size(), true);
+        for (Map.Entry<String, Serializable> entry : data.entrySet()) {
+            Integer id = ids.get(entry.getKey());
+            if (id == null) {
+                id = keys.size();
+                ids.put(entry.getKey(), id);
+                keys.add(entry.getKey());
+            }
+            output.writeVarInt(id, true);
+            writeValue(kryo, output, entry.getValue());
+        }
+    }
+
+    private static void writeValue(Kryo kryo, Output output, Serializable value) {
+        if (value == null) {
+            output.writeByte(NULL);
+        } else if (value instanceof double[]) {
+            double[] array = (double[]) value;
+            output.writeByte(DOUBLE_ARRAY);
+            output.writeVarInt(array.length, true);
+            output.writeDoubles(array);
+        } else if (value instanceof int[]) {
+            int[] array = (int[]) value;
+            output.writeByte(INT_ARRAY);
+            output.writeVarInt(array.length, true);
+            output.writeInts(array);
+        } else if (value instanceof Double) {
+            output.writeByte(DOUBLE);
+            output.writeDouble((Double) value);
+        } else if (value instanceof Integer) {
+            output.writeByte(INT);
+            output.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            output.writeByte(LONG);
+            output.writeLong((Long) value);
+        } else if (value instanceof String) {
+            output.writeByte(STRING);
+            output.writeString((String) value);
+        } else {
+            output.writeByte(OBJECT);
+            kryo.writeClassAndObject(output, value);
+        }
+    }
+
+    /**
+     * Write the dictionary of all keys seen since the last call to {@link #clear()}.
+     */
+    void writeDictionary(Output output) {
+        output.writeVarInt(keys.size(), true);
+        for (String key : keys) {
+            output.writeString(key);
+        }
+    }
+
+    int size() {
+        return keys.size();
+    }
+
+    void clear() {
+        ids.clear();
+        keys.clear();
+    }
+
+    /**
+     * Read a dictionary followed by the given number of events.
+     */
+    static List<Data> readEvents(Kryo kryo, Input input, int numberOfEvents, boolean compactData) {
+        String[] dictionary = new String[input.readVarInt(true)];
+        int[] slots = new int[dictionary.length];
+        for (int i = 0; i < dictionary.length; i++) {
+            slots[i] = KeyRegistry.slot(input.readString());
+            dictionary[i] = KeyRegistry.key(slots[i]);
+        }
+
+        List<Data> events = new ArrayList<>(numberOfEvents);
+        for (int i = 0; i < numberOfEvents; i++) {
+            int numberOfEntries = input.readVarInt(true);
+            if (compactData) {
+                CompactData item = new CompactData(numberOfEntries);
+                for (int entry = 0; entry < numberOfEntries; entry++) {
+                    item.put(slots[input.readVarInt(true)], readValue(kryo, input));
+                }
+                events.add(item);
+            } else {
+                Data item = DataFactory.create();
+                for (int entry = 0; entry < numberOfEntries; entry++) {
+                    item.put(dictionary[input.readVarInt(true)], readValue(kryo, input));
+                }
+                events.add(item);
+            }
+        }
+        return events;
+    }
+
+    private static Serializable readValue(Kryo kryo, Input input) {
+        byte type = input.readByte();
+        switch (type) {
+            case NULL:
+                return null;
+            case DOUBLE_ARRAY:
+                return input.readDoubles(input.readVarInt(true));
+            case INT_ARRAY:
+                return input.readInts(input.readVarInt(true));
+            case DOUBLE:
+                return input.readDouble();
+            case INT:
+                return input.readInt();
+            case LONG:
+                return input.readLong();
+            case STRING:
+                return input.readString();
+            case OBJECT:
+                return (Serializable) kryo.readClassAndObject(input);
+            default:
+                throw new IllegalStateException("Unknown value type " + type);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package streams.cta.io;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns every key a small integer slot which stays the same for the whole process. The
+ * {@link CompactData} stores its values by slot. Registering a key also interns it, so all items
+ * share the same key instances and equal keys are found by identity.
+ *
+ * Keys are never removed from the registry. Keys built from unbounded values, like event ids, must
+ * not be registered.
+ *
+ * The keys for the telescopes, e.g. 'telescope:12:raw:photons', are precomputed in
+ * {@link TelescopeKeys} tables indexed by telescope id. Looking up a key in such a table neither
+ * formats a string nor computes a hash.
+ */
+public final class KeyRegistry {
+
+    private static final ConcurrentHashMap<String, Integer> SLOTS = new ConcurrentHashMap<>();
+    private static volatile String[] keys = new String[1024];
+    private static int numberOfKeys = 0;
+
+    private KeyRegistry() {
+    }
+
+    /**
+     * @return the slot of the key. The key is registered if it has not been seen before.
+     */
+    public static int slot(String key) {
+        Integer slot = SLOTS.get(key);
+        if (slot != null) {
+            return slot;
+        }
+        return register(key);
+    }
+
+    /**
+     * @return the slot of the key or -1 if the key has never been registered.
+     */
+    public static int slotIfPresent(Object key) {
+        Integer slot = SLOTS.get(key);
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * @return the key registered for the slot
+     */
+    public static String key(int slot) {
+        return keys[slot];
+    }
+
+    /**
+     * @return the registered instance of the key
+     */
+    public static String intern(String key) {
+        return keys[slot(key)];
+    }
+
+    /**
+     * @return the number of keys registered so far
+     */
+    public static int size() {
+        return SLOTS.size();
+    }
+
+    private static synchronized int register(String key) {
+        Integer slot = SLOTS.get(key);
+        if (slot != null) {
+            return slot;
+        }
+        if (numberOfKeys == keys.length) {
+            keys = Arrays.copyOf(keys, 2 * keys.length);
+        }
+        keys[numberOfKeys] = key;
+        //publish the key before its slot so readers of the slot always find the key.
+        SLOTS.put(key, numberOfKeys);
+        return numberOfKeys++;
+    }
+
+    /**
+     * Create a table for the keys 'telescope:id:suffix' of all telescopes.
+     */
+    public static TelescopeKeys telescopeKeys(String suffix) {
+        return new TelescopeKeys(suffix);
+    }
+
+    /**
+     * The registered keys 'telescope:id:suffix' and their slots indexed by telescope id. The keys for
+     * the first 128 ids are built up front. The table grows when a larger id is requested.
+     */
+    public static final class TelescopeKeys {
+        private final String suffix;
+        private volatile String[] keys;
+        private volatile int[] slots;
+
+        private TelescopeKeys(String suffix) {
+            this.suffix = suffix;
+            grow(127);
+        }
+
+        public String key(int telescopeId) {
+            String[] keys = this.keys;
+            if (telescopeId >= keys.length) {
+                grow(telescopeId);
+                return this.keys[telescopeId];
+            }
+            return keys[telescopeId];
+        }
+
+        public int slot(int telescopeId) {
+            int[] slots = this.slots;
+            if (telescopeId >= slots.length) {
+                grow(telescopeId);
+                return this.slots[telescopeId];
+            }
+            return slots[telescopeId];
+        }
+
+        private synchronized void grow(int telescopeId) {
+            int from = keys == null ? 0 : keys.length;
+            if (telescopeId < from) {
+                return;
+            }
+            int length = Math.max(telescopeId + 1, 2 * from);
+            String[] newKeys = keys == null ? new String[length] : Arrays.copyOf(keys, length);
+            int[] newSlots = slots == null ? new int[length] : Arrays.copyOf(slots, length);
+            for (int id = from; id < length; id++) {
+                newSlots[id] = KeyRegistry.slot("telescope:" + id + ":" + suffix);
+                newKeys[id] = KeyRegistry.key(newSlots[id]);
+            }
+            slots = newSlots;
+            keys = newKeys;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package streams.cta.io;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.pool.KryoPool;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import stream.Data;
+import stream.data.DataFactory;
+
+/**
+ * Constants and helpers for the block framed kryo files written by the {@link KryoWriter} and read by
+ * the {@link KryoStream}. Events are grouped into blocks which can be decoded independently of each
+ * other. All integers are big endian.
+ *
+ *     header:  int magic, int version
+ *     block:   int length of the payload, int length of the uncompressed payload,
+ *              int number of events, byte flags, payload
+ *     index:   int number of blocks, (long offset of the block, int number of events) per block
+ *     trailer: long offset of the index, int index magic
+ *
+ * The payload contains the kryo serialized events, one HashMap per event. If the KEY_DICTIONARY flag
+ * is set, it contains the events encoded by the {@link KeyDictionary} instead. If the COMPRESSED flag
+ * is set, the payload is deflate compressed.
+ *
+ * If a file has no trailer, because the writer did not finish, the blocks can still be found by
+ * walking over the block headers. A truncated last block is ignored in that case.
+ */
+final class KryoBlockFormat {
+
+    static final int MAGIC = 0x43544B42;
+    static final int INDEX_MAGIC = 0x43544B49;
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 8;
+    static final int BLOCK_HEADER_SIZE = 13;
+    static final int TRAILER_SIZE = 12;
+
+    static final byte COMPRESSED = 1;
+    static final byte KEY_DICTIONARY = 2;
+
+    /**
+     * Kryo instances are not thread-safe. Blocks decoded in parallel borrow one from this pool.
+     */
+    static final KryoPool POOL = new KryoPool.Builder(KryoBlockFormat::createKryo).softReferences().build();
+
+    private KryoBlockFormat() {
+    }
+
+    static Kryo createKryo() {
+        Kryo kryo = new Kryo();
+        kryo.register(LocalDateTime.class, new LocalDateTimeSerializer());
+        return kryo;
+    }
+
+    /**
+     * The position and size of a block in the file.
+     */
+    static final class Block {
+        final long offset;
+        final int numberOfEvents;
+
+        Block(long offset, int numberOfEvents) {
+            this.offset = offset;
+            this.numberOfEvents = numberOfEvents;
+        }
+    }
+
+    /**
+     * @return true if the file starts with the header of a block framed file
+     */
+    static boolean isBlockFile(FileChannel channel) throws IOException {
+        if (channel.size() < HEADER_SIZE) {
+            return false;
+        }
+        ByteBuffer header = readFully(channel, 0, HEADER_SIZE);
+        return header.getInt() == MAGIC;
+    }
+
+    /**
+     * Read the block index from the end of the file. Walks the block headers if the file has no index.
+     */
+    static List<Block> readIndex(FileChannel channel) throws IOException {
+        ByteBuffer header = readFully(channel, 0, HEADER_SIZE);
+        header.getInt();
+        int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported kryo block file version " + version);
+        }
+
+        long size = channel.size();
+        if (size >= HEADER_SIZE + TRAILER_SIZE) {
+            ByteBuffer trailer = readFully(channel, size - TRAILER_SIZE, TRAILER_SIZE);
+            long indexOffset = trailer.getLong();
+            if (trailer.getInt() == INDEX_MAGIC && indexOffset >= HEADER_SIZE && indexOffset < size) {
+                ByteBuffer index = readFully(channel, indexOffset, (int) (size - TRAILER_SIZE - indexOffset));
+                int numberOfBlocks = index.getInt();
+                List<Block> blocks = new ArrayList<>(numberOfBlocks);
+                for (int i = 0; i < numberOfBlocks; i++) {
+                    blocks.add(new Block(index.getLong(), index.getInt()));
+                }
+                return blocks;
+            }
+        }
+
+        KryoStream.log.warn("No block index found. The file was not closed properly. Scanning blocks.");
+        List<Block> blocks = new ArrayList<>();
+        long offset = HEADER_SIZE;
+        while (offset + BLOCK_HEADER_SIZE <= size) {
+            ByteBuffer blockHeader = readFully(channel, offset, BLOCK_HEADER_SIZE);
+            int length = blockHeader.getInt();
+            blockHeader.getInt();
+            int numberOfEvents = blockHeader.getInt();
+            if (length < 0 || offset + BLOCK_HEADER_SIZE + length > size) {
+                break;
+            }
+            blocks.add(new Block(offset, numberOfEvents));
+            offset += BLOCK_HEADER_SIZE + length;
+        }
+        return blocks;
+    }
+
+    /**
+     * Read and decode all events of a block. This may be called from several threads at once.
+     * The events are created as {@link CompactData} if compactData is set.
+     */
+    @SuppressWarnings("unchecked")
+    static List<Data> decodeBlock(FileChannel channel, Block block, boolean compactData) throws IOException, DataFormatException {
+        ByteBuffer blockHeader = readFully(channel, block.offset, BLOCK_HEADER_SIZE);
+        int length = blockHeader.getInt();
+        int rawLength = blockHeader.getInt();
+        int numberOfEvents = blockHeader.getInt();
+        byte flags = blockHeader.get();
+        boolean compressed = (flags & COMPRESSED) != 0;
+
+        byte[] payload = readFully(channel, block.offset + BLOCK_HEADER_SIZE, length).array();
+        if (compressed) {
+            Inflater inflater = new Inflater();
+            byte[] raw = new byte[rawLength];
+            int n = 0;
+            try {
+                inflater.setInput(payload);
+                while (n < rawLength && !inflater.finished()) {
+                    int inflated = inflater.inflate(raw, n, rawLength - n);
+                    if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new DataFormatException("Truncated block at offset " + block.offset);
+                    }
+                    n += inflated;
+                }
+            } finally {
+                inflater.end();
+            }
+            if (n != rawLength) {
+                throw new DataFormatException("Block at offset " + block.offset + " holds " + n
+                        + " instead of " + rawLength + " bytes");
+            }
+            payload = raw;
+        }
+
+        Input input = new Input(payload);
+        Kryo kryo = POOL.borrow();
+        try {
+            if ((flags & KEY_DICTIONARY) != 0) {
+                return KeyDictionary.readEvents(kryo, input, numberOfEvents, compactData);
+            }
+            List<Data> events = new ArrayList<>(numberOfEvents);
+            for (int i = 0; i < numberOfEvents; i++) {
+                HashMap<String, Serializable> map = kryo.readObject(input, HashMap.class);
+                events.add(compactData ? new CompactData(map) : DataFactory.create(map));
+            }
+            return events;
+        } finally {
+            POOL.release(kryo);
+        }
+    }
+
+    static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
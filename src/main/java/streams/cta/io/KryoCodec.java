@@ -17,7 +17,8 @@ import java.util.Map;
 
 /**
  * This class implements a data item codec using an internal Kryo instance. The kryo instance is
- * shared, so the calls to decode and encode are <b>not</b> thread-safe.
+ * shared, so the calls to decode and encode are <b>not</b> thread-safe. Use the
+ * {@link PooledKryoCodec} if the codec is shared between threads.
  *
  * @author Christian Bockermann
  */
@@ -6,18 +6,34 @@ import com.esotericsoftware.kryo.io.Input;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import stream.Data;
+import stream.annotations.Parameter;
 import stream.data.DataFactory;
 import stream.io.AbstractStream;
 import stream.io.SourceURL;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * KryoStream creates a stream out of an <a href="https://github.com/EsotericSoftware/kryo">Kryo</a>
  * serialized file.
  *
+ * Files written by the {@link KryoWriter} with a block size are read block by block. The blocks can be
+ * decoded in parallel on a fork-join pool with parallelBlocks="N" and the stream can start at any
+ * block. Files without blocks are read item by item as before.
+ *
+ * With compactData="true" the items are created as {@link CompactData} instead of HashMaps.
  *
  * @author kai
  *
@@ -32,17 +48,64 @@ public class KryoStream extends AbstractStream {
         super(url);
     }
 
+    @Parameter(required = false, description = "Number of items decoded ahead on a background " +
+            "thread. Decompression and deserialization then overlap with the processing. " +
+            "0 reads everything on the calling thread.", defaultValue = "0")
+    int readAhead = 0;
+
+    @Parameter(required = false, description = "Number of blocks decoded in parallel. Only used for " +
+            "files written with a block size.", defaultValue = "1")
+    int parallelBlocks = 1;
+
+    @Parameter(required = false, description = "The block to start reading from. Only used for files " +
+            "written with a block size.", defaultValue = "0")
+    int firstBlock = 0;
+
+    @Parameter(required = false, description = "Create the items as CompactData which stores the values " +
+            "by key slots instead of in a HashMap.", defaultValue = "false")
+    boolean compactData = false;
+
     long itemCounter = 0;
     Input input;
     Kryo kryo = new Kryo();
     HashMap<String, Serializable> map = new HashMap<>();
+    private ReadAheadQueue readAheadQueue;
+
+    //state for files written in blocks
+    private FileChannel channel;
+    private List<KryoBlockFormat.Block> blocks;
+    private int nextBlock;
+    private ForkJoinPool pool;
+    private final ArrayDeque<ForkJoinTask<List<Data>>> decodingBlocks = new ArrayDeque<>();
+    private Iterator<Data> currentBlock = Collections.emptyIterator();
 
     @Override
     public void init() throws Exception {
         super.init();
 
-        input = new Input(url.openStream());
-        kryo.register(LocalDateTime.class, new LocalDateTimeSerializer());
+        if ("file".equals(url.getProtocol()) && !url.getFile().endsWith(".gz")) {
+            channel = FileChannel.open(Paths.get(url.getFile()), StandardOpenOption.READ);
+            if (KryoBlockFormat.isBlockFile(channel)) {
+                blocks = KryoBlockFormat.readIndex(channel);
+                log.info("Reading {} blocks from {}", blocks.size(), url);
+                if (parallelBlocks > 1) {
+                    pool = new ForkJoinPool(parallelBlocks);
+                }
+                seek(firstBlock);
+            } else {
+                channel.close();
+                channel = null;
+            }
+        }
+
+        if (channel == null) {
+            input = new Input(url.openStream());
+            kryo.register(LocalDateTime.class, new LocalDateTimeSerializer());
+        }
+
+        if (readAhead > 0) {
+            readAheadQueue = new ReadAheadQueue("KryoStream " + url, readAhead, this::decodeNext);
+        }
     }
 
     @Override
@@ -52,9 +115,91 @@ public class KryoStream extends AbstractStream {
             count = 0l;
             return null;
         }
-        try {
-            Data item = DataFactory.create(kryo.readObject(input, map.getClass()));
+        Data item = readAheadQueue != null ? readAheadQueue.take() : decodeNext();
+        if (item != null) {
             itemCounter++;
+        }
+        return item;
+    }
+
+    /**
+     * Continue reading at the given block. Only possible for files written with a block size.
+     *
+     * @param block the index of the block
+     */
+    public void seek(int block) {
+        if (blocks == null) {
+            throw new UnsupportedOperationException("Seeking is only possible in files written with blocks.");
+        }
+        if (block < 0 || block > blocks.size()) {
+            throw new IllegalArgumentException("Block " + block + " does not exist in " + url);
+        }
+        for (ForkJoinTask<List<Data>> task : decodingBlocks) {
+            task.cancel(false);
+        }
+        decodingBlocks.clear();
+        currentBlock = Collections.emptyIterator();
+        nextBlock = block;
+    }
+
+    /**
+     * @return the number of blocks in the file or -1 if the file was not written in blocks
+     */
+    public int getNumberOfBlocks() {
+        return blocks == null ? -1 : blocks.size();
+    }
+
+    private Data nextFromBlocks() throws Exception {
+        while (!currentBlock.hasNext()) {
+            //keep up to parallelBlocks blocks decoding in the background
+            while (decodingBlocks.size() < Math.max(parallelBlocks, 1) && nextBlock < blocks.size()) {
+                KryoBlockFormat.Block block = blocks.get(nextBlock++);
+                ForkJoinTask<List<Data>> task = ForkJoinTask.adapt(() -> KryoBlockFormat.decodeBlock(channel, block, compactData));
+                if (pool != null) {
+                    pool.execute(task);
+                } else {
+                    //a failure is thrown when the events of the block are taken below
+                    task.quietlyInvoke();
+                }
+                decodingBlocks.add(task);
+            }
+            if (decodingBlocks.isEmpty()) {
+                return null;
+            }
+            currentBlock = decoded(decodingBlocks.poll()).iterator();
+        }
+        Data item = currentBlock.next();
+        item.remove("@datarate");
+        return item;
+    }
+
+    /**
+     * Wait for the events of a block. The task wraps the exceptions of decodeBlock into
+     * RuntimeExceptions. They are thrown as IOException again, so streams like the
+     * {@link RecursiveDirectoryStream} can skip the broken file.
+     */
+    private List<Data> decoded(ForkJoinTask<List<Data>> task) throws IOException {
+        try {
+            return task.join();
+        } catch (RuntimeException e) {
+            Throwable cause = e;
+            while (!(cause instanceof IOException) && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Could not decode a block of " + url, cause);
+        }
+    }
+
+    private Data decodeNext() throws Exception {
+        if (blocks != null) {
+            return nextFromBlocks();
+        }
+        try {
+            HashMap<String, Serializable> values = kryo.readObject(input, map.getClass());
+            Data item = compactData ? new CompactData(values) : DataFactory.create(values);
             //the kryo files contain keys for datarate which have been produced while writing these files.
             item.remove("@datarate");
             return item;
@@ -65,9 +210,38 @@ public class KryoStream extends AbstractStream {
         }
     }
 
+    public void setReadAhead(int readAhead) {
+        this.readAhead = readAhead;
+    }
+
+    public void setParallelBlocks(int parallelBlocks) {
+        this.parallelBlocks = parallelBlocks;
+    }
+
+    public void setFirstBlock(int firstBlock) {
+        this.firstBlock = firstBlock;
+    }
+
+    public void setCompactData(boolean compactData) {
+        this.compactData = compactData;
+    }
+
     @Override
     public void close() throws Exception {
         super.close();
-        input.close();
+        if (readAheadQueue != null) {
+            readAheadQueue.close();
+            readAheadQueue = null;
+        }
+        if (pool != null) {
+            pool.shutdownNow();
+            pool = null;
+        }
+        if (channel != null) {
+            channel.close();
+        }
+        if (input != null) {
+            input.close();
+        }
     }
 }
@@ -6,16 +6,40 @@ import stream.Data;
 import stream.ProcessContext;
 import stream.StatefulProcessor;
 import stream.annotations.Parameter;
+import stream.data.DataFactory;
 import stream.io.SourceURL;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
 
 /**
  * KryoWriter writes DataItem as an Kryo object to a given file.
  *
+ * By default the items are written back to back. With blockSize="N" the items are grouped into blocks
+ * of N items with a block index at the end of the file. Blocks can be deflate compressed. The
+ * {@link KryoStream} reads both formats and can decode blocks in parallel. See {@link KryoBlockFormat}.
+ *
+ * With keyDictionary="true" the keys of the items are written only once per block and the values are
+ * written with dedicated encodings for the common types. See {@link KeyDictionary}. This needs a block size.
+ *
+ * With async="true" the items are serialized and written on a separate thread. The process thread
+ * only copies the items into one of two buffers. While the writing thread works on one buffer the
+ * other one is filled. When both are in use, the process thread waits. With a flushInterval the writing
+ * thread also takes a partly filled buffer when no full one arrived for that long, so the items of a slow
+ * stream reach the file in time. finish() writes all remaining items before closing the file.
+ *
  * @author kai
  */
 public class KryoWriter implements StatefulProcessor {
@@ -24,14 +48,89 @@ public class KryoWriter implements StatefulProcessor {
     @Parameter(required = true, description = "The url to write to")
     SourceURL url;
 
+    @Parameter(required = false, description = "Number of items per block. 0 writes the items back " +
+            "to back without blocks like older versions did.", defaultValue = "0")
+    int blockSize = 0;
+
+    @Parameter(required = false, description = "Deflate compress the blocks.", defaultValue = "false")
+    boolean compress = false;
+
+    @Parameter(required = false, description = "Write the keys once per block instead of once per item. " +
+            "Needs a block size.", defaultValue = "false")
+    boolean keyDictionary = false;
+
+    @Parameter(required = false, description = "Serialize and write the items on a separate thread.",
+            defaultValue = "false")
+    boolean async = false;
+
+    @Parameter(required = false, description = "Number of items in each of the two buffers used in async mode.",
+            defaultValue = "256")
+    int asyncBufferSize = 256;
+
+    @Parameter(required = false, description = "Flush the written data to the file at least every this many " +
+            "milliseconds. 0 only flushes when the buffers are full.", defaultValue = "0")
+    long flushInterval = 0;
+
+    @Parameter(required = false, description = "Force the data to the disk after each block or, without " +
+            "blocks, after each flush.", defaultValue = "false")
+    boolean fsync = false;
+
     Kryo kryo;
     Output output;
+    private FileOutputStream fileStream;
+    private long lastFlush;
+
+    //state for writing asynchronously
+    private BlockingQueue<List<Data>> freeBuffers;
+    private BlockingQueue<List<Data>> fullBuffers;
+    //filled by the process thread. also taken by the writing thread when idle, so it is guarded by this.
+    private List<Data> currentBuffer;
+    private Thread writerThread;
+    private volatile Exception writerError;
+    private static final List<Data> END = new ArrayList<>();
+
+    //state for writing blocks
+    private DataOutputStream file;
+    private long filePosition;
+    private int eventsInBlock;
+    private final List<KryoBlockFormat.Block> blocks = new ArrayList<>();
+    private Deflater deflater;
+    private byte[] compressed = new byte[0];
+    private KeyDictionary dictionary;
+    private Output blockOutput;
 
     @Override
     public void init(ProcessContext processContext) throws Exception {
-        output = new Output(new FileOutputStream(url.getFile()));
         kryo = new Kryo();
         kryo.register(LocalDateTime.class, new LocalDateTimeSerializer());
+
+        if (keyDictionary && blockSize <= 0) {
+            throw new IllegalArgumentException("The key dictionary is written per block. Set a block size.");
+        }
+
+        fileStream = new FileOutputStream(url.getFile());
+        lastFlush = System.currentTimeMillis();
+
+        if (blockSize <= 0) {
+            output = new Output(fileStream);
+        } else {
+            file = new DataOutputStream(new BufferedOutputStream(fileStream, 1 << 16));
+            file.writeInt(KryoBlockFormat.MAGIC);
+            file.writeInt(KryoBlockFormat.VERSION);
+            filePosition = KryoBlockFormat.HEADER_SIZE;
+            output = new Output(1 << 16, -1);
+            if (compress) {
+                deflater = new Deflater(Deflater.BEST_SPEED);
+            }
+            if (keyDictionary) {
+                dictionary = new KeyDictionary();
+                blockOutput = new Output(1 << 16, -1);
+            }
+        }
+
+        if (async) {
+            startWriterThread();
+        }
     }
 
     @Override
@@ -39,19 +138,282 @@ public class KryoWriter implements StatefulProcessor {
 
     }
 
+    private void startWriterThread() {
+        freeBuffers = new ArrayBlockingQueue<>(2);
+        fullBuffers = new ArrayBlockingQueue<>(3);
+        freeBuffers.add(new ArrayList<>(asyncBufferSize));
+        freeBuffers.add(new ArrayList<>(asyncBufferSize));
+
+        writerThread = new Thread(() -> {
+            try {
+                while (true) {
+                    List<Data> buffer = flushInterval > 0
+                            ? fullBuffers.poll(flushInterval, TimeUnit.MILLISECONDS)
+                            : fullBuffers.take();
+                    if (buffer == END) {
+                        return;
+                    }
+                    if (buffer == null) {
+                        //no full buffer for a whole interval. write what has been collected so far.
+                        buffer = takeCurrentBuffer();
+                    }
+                    if (buffer != null) {
+                        for (Data item : buffer) {
+                            write(item, false);
+                        }
+                        buffer.clear();
+                        freeBuffers.put(buffer);
+                    }
+                    flushIfDue();
+                }
+            } catch (InterruptedException e) {
+                //finish was interrupted
+            } catch (Exception e) {
+                writerError = e;
+                //unblock the process thread waiting for a buffer
+                freeBuffers.offer(new ArrayList<>());
+            }
+        }, "KryoWriter " + url);
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * @return the partly filled buffer or null if no items are waiting
+     */
+    private synchronized List<Data> takeCurrentBuffer() {
+        List<Data> buffer = currentBuffer;
+        if (buffer == null || buffer.isEmpty()) {
+            return null;
+        }
+        currentBuffer = null;
+        return buffer;
+    }
+
+    /**
+     * Add the item to the current buffer and hand the buffer to the writing thread when it is full.
+     *
+     * @param free a free buffer to use when there is no current buffer or null to take one if available
+     * @return false if there is no current buffer and no free one
+     */
+    private synchronized boolean addToCurrentBuffer(Data item, List<Data> free) {
+        if (currentBuffer == null) {
+            currentBuffer = free != null ? free : freeBuffers.poll();
+            if (currentBuffer == null) {
+                return false;
+            }
+        }
+        currentBuffer.add(item);
+        if (currentBuffer.size() >= asyncBufferSize) {
+            //there are only two buffers, so this never blocks.
+            fullBuffers.add(currentBuffer);
+            currentBuffer = null;
+        }
+        return true;
+    }
+
+    private void checkWriterError() {
+        if (writerError != null) {
+            throw new RuntimeException("Could not write to " + url, writerError);
+        }
+    }
+
     @Override
     public void finish() throws Exception {
-        output.close();
+        if (writerThread != null) {
+            List<Data> buffer = takeCurrentBuffer();
+            if (buffer != null) {
+                fullBuffers.put(buffer);
+            }
+            fullBuffers.put(END);
+            writerThread.join();
+            checkWriterError();
+        }
+
+        if (file == null) {
+            output.flush();
+            if (fsync) {
+                fileStream.getFD().sync();
+            }
+            output.close();
+            return;
+        }
+
+        writeBlock();
+
+        long indexOffset = filePosition;
+        file.writeInt(blocks.size());
+        for (KryoBlockFormat.Block block : blocks) {
+            file.writeLong(block.offset);
+            file.writeInt(block.numberOfEvents);
+        }
+        file.writeLong(indexOffset);
+        file.writeInt(KryoBlockFormat.INDEX_MAGIC);
+        file.flush();
+        if (fsync) {
+            fileStream.getFD().sync();
+        }
+        file.close();
+        if (deflater != null) {
+            deflater.end();
+        }
     }
 
     @Override
     public Data process(Data data) {
-        HashMap<String, Serializable> map = (HashMap<String, Serializable>) data.createCopy();
-        kryo.writeObject(output, map);
+        if (writerThread == null) {
+            try {
+                write(data, true);
+                flushIfDue();
+            } catch (IOException e) {
+                throw new RuntimeException("Could not write to " + url, e);
+            }
+            return data;
+        }
+
+        checkWriterError();
+        //the only copy of the item. it is written as it is by the writing thread.
+        Data copy = dictionary == null && !(data instanceof HashMap) ? DataFactory.create(data) : data.createCopy();
+        try {
+            //wait for a free buffer outside of the lock. the writing thread needs it to take the current one.
+            List<Data> free = null;
+            while (!addToCurrentBuffer(copy, free)) {
+                free = freeBuffers.take();
+                checkWriterError();
+            }
+        } catch (InterruptedException e) {
+            throw new RuntimeException("Interrupted while waiting for the writer thread", e);
+        }
         return data;
     }
 
+    /**
+     * Serialize the item into the output. Writes a block once it is full.
+     *
+     * @param copy copy the item into a HashMap first. Items buffered in async mode are copies already.
+     */
+    @SuppressWarnings("unchecked")
+    private void write(Data data, boolean copy) throws IOException {
+        if (dictionary != null) {
+            dictionary.writeEvent(kryo, output, data);
+        } else if (!copy) {
+            kryo.writeObject(output, (HashMap<String, Serializable>) data);
+        } else {
+            //items like the CompactData are no HashMaps. They are written in the same format.
+            HashMap<String, Serializable> map = data instanceof HashMap
+                    ? (HashMap<String, Serializable>) data.createCopy()
+                    : new HashMap<>(data);
+            kryo.writeObject(output, map);
+        }
+
+        if (file != null && ++eventsInBlock == blockSize) {
+            writeBlock();
+        }
+    }
+
+    private void flushIfDue() throws IOException {
+        if (flushInterval <= 0 || System.currentTimeMillis() - lastFlush < flushInterval) {
+            return;
+        }
+        if (file != null) {
+            file.flush();
+        } else {
+            output.flush();
+            if (fsync) {
+                fileStream.getFD().sync();
+            }
+        }
+        lastFlush = System.currentTimeMillis();
+    }
+
+    private void writeBlock() throws IOException {
+        if (eventsInBlock == 0) {
+            return;
+        }
+        byte[] payload = output.getBuffer();
+        int rawLength = output.position();
+
+        if (dictionary != null) {
+            //the dictionary has to be read before the events.
+            blockOutput.clear();
+            dictionary.writeDictionary(blockOutput);
+            blockOutput.writeBytes(payload, 0, rawLength);
+            payload = blockOutput.getBuffer();
+            rawLength = blockOutput.position();
+            dictionary.clear();
+        }
+        int length = rawLength;
+
+        if (deflater != null) {
+            if (compressed.length < rawLength + 64) {
+                compressed = new byte[rawLength + rawLength / 8 + 64];
+            }
+            deflater.reset();
+            deflater.setInput(payload, 0, rawLength);
+            deflater.finish();
+            length = 0;
+            while (!deflater.finished()) {
+                if (length == compressed.length) {
+                    compressed = Arrays.copyOf(compressed, 2 * compressed.length);
+                }
+                length += deflater.deflate(compressed, length, compressed.length - length);
+            }
+            payload = compressed;
+        }
+
+        blocks.add(new KryoBlockFormat.Block(filePosition, eventsInBlock));
+        file.writeInt(length);
+        file.writeInt(rawLength);
+        file.writeInt(eventsInBlock);
+        int flags = 0;
+        if (deflater != null) {
+            flags |= KryoBlockFormat.COMPRESSED;
+        }
+        if (dictionary != null) {
+            flags |= KryoBlockFormat.KEY_DICTIONARY;
+        }
+        file.writeByte(flags);
+        file.write(payload, 0, length);
+        filePosition += KryoBlockFormat.BLOCK_HEADER_SIZE + length;
+
+        output.clear();
+        eventsInBlock = 0;
+
+        if (fsync) {
+            file.flush();
+            fileStream.getFD().sync();
+        }
+    }
+
     public void setUrl(SourceURL url) {
         this.url = url;
     }
+
+    public void setBlockSize(int blockSize) {
+        this.blockSize = blockSize;
+    }
+
+    public void setCompress(boolean compress) {
+        this.compress = compress;
+    }
+
+    public void setKeyDictionary(boolean keyDictionary) {
+        this.keyDictionary = keyDictionary;
+    }
+
+    public void setAsync(boolean async) {
+        this.async = async;
+    }
+
+    public void setAsyncBufferSize(int asyncBufferSize) {
+        this.asyncBufferSize = asyncBufferSize;
+    }
+
+    public void setFlushInterval(long flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    public void setFsync(boolean fsync) {
+        this.fsync = fsync;
+    }
 }
@@ -7,17 +7,26 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import stream.Data;
 import stream.annotations.Parameter;
-import stream.data.DataFactory;
+import stream.io.AbstractStream;
 import stream.io.Stream;
 import stream.io.multi.AbstractMultiStream;
 
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 /**
  * Loops over a specified amount of events in the inner streams. If the first stream is emptied the
  * next one is read until the specified number of event sis reached.
  *
+ * By default the events are kept in a pool shared by all loop streams in the process which read the
+ * same inner streams, e.g. the copies of a {@link ParallelLoopStream}. So the events are decoded and
+ * held in memory only once. Each item read is a copy-on-write view on the pooled event. Only the keys
+ * added or changed by the processors are stored in the view.
+ *
+ * With compactData="true" the events are kept as {@link CompactData}. Copying such an event only
+ * copies its arrays, so each item read is a complete copy of the pooled event.
+ *
  * @author chris
  */
 public class LoopStream extends AbstractMultiStream {
@@ -29,7 +38,20 @@ public class LoopStream extends AbstractMultiStream {
     @Parameter(description = "How many events you want to loop over.", defaultValue = "100", required = false)
     int events = 100;
 
-    private final ArrayList<Data> items = new ArrayList<>();
+    @Parameter(description = "Share the decoded events with the other loop streams in this process " +
+            "reading the same inner streams.", defaultValue = "true", required = false)
+    boolean shared = true;
+
+    @Parameter(description = "Name of the shared event pool. By default the name is derived from the " +
+            "classes and urls of the inner streams.", required = false)
+    String pool;
+
+    @Parameter(description = "Keep the events as CompactData. Each item read is a copy of the " +
+            "pooled event instead of a copy-on-write view.", defaultValue = "false", required = false)
+    boolean compactData = false;
+
+    List<Data> items = new ArrayList<>();
+    private String poolName;
 
     /**
      * @see stream.io.multi.AbstractMultiStream#init()
@@ -41,20 +63,52 @@ public class LoopStream extends AbstractMultiStream {
         Map<String, Stream> streams = this.getStreams();
         log.info("Found {} inner streams", streams.size());
 
-        for (Stream stream : streams.values()) {
+        poolName = shared ? poolName() : null;
+        if (poolName == null) {
+            items = loadEvents();
+        } else {
+            items = EventPool.acquire(poolName, this::loadEvents);
+        }
+
+        log.info("Loaded {} events to inner queue.", items.size());
+    }
+
+    private List<Data> loadEvents() throws Exception {
+        List<Data> loaded = new ArrayList<>();
+        for (Stream stream : getStreams().values()) {
             stream.init();
             Data item = stream.read();
-            while (item != null && items.size() < events) {
-                items.add(item);
+            while (item != null && loaded.size() < events) {
+                loaded.add(compactData ? new CompactData(item) : item);
                 item = stream.read();
             }
 
-            if (items.size() >= events) {
+            if (loaded.size() >= events) {
                 break;
             }
         }
+        return loaded;
+    }
 
-        log.info("Loaded {} events to inner queue.", items.size());
+    /**
+     * The name of the pool for the inner streams. Streams without an url can not be told apart, so
+     * their events are not shared unless the pool is named explicitly.
+     */
+    private String poolName() {
+        String suffix = compactData ? events + ":compact" : String.valueOf(events);
+        if (pool != null) {
+            return pool + ":" + suffix;
+        }
+        StringBuilder name = new StringBuilder();
+        for (Map.Entry<String, Stream> entry : getStreams().entrySet()) {
+            Stream stream = entry.getValue();
+            if (!(stream instanceof AbstractStream) || ((AbstractStream) stream).getUrl() == null) {
+                return null;
+            }
+            name.append(entry.getKey()).append('=').append(stream.getClass().getName())
+                    .append('(').append(((AbstractStream) stream).getUrl()).append("),");
+        }
+        return name.append(suffix).toString();
     }
 
     /**
@@ -69,6 +123,15 @@ public class LoopStream extends AbstractMultiStream {
 
         Data item = items.get(idx % items.size());
         idx = (idx + 1) % items.size();
-        return DataFactory.create(item);
+        return compactData ? item.createCopy() : new CopyOnWriteData(item);
+    }
+
+    @Override
+    public void close() throws Exception {
+        super.close();
+        if (poolName != null) {
+            EventPool.release(poolName);
+            poolName = null;
+        }
     }
-}
\ No newline at end of file
+}
@@ -7,4 +7,9 @@ package streams.cta.io;
 public class Names {
     public static final String TRIGGERED_TELESCOPE_IDS = "array:triggered_telescopes";
     public static final String NUM_TRIGGERED_TELESCOPES= "array:num_triggered_telescopes";
+
+    //the keys of the telescopes indexed by telescope id
+    public static final KeyRegistry.TelescopeKeys TYPE_ID = KeyRegistry.telescopeKeys("type:id");
+    public static final KeyRegistry.TelescopeKeys TYPE_NAME = KeyRegistry.telescopeKeys("type:name");
+    public static final KeyRegistry.TelescopeKeys RAW_PHOTONS = KeyRegistry.telescopeKeys("raw:photons");
 }
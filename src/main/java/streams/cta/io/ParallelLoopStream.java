@@ -17,6 +17,8 @@ import java.util.Map;
  * Loops over a specified amount of events in the inner streams. If the first stream is emptied the
  * next one is read until the specified number of event sis reached.
  *
+ * All copies of the stream share the same decoded events. See {@link LoopStream}.
+ *
  * @author chris
  */
 public class ParallelLoopStream extends ParallelMultiStream {
@@ -28,6 +30,18 @@ public class ParallelLoopStream extends ParallelMultiStream {
     @Parameter(description = "How many events you want to loop over.", defaultValue = "100", required = false)
     int events = 100;
 
+    @Parameter(description = "Share the decoded events between the copies of this stream.",
+            defaultValue = "true", required = false)
+    boolean shared = true;
+
+    @Parameter(description = "Name of the shared event pool. By default the name is derived from the " +
+            "classes and urls of the inner streams.", required = false)
+    String pool;
+
+    @Parameter(description = "Keep the events as CompactData. See LoopStream.", defaultValue = "false",
+            required = false)
+    boolean compactData = false;
+
     private LoopStream loopStream;
 
     /**
@@ -50,6 +64,9 @@ public class ParallelLoopStream extends ParallelMultiStream {
             loopStream.addStream(streamMap.getKey(), streamMap.getValue());
         }
         loopStream.events = events;
+        loopStream.shared = shared;
+        loopStream.pool = pool;
+        loopStream.compactData = compactData;
 
         loopStream.init();
     }
@@ -62,6 +79,14 @@ public class ParallelLoopStream extends ParallelMultiStream {
         return loopStream.readNext();
     }
 
+    @Override
+    public void close() throws Exception {
+        super.close();
+        if (loopStream != null) {
+            loopStream.close();
+        }
+    }
+
     @Override
     public void handleParallelism(int instanceNumber, int numberOfInstances) {
         this.numberOfInstances = numberOfInstances;
@@ -0,0 +1,109 @@
+package streams.cta.io;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.pool.KryoPool;
+import stream.Data;
+import stream.data.DataFactory;
+
+import java.io.Serializable;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A thread-safe variant of the {@link KryoCodec}. The Kryo instances are taken from a pool and each
+ * thread reuses its own input and output buffers. So one codec can be shared by all copies of a
+ * process. The encoded bytes are the same as the ones of the {@link KryoCodec}.
+ *
+ * Besides the byte array methods of the codec interface, items can be encoded into and decoded from
+ * a {@link ByteBuffer}. Decoding a heap buffer reads directly from its backing array.
+ */
+public class PooledKryoCodec implements streams.codec.Codec<Data> {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final KryoPool pool = new KryoPool.Builder(KryoBlockFormat::createKryo).softReferences().build();
+
+    private final ThreadLocal<Output> outputs = ThreadLocal.withInitial(() -> new Output(4096, -1));
+    private final ThreadLocal<Input> inputs = ThreadLocal.withInitial(Input::new);
+    private final ThreadLocal<byte[]> copyBuffers = ThreadLocal.withInitial(() -> new byte[4096]);
+
+    /**
+     * @see streams.codec.Codec#decode(byte[])
+     */
+    @Override
+    public Data decode(byte[] rawBytes) throws Exception {
+        return decode(rawBytes, 0, rawBytes.length);
+    }
+
+    /**
+     * @see streams.codec.Codec#encode(java.lang.Object)
+     */
+    @Override
+    public byte[] encode(Data object) throws Exception {
+        return write(object).toBytes();
+    }
+
+    /**
+     * Decode an item from the remaining bytes of the buffer. The position of the buffer is moved
+     * behind the bytes read.
+     */
+    public Data decode(ByteBuffer buffer) {
+        int length = buffer.remaining();
+        if (buffer.hasArray()) {
+            Data item = decode(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+            buffer.position(buffer.position() + length);
+            return item;
+        }
+
+        byte[] bytes = copyBuffers.get();
+        if (bytes.length < length) {
+            bytes = new byte[Math.max(length, 2 * bytes.length)];
+            copyBuffers.set(bytes);
+        }
+        buffer.get(bytes, 0, length);
+        return decode(bytes, 0, length);
+    }
+
+    /**
+     * Encode the item into the buffer starting at its current position.
+     *
+     * @return the number of bytes written
+     * @throws BufferOverflowException if the buffer has not enough room left
+     */
+    public int encode(Data object, ByteBuffer buffer) {
+        Output output = write(object);
+        buffer.put(output.getBuffer(), 0, output.position());
+        return output.position();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Data decode(byte[] bytes, int offset, int length) {
+        Input input = inputs.get();
+        input.setBuffer(bytes, offset, length);
+        Kryo kryo = pool.borrow();
+        try {
+            Map<String, Serializable> values = kryo.readObject(input, HashMap.class);
+            return DataFactory.create(values);
+        } finally {
+            pool.release(kryo);
+            //do not keep a reference to the callers bytes
+            input.setBuffer(EMPTY);
+        }
+    }
+
+    private Output write(Data object) {
+        Output output = outputs.get();
+        output.clear();
+        Kryo kryo = pool.borrow();
+        try {
+            kryo.writeObject(output, object);
+        } finally {
+            pool.release(kryo);
+        }
+        return output;
+    }
+}
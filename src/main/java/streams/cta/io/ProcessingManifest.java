@@ -0,0 +1,176 @@
+package streams.cta.io;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps track of the files read by the {@link RecursiveDirectoryStream} so a crashed process can be
+ * restarted without reading the finished files again.
+ *
+ * The manifest is a text file with one tab separated entry per line. It starts with the listing of
+ * all files found in the directory together with their sizes:
+ *
+ *     LISTED  size  path
+ *
+ * The listing is written to a temporary file which is then moved over the manifest. Afterwards every
+ * change in the state of a file is appended as a single line and forced to disk:
+ *
+ *     STARTED path
+ *     DONE    path
+ *     FAILED  path
+ *
+ * When the manifest is loaded the lines are replayed and the last state of each file wins. A line
+ * which was only partly written when the process died is ignored. So the file is consistent at any
+ * time.
+ */
+final class ProcessingManifest {
+
+    static Logger log = LoggerFactory.getLogger(ProcessingManifest.class);
+
+    enum Status {
+        LISTED, STARTED, DONE, FAILED
+    }
+
+    private final Path path;
+
+    //insertion order keeps the order of the listing
+    private final Map<Path, Long> sizes = new LinkedHashMap<>();
+    private final Map<Path, Status> states = new HashMap<>();
+
+    private FileChannel journal;
+
+    private ProcessingManifest(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Open the manifest at the given path. If the file exists its content is loaded.
+     */
+    static ProcessingManifest open(Path path) throws IOException {
+        ProcessingManifest manifest = new ProcessingManifest(path);
+        if (Files.exists(path)) {
+            manifest.load();
+        }
+        return manifest;
+    }
+
+    private void load() throws IOException {
+        byte[] bytes = Files.readAllBytes(path);
+        String content = new String(bytes, StandardCharsets.UTF_8);
+
+        //everything after the last newline has not been written completely.
+        int end = content.lastIndexOf('\n');
+        if (end < 0) {
+            return;
+        }
+        for (String line : content.substring(0, end).split("\n")) {
+            String[] fields = line.split("\t");
+            try {
+                Status status = Status.valueOf(fields[0]);
+                if (status == Status.LISTED && fields.length == 3) {
+                    Path file = Paths.get(fields[2]);
+                    sizes.put(file, Long.parseLong(fields[1]));
+                    states.put(file, status);
+                } else if (status != Status.LISTED && fields.length == 2) {
+                    states.put(Paths.get(fields[1]), status);
+                }
+            } catch (IllegalArgumentException e) {
+                log.warn("Ignoring malformed line in manifest {}: {}", path, line);
+            }
+        }
+        log.info("Loaded manifest {} listing {} files.", path, sizes.size());
+    }
+
+    /**
+     * @return true if the manifest contains a listing of the files from a previous run
+     */
+    boolean hasListing() {
+        return !sizes.isEmpty();
+    }
+
+    /**
+     * @return the files of the listing in the order they were listed
+     */
+    List<Path> listing() {
+        return new ArrayList<>(sizes.keySet());
+    }
+
+    /**
+     * @return the size of the file as stored in the listing or -1 if the file is not listed
+     */
+    long size(Path file) {
+        Long size = sizes.get(file);
+        return size == null ? -1 : size;
+    }
+
+    synchronized Status status(Path file) {
+        return states.get(file);
+    }
+
+    /**
+     * Replace the manifest with a new listing of files. The states of files which are still listed are
+     * kept. Files which disappeared from the listing are dropped.
+     */
+    synchronized void writeListing(List<Path> files) throws IOException {
+        Map<Path, Status> previousStates = new HashMap<>(states);
+        sizes.clear();
+        states.clear();
+
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (Path file : files) {
+                long size = Files.size(file);
+                sizes.put(file, size);
+                states.put(file, Status.LISTED);
+                writer.write(Status.LISTED + "\t" + size + "\t" + file + "\n");
+            }
+            for (Path file : files) {
+                Status status = previousStates.get(file);
+                if (status != null && status != Status.LISTED) {
+                    states.put(file, status);
+                    writer.write(status + "\t" + file + "\n");
+                }
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Append the new state of a file to the manifest. Returns after the line has been forced to disk.
+     */
+    synchronized void record(Status status, Path file) throws IOException {
+        if (journal == null) {
+            journal = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+        }
+        ByteBuffer line = ByteBuffer.wrap((status + "\t" + file + "\n").getBytes(StandardCharsets.UTF_8));
+        while (line.hasRemaining()) {
+            journal.write(line);
+        }
+        journal.force(false);
+        states.put(file, status);
+    }
+
+    synchronized void close() throws IOException {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package streams.cta.io;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import stream.Data;
+import stream.data.DataFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a decoding loop on a dedicated thread and hands the decoded items to the reading thread
+ * through a bounded queue. This way decompression and parsing of the next events overlap with
+ * the processing of the current one.
+ *
+ * The end of the stream and any exception thrown while decoding are passed through the queue as
+ * well. So the reading thread first receives all items decoded before the failure and then gets
+ * the exception rethrown from {@link #take()}.
+ */
+final class ReadAheadQueue {
+
+    static Logger log = LoggerFactory.getLogger(ReadAheadQueue.class);
+
+    /**
+     * Decodes the next item. Returns null once there are no more items.
+     */
+    interface Source {
+        Data next() throws Exception;
+    }
+
+    //marks the end of the stream in the queue
+    private static final Data END = DataFactory.create();
+
+    private final BlockingQueue<Data> queue;
+    private final Thread thread;
+
+    private volatile boolean closed = false;
+    private volatile Throwable error = null;
+    private boolean finished = false;
+
+    /**
+     * Create the queue and start decoding right away.
+     *
+     * @param name the name of the decoding thread
+     * @param capacity how many decoded items are held in the queue at most
+     * @param source the source to read the items from
+     */
+    ReadAheadQueue(String name, int capacity, Source source) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.thread = new Thread(() -> decode(source), name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    private void decode(Source source) {
+        try {
+            Data item = source.next();
+            while (item != null && !closed) {
+                queue.put(item);
+                item = source.next();
+            }
+        } catch (InterruptedException e) {
+            //we have been closed while waiting for space in the queue.
+            return;
+        } catch (Throwable t) {
+            if (!closed) {
+                error = t;
+            }
+        }
+
+        try {
+            while (!closed && !queue.offer(END, 100, TimeUnit.MILLISECONDS)) {
+                //wait for the reader to make some room.
+            }
+        } catch (InterruptedException e) {
+            //closed. nobody is waiting for the end marker.
+        }
+    }
+
+    /**
+     * Get the next decoded item. Blocks until one is available.
+     *
+     * @return the next item or null when the source is exhausted
+     * @throws Exception the exception thrown by the source, after all items decoded before it
+     */
+    Data take() throws Exception {
+        if (finished) {
+            return null;
+        }
+        Data item = queue.take();
+        if (item != END) {
+            return item;
+        }
+
+        finished = true;
+        Throwable t = error;
+        if (t == null) {
+            return null;
+        }
+        if (t instanceof Exception) {
+            throw (Exception) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        throw new RuntimeException(t);
+    }
+
+    /**
+     * Stop the decoding thread and drop all items which have not been read yet. This waits a
+     * short while for the thread to finish. The caller can close the underlying resources
+     * afterwards.
+     */
+    void close() throws InterruptedException {
+        closed = true;
+        thread.interrupt();
+        queue.clear();
+        thread.join(TimeUnit.SECONDS.toMillis(5));
+        if (thread.isAlive()) {
+            log.warn("Read-ahead thread {} did not stop in time.", thread.getName());
+        }
+    }
+}
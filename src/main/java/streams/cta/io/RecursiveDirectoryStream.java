@@ -4,19 +4,30 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import stream.Data;
 import stream.annotations.Parameter;
+import stream.data.DataFactory;
 import stream.io.AbstractStream;
 import stream.io.SourceURL;
-import stream.io.multi.AbstractMultiStream;
+import streams.io.parallel.ParallelMultiStream;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Given a glob like a pattern describing files a folder _relative_ to the provided url, starts a stream working on
@@ -31,9 +42,30 @@ import java.util.concurrent.LinkedBlockingQueue;
  * finds all files below (recursively) /some/folder with their names matching the pattern. See unix globs for more
  * information on pattern syntax
  *
+ * By default the files are read one after another. With parallelFiles="N" N files are opened and decoded at the
+ * same time by worker threads. Each worker uses its own copy of the inner stream. The events of all files are
+ * merged into one bounded queue, so events of different files will be interleaved.
+ *
+ * When the stream is started with copies="n" each copy only reads its own share of the files. The files are
+ * sorted by size and handed out largest first to the copy with the fewest bytes so far. All copies compute the
+ * same assignment independently, so no file is read twice.
+ *
+ * With manifest="file:/some/manifest.txt" the stream records which files have been started, finished or failed.
+ * When the process is restarted with the same manifest, finished and failed files are skipped and the
+ * listing of files stored in the manifest is used instead of walking the directory again. Each copy of the
+ * stream keeps its own manifest with the copy number appended to the file name. See {@link ProcessingManifest}.
+ * Files which have been started but not finished are read again from the beginning. A file counts as finished
+ * once all of its events have been processed, also when the files are read concurrently.
+ *
+ * With watch="true" the stream does not end when all files have been read. It keeps watching the directory and
+ * reads new files matching the pattern once they have been written completely. See {@link DirectoryWatcher}.
+ * The stream ends when a file named like the stopFile parameter appears in the directory, when no new file
+ * appeared for idleTimeout milliseconds or when the stream is closed. New files are split between copies of
+ * the stream by the hash of their path.
+ *
  * Created by mackaiver on 12/15/15.
  */
-public class RecursiveDirectoryStream extends AbstractMultiStream {
+public class RecursiveDirectoryStream extends ParallelMultiStream {
     static Logger log = LoggerFactory.getLogger(RecursiveDirectoryStream.class);
 
 
@@ -46,16 +78,88 @@ public class RecursiveDirectoryStream extends AbstractMultiStream {
     private String pattern;
 
     //counts how many files have been processed
-    private int filesCounter = 0;
-    private int failedFilesCounter = 0;
-    private List<String> failedFilesList = new ArrayList<>();
+    private final AtomicInteger filesCounter = new AtomicInteger(0);
+    private final AtomicInteger failedFilesCounter = new AtomicInteger(0);
+    private final List<String> failedFilesList = Collections.synchronizedList(new ArrayList<>());
     @Parameter(required = false, description = "If false the reading of a broken file throws"
             + " an exception and the process is aborted, if true the next file will be processed", defaultValue = "true")
     private boolean skipErrors = true;
     private AbstractStream stream;
 
+    @Parameter(required = false, description = "Number of files which are read and decoded concurrently by " +
+            "worker threads. 1 reads the files sequentially on the calling thread.", defaultValue = "1")
+    private int parallelFiles = 1;
+
+    @Parameter(required = false, description = "Maximum number of decoded events waiting in the queue when " +
+            "reading files concurrently.", defaultValue = "256")
+    private int queueSize = 256;
+
+    //marks the end of all files in the event queue
+    private static final Data END = DataFactory.create();
+
+    /**
+     * Put into the event queue after the last event of a file. The file is recorded as done in the
+     * manifest when the marker is taken from the queue, i.e. once all its events have been processed.
+     */
+    private static final class FileEnd extends HashMap<String, Serializable> implements Data {
+        private final Path path;
+
+        FileEnd(Path path) {
+            this.path = path;
+        }
+
+        @Override
+        public Data createCopy() {
+            return this;
+        }
+    }
+
+    private BlockingQueue<Data> events;
+    private List<Thread> workers = new ArrayList<>();
+    private final AtomicInteger runningWorkers = new AtomicInteger(0);
+    private volatile boolean stopped = false;
+    private volatile Exception failure = null;
+    private boolean finished = false;
+
+    private int instanceNumber = 0;
+    private int numberOfInstances = 1;
+
+    @Parameter(required = false, description = "A file recording the state of each file. If it exists, " +
+            "finished and failed files are skipped.")
+    private SourceURL manifest;
+
+    @Parameter(required = false, description = "Read the list of files from the manifest instead of walking " +
+            "the directory again", defaultValue = "true")
+    private boolean reuseListing = true;
+
+    private ProcessingManifest processingManifest;
+    private Path currentFile;
+
+    @Parameter(required = false, description = "Keep watching the directory for new files after all " +
+            "files have been read", defaultValue = "false")
+    private boolean watch = false;
+
+    @Parameter(required = false, description = "Milliseconds between two checks for new files in watch mode. " +
+            "A new file is read once its size did not change for this long.", defaultValue = "5000")
+    private long pollInterval = 5000;
+
+    @Parameter(required = false, description = "Walk the directory every poll interval instead of using " +
+            "file system events. Needed for file systems without change notifications.", defaultValue = "false")
+    private boolean polling = false;
+
+    @Parameter(required = false, description = "Name of a file in the directory which ends watching for " +
+            "new files")
+    private String stopFile;
+
+    @Parameter(required = false, description = "Milliseconds without new files after which watching ends. " +
+            "0 watches until the stop file appears.", defaultValue = "0")
+    private long idleTimeout = 0;
+
+    private DirectoryWatcher watcher;
+
     public RecursiveDirectoryStream(SourceURL url) {
-        super(url);
+        super();
+        setUrl(url);
     }
 
 
@@ -95,73 +199,377 @@ public class RecursiveDirectoryStream extends AbstractMultiStream {
             log.error("This multistrream only supports 1 substream");
         }
 
-        Path startingDir = Paths.get(url.getFile());
-        GlobVisitor globVisitor = new GlobVisitor(Paths.get(startingDir.toString(), pattern).toString());
-        Files.walkFileTree(startingDir, new HashSet<FileVisitOption>(), maxDepth, globVisitor);
+        if (manifest != null) {
+            processingManifest = ProcessingManifest.open(manifestPath());
+        }
+
+        if (processingManifest != null && reuseListing && processingManifest.hasListing()) {
+            log.info("Using the listing of files stored in the manifest.");
+            files.addAll(processingManifest.listing());
+        } else {
+            Path startingDir = Paths.get(url.getFile());
+            GlobVisitor globVisitor = new GlobVisitor(Paths.get(startingDir.toString(), pattern).toString());
+            Files.walkFileTree(startingDir, new HashSet<FileVisitOption>(), maxDepth, globVisitor);
+            if (processingManifest != null) {
+                processingManifest.writeListing(new ArrayList<>(files));
+            }
+        }
 
-        if(files.isEmpty()){
+        if(files.isEmpty() && !watch){
             log.error("No files could be loaded for pattern {}", pattern);
             throw new RuntimeException("No files could be loaded");
         }
 
         log.info("Loaded " + files.size() + " files for streaming.");
+        Set<Path> known = new HashSet<>(files);
 
-        if (stream == null && additionOrder != null) {
+        if (numberOfInstances > 1) {
+            partitionFiles();
+        }
+
+        if (processingManifest != null) {
+            skipProcessedFiles();
+        }
+
+        if (watch) {
+            startWatching(known);
+        }
+
+        if (parallelFiles > 1) {
+            startWorkers();
+            return;
+        }
+
+        if (stream == null && additionOrder != null && !files.isEmpty()) {
             stream = (AbstractStream) streams.get(additionOrder.get(0));
-            stream.setUrl(new SourceURL(files.poll().toUri().toURL()));
+            currentFile = files.poll();
+            stream.setUrl(new SourceURL(currentFile.toUri().toURL()));
+            record(ProcessingManifest.Status.STARTED, currentFile);
             stream.init();
-            filesCounter++;
+            filesCounter.incrementAndGet();
+        }
+    }
+
+    private void startWatching(Set<Path> known) throws IOException {
+        Path startingDir = Paths.get(url.getFile());
+        PathMatcher matcher = FileSystems.getDefault()
+                .getPathMatcher("glob:" + Paths.get(startingDir.toString(), pattern).toString());
+        watcher = new DirectoryWatcher(startingDir, maxDepth, matcher, known, this::addNewFile,
+                pollInterval, polling, stopFile, idleTimeout);
+        watcher.start();
+    }
+
+    /**
+     * Called by the watcher for every new file.
+     */
+    private void addNewFile(Path path) {
+        if (numberOfInstances > 1
+                && Math.floorMod(path.toString().hashCode(), numberOfInstances) != instanceNumber % numberOfInstances) {
+            return;
+        }
+        if (processingManifest != null) {
+            ProcessingManifest.Status status = processingManifest.status(path);
+            if (status == ProcessingManifest.Status.DONE || status == ProcessingManifest.Status.FAILED) {
+                return;
+            }
+        }
+        files.add(path);
+    }
+
+    /**
+     * Get the next file to read. In watch mode this blocks until a new file appears or watching ends.
+     *
+     * @return the next file or null if there are no more files
+     */
+    private Path nextFile() throws InterruptedException {
+        if (watcher == null) {
+            return files.poll();
+        }
+        while (!stopped) {
+            Path path = files.poll(100, TimeUnit.MILLISECONDS);
+            if (path != null) {
+                return path;
+            }
+            if (watcher.isFinished() && files.isEmpty()) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private Path manifestPath() {
+        Path path = Paths.get(manifest.getFile());
+        if (numberOfInstances > 1) {
+            path = path.resolveSibling(path.getFileName() + "." + (instanceNumber % numberOfInstances));
+        }
+        return path;
+    }
+
+    /**
+     * Remove all files from the queue which have been finished or which failed in a previous run.
+     */
+    private void skipProcessedFiles() {
+        int done = 0;
+        int failed = 0;
+        List<Path> remaining = new ArrayList<>();
+        for (Path path : files) {
+            ProcessingManifest.Status status = processingManifest.status(path);
+            if (status == ProcessingManifest.Status.DONE) {
+                done++;
+            } else if (status == ProcessingManifest.Status.FAILED) {
+                failed++;
+                failedFilesList.add(path.toString());
+            } else {
+                if (status == ProcessingManifest.Status.STARTED) {
+                    log.warn("File {} was not finished in a previous run. Reading it again.", path);
+                }
+                remaining.add(path);
+            }
+        }
+        files.clear();
+        files.addAll(remaining);
+        log.info("Skipping {} finished and {} failed files recorded in the manifest. {} files left.",
+                done, failed, files.size());
+    }
+
+    private void record(ProcessingManifest.Status status, Path path) {
+        if (processingManifest == null || path == null) {
+            return;
+        }
+        try {
+            processingManifest.record(status, path);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write to manifest " + manifest, e);
         }
     }
 
+    private long fileSize(Path path) throws IOException {
+        long size = processingManifest == null ? -1 : processingManifest.size(path);
+        return size >= 0 ? size : Files.size(path);
+    }
+
+    /**
+     * Keep only the files assigned to this copy of the stream. The files are sorted by decreasing size
+     * (and by path for files of the same size) so that every copy computes the same assignment.
+     * Each file then goes to the copy with the least bytes assigned so far.
+     */
+    private void partitionFiles() throws IOException {
+        List<Path> allFiles = new ArrayList<>(files);
+        long[] sizes = new long[allFiles.size()];
+        Integer[] order = new Integer[allFiles.size()];
+        for (int i = 0; i < allFiles.size(); i++) {
+            sizes[i] = fileSize(allFiles.get(i));
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.<Integer>comparingLong(i -> -sizes[i])
+                .thenComparing(i -> allFiles.get(i).toString()));
+
+        //instance numbers might start at 1. the modulo maps them onto 0..n-1 either way.
+        int copy = instanceNumber % numberOfInstances;
+        long[] bytesPerCopy = new long[numberOfInstances];
+        files.clear();
+        for (int i : order) {
+            int smallest = 0;
+            for (int c = 1; c < numberOfInstances; c++) {
+                if (bytesPerCopy[c] < bytesPerCopy[smallest]) {
+                    smallest = c;
+                }
+            }
+            bytesPerCopy[smallest] += sizes[i];
+            if (smallest == copy) {
+                files.add(allFiles.get(i));
+            }
+        }
+
+        for (int c = 0; c < numberOfInstances; c++) {
+            log.info("Copy {} of {} reads {} bytes.", c, numberOfInstances, bytesPerCopy[c]);
+        }
+        log.info("This is copy {}. Streaming {} of {} files.", copy, files.size(), allFiles.size());
+    }
+
+    private void startWorkers() {
+        events = new ArrayBlockingQueue<>(queueSize);
+        int numberOfWorkers = watch ? parallelFiles : Math.min(parallelFiles, files.size());
+        runningWorkers.set(numberOfWorkers);
+        if (numberOfWorkers == 0) {
+            events.add(END);
+        }
+        for (int i = 0; i < numberOfWorkers; i++) {
+            Thread worker = new Thread(this::readFiles, "RecursiveDirectoryStream-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+        log.info("Reading {} files concurrently.", numberOfWorkers);
+    }
+
+    /**
+     * The loop run by each worker thread. Takes files from the queue until it is empty.
+     */
+    private void readFiles() {
+        try {
+            Path path = nextFile();
+            while (path != null && !stopped) {
+                readFile(path);
+                path = nextFile();
+            }
+        } catch (InterruptedException e) {
+            //the stream has been closed.
+        } catch (Exception e) {
+            failure = e;
+            stopped = true;
+        } finally {
+            if (runningWorkers.decrementAndGet() == 0) {
+                try {
+                    while (!events.offer(END, 100, TimeUnit.MILLISECONDS)) {
+                        if (stopped && failure == null) {
+                            break;
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    //closed. nobody waits for the end marker.
+                }
+            }
+        }
+    }
+
+    private void readFile(Path path) throws Exception {
+        AbstractStream fileStream = createInnerStream();
+        fileStream.setUrl(new SourceURL(path.toUri().toURL()));
+        filesCounter.incrementAndGet();
+        record(ProcessingManifest.Status.STARTED, path);
+        try {
+            fileStream.init();
+            log.info("Streaming file: " + fileStream.getUrl().toString());
+
+            Data data = fileStream.read();
+            while (data != null && !stopped) {
+                events.put(data);
+                data = fileStream.read();
+            }
+            if (!stopped) {
+                events.put(new FileEnd(path));
+            }
+        } catch (IOException e) {
+            log.info("File: " + path + " throws IOException.");
+            record(ProcessingManifest.Status.FAILED, path);
+            if (!skipErrors) {
+                throw e;
+            }
+            log.info("Skipping broken files. Continuing with next file.");
+            failedFilesCounter.incrementAndGet();
+            failedFilesList.add(path.toUri().toURL().toString());
+        } finally {
+            try {
+                fileStream.close();
+            } catch (Exception e) {
+                log.warn("Could not close stream for file {}", path);
+            }
+        }
+    }
+
+    /**
+     * Each worker needs its own instance of the inner stream. Create a new instance of the same class and
+     * copy all fields annotated as parameters, the id and the limit. Values which are only set by setters
+     * without a parameter field are not copied.
+     */
+    private AbstractStream createInnerStream() throws Exception {
+        AbstractStream template = (AbstractStream) streams.get(additionOrder.get(0));
+        AbstractStream copy = template.getClass().newInstance();
+        for (Class<?> c = template.getClass(); c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (field.isAnnotationPresent(Parameter.class) && !Modifier.isStatic(field.getModifiers())) {
+                    field.setAccessible(true);
+                    field.set(copy, field.get(template));
+                }
+            }
+        }
+        copy.setId(template.getId());
+        copy.setLimit(template.getLimit());
+        return copy;
+    }
+
+    private Data takeFromWorkers() throws Exception {
+        if (finished) {
+            return null;
+        }
+        //after a failure the workers stop and the last one puts the end marker into the queue. events of
+        //other files which are in the queue already are returned first, like when reading sequentially.
+        Data data = events.take();
+        while (data instanceof FileEnd) {
+            record(ProcessingManifest.Status.DONE, ((FileEnd) data).path);
+            data = events.take();
+        }
+        if (data != END) {
+            return data;
+        }
+        finished = true;
+        if (failure instanceof IOException) {
+            log.error("Stopping stream because of IOException", failure);
+            return null;
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return null;
+    }
+
 
     @Override
     public Data readNext() throws Exception {
+        if (events != null) {
+            return takeFromWorkers();
+        }
 
         try {
 
             //create new stream when we don't have one
             if (stream == null){
-                if (files.isEmpty()) {
+                currentFile = nextFile();
+                if (currentFile == null) {
                     return null;
                 }
-                File f = files.poll().toFile();
 
                 stream = (AbstractStream) streams.get(additionOrder.get(0));
-                stream.setUrl(new SourceURL(f.toURI().toURL()));
+                stream.setUrl(new SourceURL(currentFile.toUri().toURL()));
+                record(ProcessingManifest.Status.STARTED, currentFile);
                 stream.init();
 
                 log.info("Streaming file: " + stream.getUrl().toString());
-                filesCounter++;
+                filesCounter.incrementAndGet();
             }
 
             Data data = stream.read();
             if (data == null) {
                 //no data was returned
-                if (files.isEmpty()) {
+                record(ProcessingManifest.Status.DONE, currentFile);
+                currentFile = nextFile();
+                if (currentFile == null) {
                     //no more files to read -> stop the stream
                     return null;
                 }
                 //get new file
                 stream.close();
-                File f = files.poll().toFile();
 
-                stream.setUrl(new SourceURL(f.toURI().toURL()));
+                stream.setUrl(new SourceURL(currentFile.toUri().toURL()));
+                record(ProcessingManifest.Status.STARTED, currentFile);
                 stream.init();
                 data = stream.readNext();
-                filesCounter++;
+                filesCounter.incrementAndGet();
             }
 
             return data;
 
         } catch(IOException e){
             log.info("File: " + stream.getUrl().toString() + " throws IOException.");
+            record(ProcessingManifest.Status.FAILED, currentFile);
+            currentFile = null;
 
             if (skipErrors) {
                 log.info("Skipping broken files. Continuing with next file.");
-                stream = null;
-                failedFilesCounter++;
+                failedFilesCounter.incrementAndGet();
                 failedFilesList.add(stream.getUrl().toString());
+                stream = null;
                 return this.readNext();
             } else {
                 log.error("Stopping stream because of IOException");
@@ -178,12 +586,81 @@ public class RecursiveDirectoryStream extends AbstractMultiStream {
     @Override
     public void close() throws Exception {
         super.close();
+        stopped = true;
+        if (watcher != null) {
+            watcher.close();
+        }
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        for (Thread worker : workers) {
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        }
+        workers.clear();
+        if (processingManifest != null) {
+            processingManifest.close();
+        }
         log.info("In total " + filesCounter +  " files were processed.");
         log.info("In total " + failedFilesCounter + " were broken (and therefore skipped).");
-        for ( String fileName : failedFilesList)
-        {
-            log.info(fileName);
+        synchronized (failedFilesList) {
+            for ( String fileName : failedFilesList)
+            {
+                log.info(fileName);
+            }
         }
     }
 
-}
\ No newline at end of file
+    @Override
+    public void handleParallelism(int instanceNumber, int numberOfInstances) {
+        this.instanceNumber = instanceNumber;
+        this.numberOfInstances = numberOfInstances;
+    }
+
+    public void setPattern(String pattern) {
+        this.pattern = pattern;
+    }
+
+    public void setSkipErrors(boolean skipErrors) {
+        this.skipErrors = skipErrors;
+    }
+
+    public void setManifest(SourceURL manifest) {
+        this.manifest = manifest;
+    }
+
+    public void setReuseListing(boolean reuseListing) {
+        this.reuseListing = reuseListing;
+    }
+
+    public void setWatch(boolean watch) {
+        this.watch = watch;
+    }
+
+    public void setPollInterval(long pollInterval) {
+        this.pollInterval = pollInterval;
+    }
+
+    public void setPolling(boolean polling) {
+        this.polling = polling;
+    }
+
+    public void setStopFile(String stopFile) {
+        this.stopFile = stopFile;
+    }
+
+    public void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    public void setParallelFiles(int parallelFiles) {
+        this.parallelFiles = parallelFiles;
+    }
+
+    public int getFilesCounter() {
+        return filesCounter.get();
+    }
+
+    public int getFailedFilesCounter() {
+        return failedFilesCounter.get();
+    }
+}
@@ -0,0 +1,312 @@
+package streams.cta.io;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Random;
+
+import stream.Data;
+import stream.annotations.Parameter;
+import stream.data.DataFactory;
+import stream.io.AbstractStream;
+import streams.hexmap.CameraMapping;
+import streams.hexmap.TelescopeGeometry;
+
+/**
+ * Generates simulated camera images for load tests. No data files are needed. The events contain the
+ * same keys as the ones read by the {@link ImageStream}, so all processors work on them.
+ *
+ *     <stream id="cta:synthetic" class="streams.cta.io.SyntheticImageStream" limit="100000" seed="42"
+ *             minTelescopes="10" />
+ *
+ * The shower model is deliberately simple. The energy is drawn from a power law and the impact point
+ * uniformly from a disc around the center of the array. The telescopes of the array definition see
+ * the shower as an elliptical Gaussian. Its center lies in the direction of the impact point, further
+ * out for more distant telescopes. The ellipse is elongated along that direction. The number of
+ * photons grows with the energy and the mirror size and falls with the distance to the impact point.
+ * Every pixel gets Gaussian noise plus the fluctuation of its signal. Camera x and y are aligned with
+ * the x and y axes of the array.
+ *
+ * A telescope triggers when its image holds more than triggerThreshold photons and its center lies
+ * within the camera. Events with fewer than minTelescopes triggered telescopes are discarded and
+ * drawn again. Setting multiplicity triggers exactly that many telescopes closest to the impact point
+ * in every event instead.
+ *
+ * The same seed generates the same events.
+ */
+public class SyntheticImageStream extends AbstractStream {
+
+    static Logger log = LoggerFactory.getLogger(SyntheticImageStream.class);
+
+    //height of the shower maximum above the telescopes in meters
+    private static final double SHOWER_HEIGHT = 10000;
+
+    //photons per square meter of mirror for a 1 TeV shower next to the telescope
+    private static final double PHOTON_DENSITY = 20;
+
+    //distance from the impact point in meters at which the photon density has dropped to half
+    private static final double LIGHT_POOL_RADIUS = 120;
+
+    private static final LocalDateTime START = LocalDateTime.of(2017, 1, 1, 0, 0);
+
+    //mirror areas in square meters indexed by the ordinal of the telescope type: SST, MST, LST
+    private static final double[] MIRROR_AREA = {8, 100, 390};
+
+    @Parameter(required = false, description = "Seed of the random number generator", defaultValue = "0")
+    long seed = 0;
+
+    @Parameter(required = false, description = "Lowest energy in TeV", defaultValue = "0.01")
+    double minEnergy = 0.01;
+
+    @Parameter(required = false, description = "Highest energy in TeV", defaultValue = "300")
+    double maxEnergy = 300;
+
+    @Parameter(required = false, description = "Spectral index of the power law dN/dE ~ E^-index",
+            defaultValue = "2.0")
+    double spectralIndex = 2.0;
+
+    @Parameter(required = false, description = "Largest distance of the impact point from the center " +
+            "of the array in meters", defaultValue = "1500")
+    double maxImpact = 1500;
+
+    @Parameter(required = false, description = "Minimum number of triggered telescopes per event",
+            defaultValue = "2")
+    int minTelescopes = 2;
+
+    @Parameter(required = false, description = "Trigger exactly this many telescopes closest to the " +
+            "impact point. 0 uses the photon threshold.", defaultValue = "0")
+    int multiplicity = 0;
+
+    @Parameter(required = false, description = "Number of photons an image needs to trigger the telescope",
+            defaultValue = "50")
+    double triggerThreshold = 50;
+
+    @Parameter(required = false, description = "Standard deviation of the noise in each pixel in photons",
+            defaultValue = "3.0")
+    double noise = 3.0;
+
+    @Parameter(required = false, description = "Pointing altitude in radians", defaultValue = "1.2217")
+    double alt = Math.toRadians(70);
+
+    @Parameter(required = false, description = "Pointing azimuth in radians", defaultValue = "0")
+    double az = 0;
+
+    private Random random;
+    private CameraMapping mapping;
+    private TelescopeGeometry[] telescopes;
+    private double[] cameraRadius;
+    private double[] pixelArea;
+
+    private String[] typeIdKeys;
+    private String[] typeNameKeys;
+    private String[] photonKeys;
+
+    private long eventId = 0;
+
+    //per telescope values of the current event
+    private double[] photons;
+    private double[] distances;
+    private Integer[] order;
+
+    @Override
+    public void init() throws Exception {
+        super.init();
+        if (multiplicity > 0 && multiplicity < minTelescopes) {
+            throw new IllegalArgumentException("multiplicity " + multiplicity + " is less than minTelescopes "
+                    + minTelescopes);
+        }
+
+        random = new Random(seed);
+        mapping = CameraMapping.getInstance();
+
+        int n = mapping.numberOfTelescopes();
+        telescopes = new TelescopeGeometry[n + 1];
+        cameraRadius = new double[n + 1];
+        pixelArea = new double[n + 1];
+        typeIdKeys = new String[n + 1];
+        typeNameKeys = new String[n + 1];
+        photonKeys = new String[n + 1];
+        for (int id = 1; id <= n; id++) {
+            TelescopeGeometry telescope = mapping.geometryFromId(id);
+            telescopes[id] = telescope;
+
+            double radius = 0;
+            for (int pixel = 0; pixel < telescope.numberOfPixel; pixel++) {
+                radius = Math.max(radius, Math.hypot(telescope.pixelXPositions[pixel], telescope.pixelYPositions[pixel]));
+            }
+            cameraRadius[id] = radius;
+            pixelArea[id] = Math.PI * radius * radius / telescope.numberOfPixel;
+
+            typeIdKeys[id] = String.format("telescope:%d:type:id", id);
+            typeNameKeys[id] = String.format("telescope:%d:type:name", id);
+            photonKeys[id] = String.format("telescope:%d:raw:photons", id);
+        }
+
+        photons = new double[n + 1];
+        distances = new double[n + 1];
+        order = new Integer[n];
+        if (Math.max(minTelescopes, multiplicity) > n) {
+            throw new IllegalArgumentException("The array has only " + n + " telescopes");
+        }
+        log.info("Generating events with seed {} for {} telescopes", seed, n);
+    }
+
+    @Override
+    public Data readNext() throws Exception {
+        while (true) {
+            double energy = drawEnergy();
+            double r = maxImpact * Math.sqrt(random.nextDouble());
+            double angle = 2 * Math.PI * random.nextDouble();
+            double coreX = r * Math.cos(angle);
+            double coreY = r * Math.sin(angle);
+
+            int[] triggered = trigger(energy, coreX, coreY);
+            if (triggered.length < minTelescopes) {
+                continue;
+            }
+
+            Data data = DataFactory.create();
+            for (int id : triggered) {
+                data.put(typeIdKeys[id], telescopes[id].telescopeType.ordinal());
+                data.put(typeNameKeys[id], telescopes[id].telescopeType.toString());
+                data.put(photonKeys[id], image(id, coreX, coreY, energy));
+            }
+
+            data.put("array:triggered_telescopes", triggered);
+            data.put("array:num_triggered_telescopes", triggered.length);
+
+            data.put("mc:alt", alt);
+            data.put("mc:az", az);
+            data.put("mc:core_x", coreX);
+            data.put("mc:core_y", coreY);
+            data.put("mc:energy", energy);
+            data.put("mc:type", "gamma");
+
+            data.put("event_id", eventId);
+            //one event per millisecond. The same seed creates the same events including the timestamps.
+            data.put("timestamp", START.plusNanos(eventId * 1000000L).toString());
+            data.put("source_file", "synthetic");
+            eventId++;
+            return data;
+        }
+    }
+
+    private double drawEnergy() {
+        double u = random.nextDouble();
+        if (spectralIndex == 1) {
+            return minEnergy * Math.pow(maxEnergy / minEnergy, u);
+        }
+        double k = 1 - spectralIndex;
+        double low = Math.pow(minEnergy, k);
+        double high = Math.pow(maxEnergy, k);
+        return Math.pow(low + u * (high - low), 1 / k);
+    }
+
+    /**
+     * Compute the number of photons each telescope sees and select the triggered ones.
+     */
+    private int[] trigger(double energy, double coreX, double coreY) {
+        int n = telescopes.length - 1;
+        for (int id = 1; id <= n; id++) {
+            TelescopeGeometry telescope = telescopes[id];
+            double d = Math.hypot(coreX - telescope.positionX, coreY - telescope.positionY);
+            double q = d / LIGHT_POOL_RADIUS;
+            distances[id] = d;
+            photons[id] = PHOTON_DENSITY * energy * MIRROR_AREA[telescope.telescopeType.ordinal()] / (1 + q * q);
+        }
+
+        if (multiplicity > 0) {
+            for (int i = 0; i < n; i++) {
+                order[i] = i + 1;
+            }
+            Arrays.sort(order, (a, b) -> Double.compare(distances[a], distances[b]));
+            int[] triggered = new int[multiplicity];
+            for (int i = 0; i < multiplicity; i++) {
+                triggered[i] = order[i];
+            }
+            Arrays.sort(triggered);
+            return triggered;
+        }
+
+        int count = 0;
+        int[] triggered = new int[n];
+        for (int id = 1; id <= n; id++) {
+            if (photons[id] > triggerThreshold && imageOffset(id) < cameraRadius[id]) {
+                triggered[count++] = id;
+            }
+        }
+        return Arrays.copyOf(triggered, count);
+    }
+
+    /**
+     * @return the distance of the image center from the camera center in meters
+     */
+    private double imageOffset(int id) {
+        return telescopes[id].opticalFocalLength * Math.atan(distances[id] / SHOWER_HEIGHT);
+    }
+
+    private double[] image(int id, double coreX, double coreY, double energy) {
+        TelescopeGeometry telescope = telescopes[id];
+        double phi = Math.atan2(coreY - telescope.positionY, coreX - telescope.positionX);
+        double cosPhi = Math.cos(phi);
+        double sinPhi = Math.sin(phi);
+        double offset = imageOffset(id);
+        double centerX = offset * cosPhi;
+        double centerY = offset * sinPhi;
+
+        //angular size of the ellipse grows slowly with the energy.
+        double lengthDegrees = Math.min(0.8, Math.max(0.1, 0.15 + 0.1 * Math.log10(energy / 0.03)));
+        double length = telescope.opticalFocalLength * Math.toRadians(lengthDegrees);
+        double width = 0.35 * length;
+
+        double amplitude = photons[id] * pixelArea[id] / (2 * Math.PI * length * width);
+        double[] image = new double[telescope.numberOfPixel];
+        for (int pixel = 0; pixel < image.length; pixel++) {
+            double dx = telescope.pixelXPositions[pixel] - centerX;
+            double dy = telescope.pixelYPositions[pixel] - centerY;
+            double l = (dx * cosPhi + dy * sinPhi) / length;
+            double w = (dy * cosPhi - dx * sinPhi) / width;
+            double signal = amplitude * Math.exp(-0.5 * (l * l + w * w));
+            image[pixel] = signal + random.nextGaussian() * Math.sqrt(signal + noise * noise);
+        }
+        return image;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public void setMinEnergy(double minEnergy) {
+        this.minEnergy = minEnergy;
+    }
+
+    public void setMaxEnergy(double maxEnergy) {
+        this.maxEnergy = maxEnergy;
+    }
+
+    public void setSpectralIndex(double spectralIndex) {
+        this.spectralIndex = spectralIndex;
+    }
+
+    public void setMaxImpact(double maxImpact) {
+        this.maxImpact = maxImpact;
+    }
+
+    public void setMinTelescopes(int minTelescopes) {
+        this.minTelescopes = minTelescopes;
+    }
+
+    public void setMultiplicity(int multiplicity) {
+        this.multiplicity = multiplicity;
+    }
+
+    public void setTriggerThreshold(double triggerThreshold) {
+        this.triggerThreshold = triggerThreshold;
+    }
+
+    public void setNoise(double noise) {
+        this.noise = noise;
+    }
+}
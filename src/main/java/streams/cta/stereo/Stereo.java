@@ -11,8 +11,11 @@ import org.apache.commons.math3.linear.RealMatrix;
 import org.apache.commons.math3.linear.SingularMatrixException;
 import stream.Data;
 import stream.Processor;
+import streams.cta.ArrayEvent;
+import streams.cta.TelescopeEvent;
+import streams.cta.io.KeyRegistry;
 import streams.hexmap.CameraMapping;
-import streams.hexmap.TelescopeDefinition;
+import streams.hexmap.TelescopeGeometry;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -27,6 +30,9 @@ import static java.lang.Math.*;
  * telescope in the event and uses them to estimate the position of the shower impact on the ground
  * and the direction the shower originated from.
  *
+ * When the item contains a typed {@link ArrayEvent} the parameters are read from its telescope events
+ * and the results are stored in its fields instead of data keys.
+ *
  * The original implementation was created by Tino Michael. And is called FitGammaHillas
  * within the ctapipe project. https://github.com/cta-observatory/ctapipe
  *
@@ -122,14 +128,32 @@ public class Stereo  implements Processor{
         double phi = (double) data.get("mc:az");
         double theta = (double) data.get("mc:alt");
 
-        List<Plane> planes = Arrays.stream(triggeredTelescopes)
-                .mapToObj(id -> new Plane(id,phi, theta, data))
-                .collect(Collectors.toList());
+        ArrayEvent event = ArrayEvent.get(data);
+        List<Plane> planes;
+        if (event != null) {
+            planes = Arrays.stream(event.telescopes)
+                    .map(telescope -> new Plane(telescope, phi, theta))
+                    .collect(Collectors.toList());
+        } else {
+            planes = Arrays.stream(triggeredTelescopes)
+                    .mapToObj(id -> new Plane(id, phi, theta, data))
+                    .collect(Collectors.toList());
+        }
 
         double[] direction = estimateDirection(planes);
 
         double[] corePosition = estimateCorePosition(planes);
 
+        if (event != null) {
+            event.directionX = direction[0];
+            event.directionY = direction[1];
+            event.directionZ = direction[2];
+            event.impactX = corePosition[0];
+            event.impactY = corePosition[1];
+            event.hasStereo = true;
+            return data;
+        }
+
         data.put("stereo:estimated_direction", direction);
         data.put("stereo:estimated_direction:x", direction[0]);
         data.put("stereo:estimated_direction:y", direction[1]);
@@ -239,6 +263,13 @@ public class Stereo  implements Processor{
      */
     static class Plane {
         static final CameraMapping MAPPING = CameraMapping.getInstance();
+
+        private static final KeyRegistry.TelescopeKeys LENGTH = KeyRegistry.telescopeKeys("shower:length");
+        private static final KeyRegistry.TelescopeKeys WIDTH = KeyRegistry.telescopeKeys("shower:width");
+        private static final KeyRegistry.TelescopeKeys COG_X = KeyRegistry.telescopeKeys("shower:cog:x");
+        private static final KeyRegistry.TelescopeKeys COG_Y = KeyRegistry.telescopeKeys("shower:cog:y");
+        private static final KeyRegistry.TelescopeKeys PSI = KeyRegistry.telescopeKeys("shower:psi");
+        private static final KeyRegistry.TelescopeKeys SIZE = KeyRegistry.telescopeKeys("shower:size");
         //the telescope id this reconstructed plane belongs to
         final int telescopeId;
         //the weight given to the plane
@@ -254,19 +285,25 @@ public class Stereo  implements Processor{
         final double[] telescopePosition;
 
         Plane(int id, double phi, double theta,  Data data) {
-            this.telescopeId = id;
+            this(id, phi, theta,
+                    (double) data.get(LENGTH.key(id)),
+                    (double) data.get(WIDTH.key(id)),
+                    (double) data.get(COG_X.key(id)),
+                    (double) data.get(COG_Y.key(id)),
+                    (double) data.get(PSI.key(id)),
+                    (double) data.get(SIZE.key(id)));
+        }
 
-            //common prefix for all keys.
-            final String prefix = "telescope:" + id + ":shower:";
+        Plane(TelescopeEvent telescope, double phi, double theta) {
+            this(telescope.telescopeId, phi, theta, telescope.length, telescope.width,
+                    telescope.cogX, telescope.cogY, telescope.delta, telescope.size);
+        }
 
-            double length = (double) data.get(prefix + "length");
-            double width = (double) data.get(prefix + "width");
-            double cogX = (double) data.get(prefix + "cog:x");
-            double cogY = (double) data.get(prefix + "cog:y");
-            double psi = (double) data.get(prefix + "psi");
-            double size = (double) data.get(prefix + "size");
+        Plane(int id, double phi, double theta, double length, double width,
+              double cogX, double cogY, double psi, double size) {
+            this.telescopeId = id;
 
-            TelescopeDefinition tel = MAPPING.telescopeFromId(id);
+            TelescopeGeometry tel = MAPPING.geometryFromId(id);
 
             //get two points on the shower axis
             double pX = cogX + length * cos(psi);
@@ -289,7 +326,7 @@ public class Stereo  implements Processor{
                 this.normalVector = norm.normalize().toArray();
             }
 
-            telescopePosition = new double[]{tel.telescopePositionX, tel.telescopePositionY, tel.telescopePositionZ};
+            telescopePosition = new double[]{tel.positionX, tel.positionY, tel.positionZ};
         }
 
         /**
@@ -44,6 +44,17 @@ public class CameraMapping {
      */
     private final ArrayList<TelescopeDefinition> telescopes;
 
+    /**
+     * Camera geometries indexed by telescope id. Index 0 is unused since telescope ids start at 1.
+     */
+    private final CameraGeometry[] camerasById;
+
+    /**
+     * Flattened telescope and camera geometry indexed by telescope id.
+     * Index 0 is unused since telescope ids start at 1.
+     */
+    private final TelescopeGeometry[] geometriesById;
+
     /**
      * Retrieve the singleton instance of the camera mapping which contains geometry data for the
      * cameras and definition of the telescopes
@@ -74,6 +85,41 @@ public class CameraMapping {
         final InputStream arrayDef = cl.getResourceAsStream("/hexmap/cta_array_definition.json");
         reader = new InputStreamReader(arrayDef);
         this.telescopes = gson.fromJson(reader, ARRAY_DEF);
+
+        // resolve everything once per telescope id. The flat camera arrays are shared
+        // between all telescopes using the same camera.
+        Map<String, TelescopeGeometry.CameraArrays> cameraArrays = new HashMap<>();
+        this.camerasById = new CameraGeometry[telescopes.size() + 1];
+        this.geometriesById = new TelescopeGeometry[telescopes.size() + 1];
+        for (int id = 1; id <= telescopes.size(); id++) {
+            TelescopeDefinition telescope = telescopes.get(id - 1);
+            CameraGeometry camera = cameras.get(telescope.cameraName);
+            TelescopeGeometry.CameraArrays arrays = cameraArrays.computeIfAbsent(
+                    telescope.cameraName, name -> new TelescopeGeometry.CameraArrays(camera));
+
+            camerasById[id] = camera;
+            geometriesById[id] = new TelescopeGeometry(id, telescope, arrays);
+        }
+        log.debug("Built geometry table for {} telescopes and {} cameras",
+                telescopes.size(), cameraArrays.size());
+    }
+
+    /**
+     * @return the number of telescopes defined in the array. Valid ids go from 1 to this number.
+     */
+    public int numberOfTelescopes() {
+        return telescopes.size();
+    }
+
+    /**
+     * Get the flattened camera and telescope geometry for the given id. This is a plain array
+     * access and should be preferred in code which runs for every telescope image.
+     *
+     * @param telescopeId the id of the telescope to get
+     * @return the geometry of the telescope and its camera
+     */
+    public TelescopeGeometry geometryFromId(int telescopeId) {
+        return geometriesById[telescopeId];
     }
 
     /**
@@ -81,12 +127,14 @@ public class CameraMapping {
      *
      * @param telescopeId the id of the telescope to get
      * @return the camera geometry for the telescope
+     * @throws IllegalArgumentException if there is no telescope with the given id
      */
     public CameraGeometry cameraFromId(int telescopeId) {
-        //Watch out for the index here. Telescope ids start at 1.
-        //The mapping from telescope index to array index hence needs a -1
-        String name = telescopes.get(telescopeId - 1).cameraName;
-        return cameras.get(name);
+        //Telescope ids start at 1 which is also the index into this array.
+        if (telescopeId < 1 || telescopeId >= camerasById.length) {
+            throw new IllegalArgumentException("No telescope with id " + telescopeId + " in the array definition");
+        }
+        return camerasById[telescopeId];
     }
 
     /**
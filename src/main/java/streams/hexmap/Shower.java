@@ -1,15 +1,15 @@
 package streams.hexmap;
 
-import com.google.common.collect.Sets;
-
 import java.io.Serializable;
-import java.util.HashSet;
 
 /**
  * This class holds information about the shower. The set of selected signal pixels from the
- * telescopes image. The pixel class holds all required information to perform simple geometric
- * algorithms on the signal. Like the Hillas parameters for example. Each signal pixel also holds
- * the Ids of its neighbouring pixels. This is useful for dilating the shower.
+ * telescopes image. The pixels are stored as a struct of arrays. The ids and weights of the
+ * selected pixels are kept in two primitive arrays which are filled from the front. Membership of a
+ * pixel is tracked in a bitset with one bit per camera pixel. The positions and neighbours of the
+ * pixels are not copied. They are read from the {@link TelescopeGeometry} shared by all showers of
+ * the same camera. This makes it possible to clean an image and calculate things like the Hillas
+ * parameters without creating an object for each pixel.
  *
  * Created by kaibrugge on 13.02.17.
  */
@@ -17,77 +17,92 @@ public class Shower implements Serializable {
 
     private static final CameraMapping mapping = CameraMapping.getInstance();
 
-    public final HashSet<SignalPixel> signalPixels = new HashSet<>();
-
     public final int cameraId;
 
+    /**
+     * Ids of the selected signal pixels. Only the first {@link #size()} entries are valid.
+     */
+    public final int[] pixelIds;
+
+    /**
+     * Weights of the selected signal pixels in the same order as {@link #pixelIds}.
+     * Only the first {@link #size()} entries are valid.
+     */
+    public final double[] weights;
+
+    //the geometry is not serialized. It is looked up by the camera id after deserialization.
+    private transient TelescopeGeometry geometry;
+
+    //one bit for each pixel in the camera. A set bit marks a selected pixel.
+    private final long[] selected;
+
+    private int size = 0;
+
     /**
      * Each camera (in one event) can have exactly one shower object.
      * @param cameraId the id of the camera which recorded the image.
      */
     public Shower(int cameraId) {
         this.cameraId = cameraId;
+
+        this.geometry = mapping.geometryFromId(cameraId);
+        int numberOfPixel = geometry.numberOfPixel;
+
+        this.pixelIds = new int[numberOfPixel];
+        this.weights = new double[numberOfPixel];
+        this.selected = new long[(numberOfPixel + 63) >>> 6];
     }
 
     /**
-     * A Shower holds a number of SignalPixels objects defined in this class.
-     * Each SignalPixel knows its neighbouring pixel for fast dilation operations.
+     * The geometry of the camera which recorded this shower. Positions and neighbours of the
+     * selected pixels are read from here.
+     *
+     * @return the geometry shared by all showers of the same camera
      */
-    public static class SignalPixel implements Serializable{
-        final int cameraId;
-        final int pixelId;
-        final public double weight;
-        final public double xPositionInMM;
-        final public double yPositionInMM;
-        final int[] neighbours;
-
-
-        private SignalPixel(int cameraId, int pixelId, double xPositionInM,
-                    double yPositionInM, double weight, int[] neighbours) {
-            this.cameraId = cameraId;
-            this.pixelId = pixelId;
-            this.xPositionInMM = xPositionInM;
-            this.yPositionInMM = yPositionInM;
-            this.weight = weight;
-            this.neighbours = neighbours;
-        }
-
-        /**
-         * This methid creates a SignalPixel from the ids and the weight of that pixel.
-         *
-         * @param cameraId the id of the camera/telescope in which this pixel is located
-         * @param pixelId the id of the pixel
-         * @param weight the weight of the pixel. (like estimated number of photons or similar)
-         * @return an instance of a SignalPixel with the given valuess.
-         */
-        static SignalPixel create(int cameraId, int pixelId, double weight){
-            double x = mapping.cameraFromId(cameraId).pixelXPositions[pixelId];
-            double y = mapping.cameraFromId(cameraId).pixelYPositions[pixelId];
-
-            int[] neighbours = mapping.cameraFromId(cameraId).neighbours[pixelId];
-            return new SignalPixel(cameraId, pixelId, x, y, weight, neighbours);
+    public TelescopeGeometry geometry() {
+        if (geometry == null) {
+            geometry = mapping.geometryFromId(cameraId);
         }
+        return geometry;
+    }
 
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
-
-            SignalPixel pixel = (SignalPixel) o;
+    /**
+     * @return the number of selected signal pixels
+     */
+    public int size() {
+        return size;
+    }
 
-            return cameraId == pixel.cameraId && pixelId == pixel.pixelId;
-        }
+    public boolean isEmpty() {
+        return size == 0;
+    }
 
-        @Override
-        public int hashCode() {
-            int result = cameraId;
-            result = 31 * result + pixelId;
-            return result;
-        }
+    /**
+     * Check whether the pixel with the given id has been selected as a signal pixel.
+     *
+     * @param pixelId the id of the pixel
+     * @return true iff the pixel is part of this shower
+     */
+    public boolean contains(int pixelId) {
+        return (selected[pixelId >>> 6] & (1L << pixelId)) != 0;
     }
 
+    /**
+     * Add a pixel to the shower. Pixels which are already part of the shower are ignored.
+     *
+     * @param pixelId the id of the pixel
+     * @param weight the weight of the pixel. (like estimated number of photons or similar)
+     */
     public void addPixel(int pixelId, double weight) {
-        signalPixels.add(SignalPixel.create(cameraId, pixelId, weight));
+        long mask = 1L << pixelId;
+        int word = pixelId >>> 6;
+        if ((selected[word] & mask) != 0) {
+            return;
+        }
+        selected[word] |= mask;
+        pixelIds[size] = pixelId;
+        weights[size] = weight;
+        size++;
     }
 
     /**
@@ -99,17 +114,21 @@ public class Shower implements Serializable {
      * @param threshold the threshold to select pixel which are added to the shower
      */
     public void dilate(double[] image, double threshold) {
-        HashSet<SignalPixel> ids = Sets.newHashSet();
-
-        for (SignalPixel pix : signalPixels) {
-            for (int n : pix.neighbours) {
-                if (image[n] > threshold) {
-                    ids.add(SignalPixel.create(cameraId, n, image[n]));
+        // only the pixels selected before this call are dilated. Pixels appended
+        // in the loop below are beyond n and will be considered in the next call.
+        final int n = size;
+        final TelescopeGeometry geometry = geometry();
+        final int[] offsets = geometry.neighbourOffsets;
+        final int[] neighbours = geometry.neighbourIds;
+        for (int i = 0; i < n; i++) {
+            int pixelId = pixelIds[i];
+            for (int k = offsets[pixelId]; k < offsets[pixelId + 1]; k++) {
+                int neighbour = neighbours[k];
+                if (image[neighbour] > threshold) {
+                    addPixel(neighbour, image[neighbour]);
                 }
             }
         }
-
-        signalPixels.addAll(ids);
     }
 
 }
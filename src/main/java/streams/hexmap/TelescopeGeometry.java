@@ -0,0 +1,85 @@
+package streams.hexmap;
+
+import java.io.Serializable;
+
+/**
+ * An immutable entry of the id-indexed telescope table held by the {@link CameraMapping}. It
+ * combines the geometry of the camera with the definition of the telescope it is mounted in, so
+ * everything needed for cleaning, the Hillas parameters and the stereo reconstruction can be read
+ * with a single lookup by telescope id.
+ *
+ * Pixel positions and neighbours are stored in flat arrays. The neighbours of pixel i are
+ *
+ *     neighbourIds[neighbourOffsets[i]] ... neighbourIds[neighbourOffsets[i + 1] - 1]
+ *
+ * which is the usual compressed sparse row (CSR) layout. All telescopes with the same camera type
+ * share the same arrays. None of the arrays must be modified.
+ */
+public final class TelescopeGeometry implements Serializable {
+
+    public final int telescopeId;
+    public final String cameraName;
+    public final CameraGeometry.TelescopeType telescopeType;
+
+    public final int numberOfPixel;
+    public final double[] pixelXPositions;
+    public final double[] pixelYPositions;
+
+    /**
+     * Start index of the neighbours of each pixel in {@link #neighbourIds}. This has
+     * numberOfPixel + 1 entries. The last one marks the end of the neighbours of the last pixel.
+     */
+    public final int[] neighbourOffsets;
+    public final int[] neighbourIds;
+
+    public final double opticalFocalLength;
+    public final double positionX, positionY, positionZ;
+
+    TelescopeGeometry(int telescopeId, TelescopeDefinition telescope, CameraArrays camera) {
+        this.telescopeId = telescopeId;
+        this.cameraName = telescope.cameraName;
+        this.telescopeType = telescope.telescopeType;
+
+        this.numberOfPixel = camera.pixelXPositions.length;
+        this.pixelXPositions = camera.pixelXPositions;
+        this.pixelYPositions = camera.pixelYPositions;
+        this.neighbourOffsets = camera.neighbourOffsets;
+        this.neighbourIds = camera.neighbourIds;
+
+        this.opticalFocalLength = telescope.opticalFocalLength;
+        this.positionX = telescope.telescopePositionX;
+        this.positionY = telescope.telescopePositionY;
+        this.positionZ = telescope.telescopePositionZ;
+    }
+
+    /**
+     * The flattened arrays of one camera type. These are built once per camera and shared by all
+     * telescope entries using that camera.
+     */
+    static final class CameraArrays implements Serializable {
+        final double[] pixelXPositions;
+        final double[] pixelYPositions;
+        final int[] neighbourOffsets;
+        final int[] neighbourIds;
+
+        CameraArrays(CameraGeometry geometry) {
+            int n = geometry.pixelXPositions.length;
+            this.pixelXPositions = geometry.pixelXPositions.clone();
+            this.pixelYPositions = geometry.pixelYPositions.clone();
+
+            this.neighbourOffsets = new int[n + 1];
+            int total = 0;
+            for (int pixel = 0; pixel < n; pixel++) {
+                neighbourOffsets[pixel] = total;
+                total += geometry.neighbours[pixel].length;
+            }
+            neighbourOffsets[n] = total;
+
+            this.neighbourIds = new int[total];
+            for (int pixel = 0; pixel < n; pixel++) {
+                int[] neighbours = geometry.neighbours[pixel];
+                System.arraycopy(neighbours, 0, neighbourIds, neighbourOffsets[pixel], neighbours.length);
+            }
+        }
+    }
+}
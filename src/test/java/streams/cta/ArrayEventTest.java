@@ -0,0 +1,104 @@
+package streams.cta;
+
+import org.junit.Test;
+import stream.Data;
+import stream.Keys;
+import stream.flow.ForEach;
+import streams.cta.cleaning.TailCut;
+import streams.cta.features.Hillas;
+import streams.cta.io.ImageEvents;
+import streams.cta.stereo.Stereo;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The typed array event has to give the same results as splitting the event by telescope.
+ */
+public class ArrayEventTest {
+
+    private static final String FEATURES = "telescope:*:shower:*,telescope:*:raw:photons,stereo:*";
+
+    private Data splitByTelescope(Data item) {
+        SplitByTelescope split = new SplitByTelescope();
+        ForEach forEach = new ForEach();
+        forEach.setKey("@telescopes");
+        forEach.add(new TailCut());
+        forEach.add(new Hillas());
+        MergeByTelescope merge = new MergeByTelescope();
+        return new Stereo().process(merge.process(forEach.process(split.process(item))));
+    }
+
+    private Data typed(Data item) {
+        Data data = new CreateArrayEvent().process(item);
+        data = new TailCut().process(data);
+        data = new Hillas().process(data);
+        data = new Stereo().process(data);
+        return new ArrayEventKeys().process(data);
+    }
+
+    @Test
+    public void testSameFeatures() throws Exception {
+        List<Data> legacyItems = ImageEvents.read();
+        List<Data> typedItems = ImageEvents.read();
+
+        for (int i = 0; i < legacyItems.size(); i++) {
+            Data legacy = splitByTelescope(legacyItems.get(i));
+            Data typed = typed(typedItems.get(i));
+
+            Set<String> legacyKeys = new Keys(FEATURES).select(legacy);
+            Set<String> typedKeys = new Keys(FEATURES).select(typed);
+            assertTrue(legacyKeys.size() > 20);
+            assertEquals(legacyKeys, typedKeys);
+
+            for (String key : legacyKeys) {
+                Serializable expected = legacy.get(key);
+                Serializable actual = typed.get(key);
+                if (expected instanceof double[]) {
+                    assertArrayEquals(key, (double[]) expected, (double[]) actual, 0);
+                } else if (expected instanceof Double) {
+                    assertEquals(key, (Double) expected, (Double) actual, 0);
+                } else {
+                    assertEquals(key, expected, actual);
+                }
+            }
+            assertEquals(legacy.get("event_id"), typed.get("event_id"));
+        }
+    }
+
+    @Test
+    public void testRemoveAndPut() throws Exception {
+        Data typed = typed(ImageEvents.read().get(0));
+        int id = ((int[]) typed.get("array:triggered_telescopes"))[0];
+        String width = "telescope:" + id + ":shower:width";
+        String photons = "telescope:" + id + ":raw:photons";
+
+        int size = typed.size();
+        assertTrue(typed.containsKey(width));
+        typed.remove(width);
+        assertFalse(typed.containsKey(width));
+        assertNull(typed.get(width));
+        assertEquals(size - 1, typed.size());
+        assertFalse(typed.keySet().contains(width));
+
+        //the typed event itself is not changed.
+        assertFalse(Double.isNaN(ArrayEvent.get(typed).telescope(id).width));
+
+        typed.put(width, 1.0);
+        assertEquals(1.0, typed.get(width));
+        assertEquals(size, typed.size());
+
+        typed.keySet().removeAll(new Keys(photons).select(typed));
+        assertFalse(typed.containsKey(photons));
+
+        typed.put("new_key", "value");
+        assertEquals("value", typed.get("new_key"));
+    }
+}
@@ -7,12 +7,19 @@ import stream.io.CsvStream;
 import stream.io.SourceURL;
 
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Created by mackaiver on 13/07/17.
@@ -88,4 +95,140 @@ public class CollectByEventTest {
         }
 
     }
+
+    private List<Data> readRows() throws Exception {
+        URL url = CollectByEventTest.class.getResource("/single_telescope_events.csv");
+        CsvStream stream = new CsvStream(new SourceURL(url));
+        stream.init();
+
+        List<Data> rows = new ArrayList<>();
+        Data data = stream.readNext();
+        while (data != null) {
+            rows.add(data);
+            data = stream.readNext();
+        }
+        return rows;
+    }
+
+    /**
+     * Shuffle the rows within windows of the given size, so the rows of neighbouring events interleave.
+     */
+    private void interleave(List<Data> rows, int window) {
+        Random random = new Random(0);
+        for (int start = 0; start < rows.size(); start += window) {
+            Collections.shuffle(rows.subList(start, Math.min(start + window, rows.size())), random);
+        }
+    }
+
+    /**
+     * @return the number of blocks of rows with the same id
+     */
+    private int numberOfEvents(List<Data> rows) {
+        int events = 0;
+        Object previousId = null;
+        for (Data row : rows) {
+            if (!row.get("unique_event_id").equals(previousId)) {
+                events++;
+                previousId = row.get("unique_event_id");
+            }
+        }
+        return events;
+    }
+
+    /**
+     * Some ids in the test file are used by two events. Remove those, so the ids are unique.
+     */
+    private List<Data> readUniqueRows() throws Exception {
+        List<Data> rows = readRows();
+        Map<Object, Integer> counts = new HashMap<>();
+        for (Data row : rows) {
+            counts.merge(row.get("unique_event_id"), 1, Integer::sum);
+        }
+        List<Data> unique = new ArrayList<>();
+        for (Data row : rows) {
+            if (counts.get(row.get("unique_event_id")).equals(row.get("array:num_triggered_telescopes"))) {
+                unique.add(row);
+            }
+        }
+        return unique;
+    }
+
+    private List<Data> collectAll(CollectByEvent p, List<Data> rows) throws Exception {
+        List<Data> events = new ArrayList<>();
+        p.add(item -> {
+            events.add(item);
+            return item;
+        });
+        for (Data row : rows) {
+            p.process(row);
+        }
+        p.finish();
+        return events;
+    }
+
+    @Test
+    public void testLastEventAtFinish() throws Exception {
+        List<Data> rows = readRows();
+        List<Data> events = collectAll(new CollectByEvent(), rows);
+
+        assertThat(events.size(), is(numberOfEvents(rows)));
+        Data last = events.get(events.size() - 1);
+        assertThat(last.get("unique_event_id"), is(rows.get(rows.size() - 1).get("unique_event_id")));
+    }
+
+    @Test
+    public void testKeyedInterleavedRows() throws Exception {
+        List<Data> rows = readUniqueRows();
+        int numberOfEvents = numberOfEvents(rows);
+        interleave(rows, 40);
+
+        CollectByEvent p = new CollectByEvent();
+        p.setKeyed(true);
+        List<Data> events = collectAll(p, rows);
+
+        assertThat(events.size(), is(numberOfEvents));
+        assertThat(p.getCompleteEvents() + p.getFlushedEvents(), is((long) events.size()));
+        assertThat(p.getEvictedEvents(), is(0L));
+        for (Data event : events) {
+            int numTelescopes = (int) event.get("array:num_triggered_telescopes");
+            assertThat(Keys.select(event, "telescope:*:id").size(), is(numTelescopes));
+        }
+    }
+
+    @Test
+    public void testKeyedMaxInFlight() throws Exception {
+        List<Data> rows = readUniqueRows();
+        interleave(rows, 40);
+
+        CollectByEvent p = new CollectByEvent();
+        p.setKeyed(true);
+        p.setMaxInFlight(2);
+        List<Data> events = collectAll(p, rows);
+
+        assertTrue(p.getEvictedEvents() > 0);
+        int telescopes = 0;
+        for (Data event : events) {
+            telescopes += ((int[]) event.get("array:triggered_telescopes")).length;
+        }
+        assertThat(telescopes, is(rows.size()));
+    }
+
+    @Test
+    public void testKeyedWatermarkDropsIncomplete() throws Exception {
+        List<Data> rows = readUniqueRows();
+        interleave(rows, 200);
+
+        CollectByEvent p = new CollectByEvent();
+        p.setKeyed(true);
+        p.setWatermark(10);
+        p.setEmitIncomplete(false);
+        List<Data> events = collectAll(p, rows);
+
+        assertTrue(p.getExpiredEvents() > 0);
+        assertThat((long) events.size(), is(p.getCompleteEvents()));
+        for (Data event : events) {
+            int numTelescopes = (int) event.get("array:num_triggered_telescopes");
+            assertThat(((int[]) event.get("array:triggered_telescopes")).length, is(numTelescopes));
+        }
+    }
 }
@@ -5,6 +5,7 @@ import stream.Data;
 import stream.Keys;
 import stream.Processor;
 import stream.io.CsvStream;
+import stream.data.DataFactory;
 import stream.io.SourceURL;
 import streams.cta.io.ImageStream;
 
@@ -45,5 +46,38 @@ public class SplitEventsTest {
 
     }
 
+    @Test
+    public void testViewsWriteThrough() throws Exception {
+        URL url = SplitByTelescope.class.getResource("/images.json.gz");
+
+        ImageStream stream = new ImageStream(new SourceURL(url));
+        stream.init();
+        Data data = stream.read();
+        stream.close();
+        Data copy = DataFactory.create(data);
 
+        SplitByTelescope viewSplitter = new SplitByTelescope();
+        Data[] views = (Data[]) viewSplitter.process(data).get("@telescopes");
+
+        SplitByTelescope copySplitter = new SplitByTelescope();
+        copySplitter.setCopy(true);
+        Data[] copies = (Data[]) copySplitter.process(copy).get("@telescopes");
+
+        for (int i = 0; i < views.length; i++) {
+            assertThat(views[i].keySet(), is(copies[i].keySet()));
+            for (String key : copies[i].keySet()) {
+                assertThat(views[i].get(key), is(copies[i].get(key)));
+            }
+        }
+
+        int id = (int) views[0].get("telescope:id");
+        views[0].put("shower:width", 1.5);
+        assertThat(data.get("telescope:" + id + ":shower:width"), is(1.5));
+        views[0].remove("raw:photons");
+        assertThat(data.containsKey("telescope:" + id + ":raw:photons"), is(false));
+
+        Data merged = new MergeByTelescope().process(data);
+        assertThat(merged.containsKey("@telescopes"), is(false));
+        assertThat(merged.get("telescope:" + id + ":shower:width"), is(1.5));
+    }
 }
@@ -9,6 +9,9 @@ import streams.cta.SplitByTelescope;
 import streams.cta.io.ImageStream;
 import streams.hexmap.Shower;
 
+import java.util.HashSet;
+import java.util.Set;
+
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -68,7 +71,7 @@ public class CleaningTest {
 
             Shower shower = (Shower) tel.get("shower");
 
-            assertFalse("shower pixels should not be empty", shower.signalPixels.isEmpty());
+            assertFalse("shower pixels should not be empty", shower.isEmpty());
 
             int id = (int) tel.get("telescope:id");
             assertTrue("camera id saved in shower has to match the true id", shower.cameraId == id);
@@ -76,4 +79,22 @@ public class CleaningTest {
 
         stream.close();
     }
+
+    @Test
+    public void testSelectedPixelsAreUnique() throws Exception {
+        Data data = stream.read();
+        Data splitData = split.process(data);
+
+        for (Data tel : (Data[]) splitData.get(splitKey)) {
+            tailCut.process(tel);
+            Shower shower = (Shower) tel.get("shower");
+
+            Set<Integer> ids = new HashSet<>();
+            for (int i = 0; i < shower.size(); i++) {
+                int pixelId = shower.pixelIds[i];
+                assertTrue("pixel was selected more than once", ids.add(pixelId));
+                assertTrue("selected pixel has to be marked as member", shower.contains(pixelId));
+            }
+        }
+    }
 }
@@ -4,13 +4,27 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import stream.Data;
+import stream.data.DataFactory;
 import stream.flow.ForEach;
 import stream.io.SourceURL;
 import streams.cta.MergeByTelescope;
 import streams.cta.SplitByTelescope;
 import streams.cta.cleaning.TailCut;
 import streams.cta.io.ImageStream;
-
+import streams.hexmap.Shower;
+import streams.hexmap.TelescopeGeometry;
+
+import static java.lang.Math.IEEEremainder;
+import static java.lang.Math.PI;
+import static java.lang.Math.abs;
+import static java.lang.Math.atan2;
+import static java.lang.Math.cos;
+import static java.lang.Math.hypot;
+import static java.lang.Math.max;
+import static java.lang.Math.signum;
+import static java.lang.Math.sin;
+import static java.lang.Math.sqrt;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static streams.cta.io.Names.TRIGGERED_TELESCOPE_IDS;
 
@@ -95,4 +109,89 @@ public class HillasTest {
 
         stream.close();
     }
+
+    /**
+     * The fused Hillas processor has to give the same results as the chain of single processors.
+     */
+    @Test
+    public void testFusedHillasMatchesChain() throws Exception {
+        TailCut tailCut = new TailCut();
+        Size size = new Size();
+        COG cog = new COG();
+        WidthLengthDelta widthLengthDelta = new WidthLengthDelta();
+        Hillas hillas = new Hillas();
+
+        Data data = stream.read();
+        while (data != null) {
+            for (Data tel : (Data[]) split.process(data).get(splitKey)) {
+                tailCut.process(tel);
+                if (((Shower) tel.get("shower")).isEmpty()) {
+                    continue;
+                }
+                Data chain = DataFactory.create(tel);
+                widthLengthDelta.process(cog.process(size.process(chain)));
+                Data fused = hillas.process(DataFactory.create(tel));
+
+                //delta describes an axis. so -pi/2 and pi/2 are the same thing
+                double deltaDifference = (double) chain.get("shower:delta") - (double) fused.get("shower:delta");
+                assertEquals(0, IEEEremainder(deltaDifference, PI), 1e-9);
+
+                for (String key : new String[]{"shower:total_photons", "shower:cog:x", "shower:cog:y",
+                        "shower:width", "shower:length"}) {
+                    double expected = (double) chain.get(key);
+                    double actual = (double) fused.get(key);
+                    if (Double.isNaN(expected)) {
+                        continue;
+                    }
+                    assertEquals(key, expected, actual, 1e-9 * max(1, abs(expected)));
+                }
+            }
+            data = stream.read();
+        }
+    }
+
+    /**
+     * A shower of two pixels with weights 1 and 3. All pixels lie on the main axis. Along the axis
+     * the weights follow a two point distribution with p = 3/4 and q = 1/4 at distance d.
+     * So length = d * sqrt(pq), skewness = (q - p) / sqrt(pq) = -2 / sqrt(3) in the direction from the
+     * first to the second pixel and kurtosis = (1 - 3pq) / pq = 7 / 3.
+     */
+    @Test
+    public void testTwoPixelShower() throws Exception {
+        Shower shower = new Shower(1);
+        TelescopeGeometry geometry = shower.geometry();
+        int first = 0;
+        int second = geometry.numberOfPixel / 3;
+        shower.addPixel(first, 1);
+        shower.addPixel(second, 3);
+
+        double x1 = geometry.pixelXPositions[first];
+        double y1 = geometry.pixelYPositions[first];
+        double x2 = geometry.pixelXPositions[second];
+        double y2 = geometry.pixelYPositions[second];
+        double d = hypot(x2 - x1, y2 - y1);
+
+        double cogX = (x1 + 3 * x2) / 4;
+        double cogY = (y1 + 3 * y2) / 4;
+
+        Data data = new Hillas().process(DataFactory.create(), shower);
+
+        double delta = (double) data.get("shower:delta");
+        assertEquals(0, IEEEremainder(delta - atan2(y2 - y1, x2 - x1), PI), 1e-9);
+
+        //the sign of the skewness depends on which way along the axis delta points.
+        double direction = signum(cos(delta) * (x2 - x1) + sin(delta) * (y2 - y1));
+
+        assertEquals(4, (double) data.get("shower:size"), 1e-12);
+        assertEquals(cogX, (double) data.get("shower:cog:x"), 1e-9);
+        assertEquals(cogY, (double) data.get("shower:cog:y"), 1e-9);
+        assertEquals(d * sqrt(3) / 4, (double) data.get("shower:length"), 1e-9);
+        assertEquals(0, (double) data.get("shower:width"), 1e-6);
+        assertEquals(-2 / sqrt(3) * direction, (double) data.get("shower:skewness"), 1e-9);
+        assertEquals(7.0 / 3, (double) data.get("shower:kurtosis"), 1e-9);
+        assertEquals(atan2(cogY, cogX), (double) data.get("shower:phi"), 1e-9);
+        assertEquals(hypot(cogX, cogY), (double) data.get("shower:r"), 1e-9);
+        //distance of the line through both pixels to the camera center
+        assertEquals(abs(x1 * y2 - x2 * y1) / d, (double) data.get("shower:miss"), 1e-9);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,149 @@
+package streams.cta.io;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import stream.Data;
+import stream.data.DataFactory;
+import stream.io.SourceURL;
+
+import java.io.Serializable;
+import java.util.Map;
+
+/**
+ * Compare the CompactData with the HashMap based items of the DataFactory. Filling an item with all
+ * keys of an event, reading the images of all telescopes with keys formatted for each access or
+ * taken from the key tables, and copying an item are measured.
+ *
+ * The main method runs the benchmarks with the GC profiler. Its gc.alloc.rate.norm column shows the
+ * bytes allocated per operation.
+ */
+@State(Scope.Benchmark)
+public class BenchmarkCompactData {
+
+    private String[] keys;
+    private int[] slots;
+    private Serializable[] values;
+    private int[] telescopeIds;
+
+    private Data hashMapItem;
+    private CompactData compactItem;
+
+    @Setup(Level.Trial)
+    public void setupBenchmark() throws Exception {
+        ImageStream stream = new ImageStream(new SourceURL(ImageStream.class.getResource("/images.json.gz")));
+        stream.init();
+        Data item = stream.read();
+        //use an event with many telescopes
+        for (Data next = stream.read(); next != null; next = stream.read()) {
+            if (next.size() > item.size()) {
+                item = next;
+            }
+        }
+        stream.close();
+
+        keys = new String[item.size()];
+        slots = new int[item.size()];
+        values = new Serializable[item.size()];
+        int i = 0;
+        for (Map.Entry<String, Serializable> entry : item.entrySet()) {
+            keys[i] = entry.getKey();
+            slots[i] = KeyRegistry.slot(entry.getKey());
+            values[i] = entry.getValue();
+            i++;
+        }
+        telescopeIds = (int[]) item.get(Names.TRIGGERED_TELESCOPE_IDS);
+
+        hashMapItem = DataFactory.create(item);
+        compactItem = new CompactData(item);
+    }
+
+    @Benchmark
+    public Data benchmarkFillHashMap() {
+        Data item = DataFactory.create();
+        for (int i = 0; i < keys.length; i++) {
+            item.put(keys[i], values[i]);
+        }
+        return item;
+    }
+
+    @Benchmark
+    public Data benchmarkFillCompactData() {
+        CompactData item = new CompactData(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            item.put(keys[i], values[i]);
+        }
+        return item;
+    }
+
+    @Benchmark
+    public Data benchmarkFillCompactDataBySlot() {
+        CompactData item = new CompactData(keys.length);
+        for (int i = 0; i < slots.length; i++) {
+            item.put(slots[i], values[i]);
+        }
+        return item;
+    }
+
+    @Benchmark
+    public void benchmarkFormattedKeysHashMap(Blackhole blackhole) {
+        for (int id : telescopeIds) {
+            blackhole.consume(hashMapItem.get("telescope:" + id + ":raw:photons"));
+        }
+    }
+
+    @Benchmark
+    public void benchmarkFormattedKeysCompactData(Blackhole blackhole) {
+        for (int id : telescopeIds) {
+            blackhole.consume(compactItem.get("telescope:" + id + ":raw:photons"));
+        }
+    }
+
+    @Benchmark
+    public void benchmarkKeyTableHashMap(Blackhole blackhole) {
+        for (int id : telescopeIds) {
+            blackhole.consume(hashMapItem.get(Names.RAW_PHOTONS.key(id)));
+        }
+    }
+
+    @Benchmark
+    public void benchmarkKeyTableCompactData(Blackhole blackhole) {
+        for (int id : telescopeIds) {
+            blackhole.consume(compactItem.get(Names.RAW_PHOTONS.key(id)));
+        }
+    }
+
+    @Benchmark
+    public void benchmarkSlotTableCompactData(Blackhole blackhole) {
+        for (int id : telescopeIds) {
+            blackhole.consume(compactItem.get(Names.RAW_PHOTONS.slot(id)));
+        }
+    }
+
+    @Benchmark
+    public Data benchmarkCopyHashMap() {
+        return hashMapItem.createCopy();
+    }
+
+    @Benchmark
+    public Data benchmarkCopyCompactData() {
+        return compactItem.createCopy();
+    }
+
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(BenchmarkCompactData.class.getSimpleName())
+                .warmupIterations(4)
+                .measurementIterations(8)
+                .addProfiler(GCProfiler.class)
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,77 @@
+package streams.cta.io;
+
+import stream.Data;
+import stream.data.DataFactory;
+import stream.io.SourceURL;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Load test for the tcp transport. Publishes the test images over loopback to several subscribers
+ * and prints the messages and bytes per second.
+ *
+ *     BenchmarkEventTransport [items] [subscribers] [codec class]
+ */
+public class BenchmarkEventTransport {
+
+    public static void main(String[] args) throws Exception {
+        int items = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int numberOfSubscribers = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        String codec = args.length > 2 ? args[2] : PooledKryoCodec.class.getName();
+
+        List<Data> images = new ArrayList<>();
+        ImageStream stream = new ImageStream(new SourceURL(ImageStream.class.getResource("/images.json.gz")));
+        stream.init();
+        Data data = stream.read();
+        while (data != null) {
+            images.add(data);
+            data = stream.read();
+        }
+        stream.close();
+
+        CTAEventPublisher publisher = new CTAEventPublisher();
+        publisher.setAddresses("tcp://127.0.0.1:0");
+        publisher.setSubscribers(numberOfSubscribers);
+        publisher.setItemCodec(EventTransport.createCodec(codec));
+        publisher.setReportInterval(1000);
+        publisher.init(null);
+        int port = publisher.getLocalAddresses().get(0).getPort();
+
+        ExecutorService executor = Executors.newFixedThreadPool(numberOfSubscribers);
+        List<Future<Long>> received = new ArrayList<>();
+        for (int i = 0; i < numberOfSubscribers; i++) {
+            received.add(executor.submit(() -> {
+                CTAEventSubscriber subscriber = new CTAEventSubscriber();
+                subscriber.setAddresses("tcp://127.0.0.1:" + port);
+                subscriber.setItemCodec(EventTransport.createCodec(codec));
+                subscriber.init();
+                while (subscriber.read() != null) {
+                    //only count the items
+                }
+                subscriber.close();
+                return subscriber.getReceivedItems();
+            }));
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < items; i++) {
+            publisher.process(DataFactory.create(images.get(i % images.size())));
+        }
+        publisher.finish();
+
+        long total = 0;
+        for (Future<Long> future : received) {
+            total += future.get();
+        }
+        executor.shutdown();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.println(String.format("%d items to %d subscribers in %.2f s: %.1f messages/s, %.2f MB/s",
+                total, numberOfSubscribers, seconds, total / seconds,
+                publisher.getPublishedBytes() / seconds / 1e6));
+    }
+}
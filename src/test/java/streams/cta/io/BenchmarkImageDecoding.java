@@ -0,0 +1,72 @@
+package streams.cta.io;
+
+import com.google.common.io.ByteStreams;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import stream.Data;
+import stream.io.SourceURL;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Compare the streaming json decoder of the ImageStream with the Gson reflection based reader.
+ * The test file is decompressed once before the benchmark so that only the decoding is measured.
+ */
+@State(Scope.Benchmark)
+public class BenchmarkImageDecoding {
+
+    private File json;
+
+    @Setup(Level.Trial)
+    public void setupBenchmark() throws Exception {
+        json = File.createTempFile("images", ".json");
+        json.deleteOnExit();
+        try (InputStream in = new GZIPInputStream(ImageStream.class.getResourceAsStream("/images.json.gz"));
+             FileOutputStream out = new FileOutputStream(json)) {
+            ByteStreams.copy(in, out);
+        }
+    }
+
+    private int readAll(boolean gson) throws Exception {
+        ImageStream stream = new ImageStream(new SourceURL(json.toURI().toURL()));
+        stream.setGson(gson);
+        stream.init();
+
+        int events = 0;
+        Data item = stream.read();
+        while (item != null) {
+            events++;
+            item = stream.read();
+        }
+        stream.close();
+        return events;
+    }
+
+    @Benchmark
+    public int benchmarkStreamingDecoder() throws Exception {
+        return readAll(false);
+    }
+
+    @Benchmark
+    public int benchmarkGsonReflection() throws Exception {
+        return readAll(true);
+    }
+
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(BenchmarkImageDecoding.class.getSimpleName())
+                .warmupIterations(4)
+                .measurementIterations(8)
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
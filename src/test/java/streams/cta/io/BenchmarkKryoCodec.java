@@ -0,0 +1,91 @@
+package streams.cta.io;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import stream.Data;
+import stream.io.SourceURL;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Compare the shared KryoCodec with the PooledKryoCodec when several threads encode and decode
+ * items at the same time. The KryoCodec is not thread-safe, so calls to it are synchronized like
+ * they would have to be in a process with several copies.
+ *
+ * The main method runs the benchmarks with 1, 2, 4, ... threads up to the number of processors.
+ */
+@State(Scope.Benchmark)
+public class BenchmarkKryoCodec {
+
+    private Data item;
+    private byte[] encoded;
+
+    private final KryoCodec sharedCodec = new KryoCodec();
+    private final PooledKryoCodec pooledCodec = new PooledKryoCodec();
+
+    @State(Scope.Thread)
+    public static class ThreadBuffer {
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+    }
+
+    @Setup(Level.Trial)
+    public void setupBenchmark() throws Exception {
+        ImageStream stream = new ImageStream(new SourceURL(ImageStream.class.getResource("/images.json.gz")));
+        stream.init();
+        item = stream.read();
+        stream.close();
+        encoded = sharedCodec.encode(item);
+    }
+
+    @Benchmark
+    public Data benchmarkSharedCodec() throws Exception {
+        synchronized (sharedCodec) {
+            return sharedCodec.decode(sharedCodec.encode(item));
+        }
+    }
+
+    @Benchmark
+    public Data benchmarkPooledCodec() throws Exception {
+        return pooledCodec.decode(pooledCodec.encode(item));
+    }
+
+    @Benchmark
+    public Data benchmarkPooledCodecByteBuffer(ThreadBuffer state) throws Exception {
+        ByteBuffer buffer = state.buffer;
+        buffer.clear();
+        pooledCodec.encode(item, buffer);
+        buffer.flip();
+        return pooledCodec.decode(buffer);
+    }
+
+    @Benchmark
+    public Data benchmarkSharedDecode() throws Exception {
+        synchronized (sharedCodec) {
+            return sharedCodec.decode(encoded);
+        }
+    }
+
+    @Benchmark
+    public Data benchmarkPooledDecode() throws Exception {
+        return pooledCodec.decode(encoded);
+    }
+
+
+    public static void main(String[] args) throws RunnerException {
+        int processors = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= processors; threads *= 2) {
+            Options opt = new OptionsBuilder()
+                    .include(BenchmarkKryoCodec.class.getSimpleName())
+                    .warmupIterations(4)
+                    .measurementIterations(8)
+                    .threads(threads)
+                    .forks(1)
+                    .build();
+
+            new Runner(opt).run();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package streams.cta.io;
+
+import org.junit.Test;
+import stream.Data;
+import stream.io.SourceURL;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Write the test images into the binary container and check that reading them back gives the
+ * same data items as the ImageStream.
+ */
+public class BinaryEventStreamTest {
+
+    private static final String MC_FILE = "/proton_20deg_0deg_run3619___cta-prod3-merged_desert-2150m-Paranal-3HB8-NG.json.gz";
+
+    private File write(URL source, boolean singlePrecision) throws Exception {
+        File file = File.createTempFile("events", ".bin");
+        file.deleteOnExit();
+
+        BinaryEventWriter writer = new BinaryEventWriter();
+        writer.setUrl(new SourceURL(file.toURI().toURL()));
+        writer.setSinglePrecision(singlePrecision);
+        writer.init(null);
+
+        ImageStream stream = new ImageStream(new SourceURL(source));
+        stream.init();
+        Data data = stream.read();
+        while (data != null) {
+            writer.process(data);
+            data = stream.read();
+        }
+        stream.close();
+        writer.finish();
+        return file;
+    }
+
+    private void compare(URL source, boolean singlePrecision) throws Exception {
+        File file = write(source, singlePrecision);
+
+        ImageStream expectedStream = new ImageStream(new SourceURL(source));
+        BinaryEventStream actualStream = new BinaryEventStream(new SourceURL(file.toURI().toURL()));
+        expectedStream.init();
+        actualStream.init();
+
+        Data expected = expectedStream.read();
+        Data actual = actualStream.read();
+        while (expected != null) {
+            assertThat(actual.keySet(), is(expected.keySet()));
+            for (String key : expected.keySet()) {
+                Object e = expected.get(key);
+                Object a = actual.get(key);
+                if (e instanceof double[]) {
+                    double[] expectedImage = (double[]) e;
+                    double[] actualImage = (double[]) a;
+                    assertEquals(expectedImage.length, actualImage.length);
+                    for (int i = 0; i < expectedImage.length; i++) {
+                        double tolerance = singlePrecision ? 1e-6 * Math.max(1, Math.abs(expectedImage[i])) : 0;
+                        assertEquals(key, expectedImage[i], actualImage[i], tolerance);
+                    }
+                } else if (e instanceof int[]) {
+                    assertArrayEquals((int[]) e, (int[]) a);
+                } else {
+                    assertThat(key, a, is(e));
+                }
+            }
+            expected = expectedStream.read();
+            actual = actualStream.read();
+        }
+        assertThat(actual, is(nullValue()));
+
+        expectedStream.close();
+        actualStream.close();
+    }
+
+    @Test
+    public void testDoublePrecision() throws Exception {
+        compare(ImageStream.class.getResource("/images.json.gz"), false);
+    }
+
+    @Test
+    public void testSinglePrecision() throws Exception {
+        compare(ImageStream.class.getResource("/images.json.gz"), true);
+    }
+
+    @Test
+    public void testRunId() throws Exception {
+        compare(BinaryEventStreamTest.class.getResource(MC_FILE), false);
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnknownTelescope() throws Exception {
+        File file = write(ImageStream.class.getResource("/images.json.gz"), false);
+
+        //list every telescope of the header as telescope 1
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer count = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(count, 9);
+            ByteBuffer one = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(0, 1);
+            for (int i = 0; i < count.getInt(0); i++) {
+                one.rewind();
+                channel.write(one, 13 + 12L * i);
+            }
+        }
+
+        BinaryEventStream stream = new BinaryEventStream(new SourceURL(file.toURI().toURL()));
+        stream.init();
+        try {
+            while (stream.read() != null) {
+                //read until the first image of another telescope
+            }
+        } finally {
+            stream.close();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package streams.cta.io;
+
+import org.junit.Test;
+import stream.Data;
+import stream.Keys;
+import stream.io.SourceURL;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Write some values of the test images to csv and read the lines back.
+ */
+public class CSVWriterTest {
+
+    private List<String> writeAndRead(List<Data> items, String suffix) throws Exception {
+        File file = File.createTempFile("features", suffix);
+        file.deleteOnExit();
+
+        CSVWriter writer = new CSVWriter();
+        writer.setUrl(new SourceURL(file.toURI().toURL()));
+        writer.setKeys(new Keys("event_id,mc:*,array:num_triggered_telescopes"));
+        writer.init(null);
+        for (Data item : items) {
+            writer.process(item);
+        }
+        writer.finish();
+
+        InputStream in = new FileInputStream(file);
+        if (suffix.endsWith(".gz")) {
+            in = new GZIPInputStream(in);
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            return reader.lines().collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    public void testRows() throws Exception {
+        List<Data> items = ImageEvents.read();
+        List<String> lines = writeAndRead(items, ".csv");
+
+        assertThat(lines.size(), is(items.size() + 1));
+
+        String[] header = lines.get(0).split(",");
+        for (int i = 0; i < items.size(); i++) {
+            String[] values = lines.get(i + 1).split(",");
+            assertThat(values.length, is(header.length));
+            for (int column = 0; column < header.length; column++) {
+                assertThat(values[column], is(String.valueOf(items.get(i).get(header[column]))));
+            }
+        }
+    }
+
+    @Test
+    public void testGzip() throws Exception {
+        List<Data> items = ImageEvents.read();
+        assertThat(writeAndRead(items, ".csv.gz"), is(writeAndRead(items, ".csv")));
+    }
+}
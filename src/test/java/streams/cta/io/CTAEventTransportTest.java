@@ -0,0 +1,132 @@
+package streams.cta.io;
+
+import org.junit.Test;
+import stream.Data;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Publish the test images over loopback and read them with several subscribers.
+ */
+public class CTAEventTransportTest {
+
+    private CTAEventPublisher startPublisher(int subscribers) throws Exception {
+        CTAEventPublisher publisher = new CTAEventPublisher();
+        publisher.setAddresses("tcp://127.0.0.1:0");
+        publisher.setSubscribers(subscribers);
+        publisher.setMaxInFlight(4);
+        publisher.init(null);
+        return publisher;
+    }
+
+    private CTAEventSubscriber subscriber(CTAEventPublisher publisher) throws Exception {
+        CTAEventSubscriber subscriber = new CTAEventSubscriber();
+        subscriber.setAddresses("tcp://127.0.0.1:" + publisher.getLocalAddresses().get(0).getPort());
+        return subscriber;
+    }
+
+    private List<Data> readAll(CTAEventSubscriber subscriber) throws Exception {
+        List<Data> items = new ArrayList<>();
+        subscriber.init();
+        Data item = subscriber.read();
+        while (item != null) {
+            items.add(item);
+            item = subscriber.read();
+        }
+        subscriber.close();
+        return items;
+    }
+
+    @Test(timeout = 30000)
+    public void testSingleSubscriber() throws Exception {
+        List<Data> images = ImageEvents.read();
+        CTAEventPublisher publisher = startPublisher(1);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<List<Data>> received = executor.submit(() -> readAll(subscriber(publisher)));
+        for (Data image : images) {
+            publisher.process(image);
+        }
+        publisher.finish();
+
+        List<Data> items = received.get();
+        executor.shutdown();
+        assertThat(items.size(), is(images.size()));
+        for (int i = 0; i < images.size(); i++) {
+            assertThat(items.get(i).get("event_id"), is(images.get(i).get("event_id")));
+            int[] triggered = (int[]) images.get(i).get("array:triggered_telescopes");
+            String key = "telescope:" + triggered[0] + ":raw:photons";
+            assertArrayEquals((double[]) images.get(i).get(key), (double[]) items.get(i).get(key), 0);
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testSubscribersShareTheItems() throws Exception {
+        List<Data> images = ImageEvents.read();
+        CTAEventPublisher publisher = startPublisher(3);
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        List<Future<List<Data>>> received = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            CTAEventSubscriber subscriber = subscriber(publisher);
+            subscriber.setItemCodec(new PooledKryoCodec());
+            received.add(executor.submit(() -> readAll(subscriber)));
+        }
+        for (Data image : images) {
+            publisher.process(image);
+        }
+        publisher.finish();
+
+        Set<Long> eventIds = new HashSet<>();
+        int total = 0;
+        for (Future<List<Data>> future : received) {
+            for (Data item : future.get()) {
+                eventIds.add((Long) item.get("event_id"));
+                total++;
+            }
+        }
+        executor.shutdown();
+
+        Set<Long> expected = new HashSet<>();
+        for (Data image : images) {
+            expected.add((Long) image.get("event_id"));
+        }
+        assertThat(total, is(images.size()));
+        assertThat(eventIds, is(expected));
+        assertThat(publisher.getPublishedItems(), is((long) images.size()));
+    }
+
+    @Test(timeout = 30000)
+    public void testSeveralPublishers() throws Exception {
+        List<Data> images = ImageEvents.read();
+        CTAEventPublisher first = startPublisher(1);
+        CTAEventPublisher second = startPublisher(1);
+
+        CTAEventSubscriber subscriber = new CTAEventSubscriber();
+        subscriber.setAddresses("tcp://127.0.0.1:" + first.getLocalAddresses().get(0).getPort()
+                + ",tcp://127.0.0.1:" + second.getLocalAddresses().get(0).getPort());
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<List<Data>> received = executor.submit(() -> readAll(subscriber));
+        for (int i = 0; i < images.size(); i++) {
+            (i % 2 == 0 ? first : second).process(images.get(i));
+        }
+        first.finish();
+        second.finish();
+
+        List<Data> items = received.get();
+        executor.shutdown();
+        assertThat(items.size(), is(images.size()));
+        assertThat(subscriber.getReceivedItems(), is((long) images.size()));
+    }
+}
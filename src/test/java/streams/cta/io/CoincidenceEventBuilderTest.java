@@ -0,0 +1,227 @@
+package streams.cta.io;
+
+import org.junit.Test;
+import stream.Data;
+import stream.data.DataFactory;
+import stream.io.AbstractStream;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+/**
+ * Build array events from per telescope streams of hits.
+ */
+public class CoincidenceEventBuilderTest {
+
+    /**
+     * Returns the given hits.
+     */
+    private static class HitStream extends AbstractStream {
+        private final Iterator<Data> hits;
+        private final boolean silentAtEnd;
+
+        HitStream(List<Data> hits) {
+            this(hits, false);
+        }
+
+        /**
+         * @param silentAtEnd block instead of ending after the last hit, like a telescope which stopped
+         *                    triggering
+         */
+        HitStream(List<Data> hits, boolean silentAtEnd) {
+            this.hits = hits.iterator();
+            this.silentAtEnd = silentAtEnd;
+        }
+
+        @Override
+        public Data readNext() throws Exception {
+            if (!hits.hasNext() && silentAtEnd) {
+                Thread.sleep(Long.MAX_VALUE);
+            }
+            return hits.hasNext() ? hits.next() : null;
+        }
+    }
+
+    private static Data hit(int telescopeId, long timestamp) {
+        Data hit = DataFactory.create();
+        hit.put("telescope:id", telescopeId);
+        hit.put("timestamp", timestamp);
+        hit.put("shower:size", (double) timestamp);
+        return hit;
+    }
+
+    private static List<Data> readAll(CoincidenceEventBuilder builder) throws Exception {
+        builder.init();
+        List<Data> events = new ArrayList<>();
+        Data event = builder.read();
+        while (event != null) {
+            events.add(event);
+            event = builder.read();
+        }
+        builder.close();
+        return events;
+    }
+
+    @Test
+    public void testWindow() throws Exception {
+        CoincidenceEventBuilder builder = new CoincidenceEventBuilder();
+        builder.setWindow(100);
+        builder.addStream("1", new HitStream(Arrays.asList(hit(1, 0), hit(1, 1000))));
+        builder.addStream("2", new HitStream(Arrays.asList(hit(2, 50), hit(2, 1200))));
+        builder.addStream("3", new HitStream(Arrays.asList(hit(3, 99), hit(3, 1099))));
+
+        List<Data> events = readAll(builder);
+
+        assertThat(events.size(), is(3));
+        assertArrayEquals(new int[]{1, 2, 3}, (int[]) events.get(0).get("array:triggered_telescopes"));
+        assertArrayEquals(new int[]{1, 3}, (int[]) events.get(1).get("array:triggered_telescopes"));
+        assertArrayEquals(new int[]{2}, (int[]) events.get(2).get("array:triggered_telescopes"));
+
+        Data first = events.get(0);
+        assertThat(first.get("timestamp"), is((Serializable) 0L));
+        assertThat(first.get("event_id"), is((Serializable) 0L));
+        assertThat(first.get("array:num_triggered_telescopes"), is((Serializable) 3));
+        assertThat(first.get("telescope:2:shower:size"), is((Serializable) 50.0));
+        assertFalse(first.containsKey("telescope:2:timestamp"));
+        assertFalse(first.containsKey("telescope:2:telescope:id"));
+    }
+
+    @Test
+    public void testMinTelescopesAndLateHits() throws Exception {
+        CoincidenceEventBuilder builder = new CoincidenceEventBuilder();
+        builder.setWindow(100);
+        builder.setMinTelescopes(2);
+        builder.addStream("1", new HitStream(Arrays.asList(hit(1, 0), hit(1, 100000), hit(1, 30))));
+        builder.addStream("2", new HitStream(Arrays.asList(hit(2, 20), hit(2, 200000))));
+
+        List<Data> events = readAll(builder);
+
+        assertThat(events.size(), is(1));
+        assertArrayEquals(new int[]{1, 2}, (int[]) events.get(0).get("array:triggered_telescopes"));
+        assertThat(builder.getLateHits(), is(1L));
+        assertThat(builder.getDroppedEvents(), is(2L));
+    }
+
+    @Test
+    public void testRebuildSyntheticEvents() throws Exception {
+        SyntheticImageStream synthetic = new SyntheticImageStream();
+        synthetic.setSeed(3);
+        synthetic.setLimit(300L);
+        synthetic.init();
+
+        //split the events into hits per telescope. the clocks of the telescopes differ by up to 80ns.
+        Random random = new Random(0);
+        List<Data> events = new ArrayList<>();
+        Map<Integer, List<Data>> hitsPerTelescope = new TreeMap<>();
+        for (Data event = synthetic.read(); event != null; event = synthetic.read()) {
+            long time = events.size() * 1000000L;
+            for (int id : (int[]) event.get("array:triggered_telescopes")) {
+                Data hit = DataFactory.create();
+                hit.put("telescope:id", id);
+                hit.put("timestamp", time + random.nextInt(80));
+                hit.put("raw:photons", event.get("telescope:" + id + ":raw:photons"));
+                hit.put("type:id", event.get("telescope:" + id + ":type:id"));
+                hit.put("mc:energy", event.get("mc:energy"));
+                hitsPerTelescope.computeIfAbsent(id, k -> new ArrayList<>()).add(hit);
+            }
+            events.add(event);
+        }
+        synthetic.close();
+
+        CoincidenceEventBuilder builder = new CoincidenceEventBuilder();
+        builder.setWindow(100);
+        for (Map.Entry<Integer, List<Data>> entry : hitsPerTelescope.entrySet()) {
+            builder.addStream(entry.getKey().toString(), new HitStream(entry.getValue()));
+        }
+        List<Data> built = readAll(builder);
+
+        assertThat(built.size(), is(events.size()));
+        for (int i = 0; i < events.size(); i++) {
+            Data event = events.get(i);
+            Data rebuilt = built.get(i);
+            int[] ids = (int[]) event.get("array:triggered_telescopes");
+            assertArrayEquals(ids, (int[]) rebuilt.get("array:triggered_telescopes"));
+            assertThat(rebuilt.get("mc:energy"), is(event.get("mc:energy")));
+            for (int id : ids) {
+                String key = "telescope:" + id + ":raw:photons";
+                assertSame(event.get(key), rebuilt.get(key));
+            }
+        }
+    }
+
+    @Test
+    public void testSyntheticStreamsAsInputs() throws Exception {
+        CoincidenceEventBuilder builder = new CoincidenceEventBuilder();
+        //the synthetic streams create one event per millisecond
+        builder.setWindow(100000);
+        int telescopes = 0;
+        for (int seed = 1; seed <= 2; seed++) {
+            SyntheticImageStream stream = new SyntheticImageStream();
+            stream.setSeed(seed);
+            stream.setLimit(50L);
+            builder.addStream("synthetic" + seed, stream);
+
+            SyntheticImageStream copy = new SyntheticImageStream();
+            copy.setSeed(seed);
+            copy.setLimit(50L);
+            copy.init();
+            for (Data event = copy.read(); event != null; event = copy.read()) {
+                telescopes += ((int[]) event.get("array:triggered_telescopes")).length;
+            }
+            copy.close();
+        }
+
+        List<Data> events = readAll(builder);
+
+        assertTrue(events.size() >= 50 && events.size() <= 100);
+        int builtTelescopes = 0;
+        for (Data event : events) {
+            int[] ids = (int[]) event.get("array:triggered_telescopes");
+            assertThat(Arrays.stream(ids).distinct().count(), is((long) ids.length));
+            for (int id : ids) {
+                assertNotNull(event.get("telescope:" + id + ":raw:photons"));
+            }
+            builtTelescopes += ids.length;
+        }
+        assertThat(builtTelescopes, is(telescopes));
+    }
+
+    @Test(timeout = 10000)
+    public void testIdleTimeout() throws Exception {
+        List<Data> first = new ArrayList<>();
+        List<Data> second = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            if (i < 3) {
+                first.add(hit(1, i * 1000));
+            }
+            second.add(hit(2, i * 1000 + 10));
+        }
+
+        CoincidenceEventBuilder builder = new CoincidenceEventBuilder();
+        builder.setWindow(100);
+        builder.setIdleTimeout(200);
+        builder.addStream("1", new HitStream(first, true));
+        builder.addStream("2", new HitStream(second));
+        builder.init();
+
+        //the first stream never ends. the events are built without it once it is idle.
+        List<Data> events = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            events.add(builder.read());
+        }
+        builder.close();
+
+        assertArrayEquals(new int[]{1, 2}, (int[]) events.get(2).get("array:triggered_telescopes"));
+        assertArrayEquals(new int[]{2}, (int[]) events.get(3).get("array:triggered_telescopes"));
+        assertThat(events.get(9).get("timestamp"), is((Serializable) 9010L));
+    }
+}
@@ -0,0 +1,186 @@
+package streams.cta.io;
+
+import org.junit.Test;
+import stream.Data;
+import stream.data.DataFactory;
+import stream.io.SourceURL;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+/**
+ * Test the CompactData against a HashMap based item.
+ */
+public class CompactDataTest {
+
+    @Test
+    public void testPutGetRemove() {
+        CompactData item = new CompactData();
+        item.put("a", 1);
+        item.put("b", "two");
+        item.put("c", null);
+
+        assertThat(item.size(), is(3));
+        assertThat(item.get("a"), is(1));
+        assertThat(item.get("b"), is("two"));
+        assertTrue(item.containsKey("c"));
+        assertNull(item.get("c"));
+        assertFalse(item.containsKey("never put into any item"));
+
+        assertThat(item.put("a", 5), is(1));
+        assertThat(item.remove("b"), is("two"));
+        assertNull(item.remove("b"));
+        assertFalse(item.containsKey("b"));
+        assertThat(item.size(), is(2));
+
+        item.put("b", 3);
+        List<String> keys = new ArrayList<>(item.keySet());
+        assertThat(keys.toString(), is("[a, c, b]"));
+    }
+
+    @Test
+    public void testSameAsHashMap() {
+        Random random = new Random(0);
+        CompactData item = new CompactData(4);
+        Data expected = DataFactory.create();
+
+        for (int i = 0; i < 20000; i++) {
+            String key = "key:" + random.nextInt(300);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), item.remove(key));
+            } else {
+                assertEquals(expected.put(key, i), item.put(key, i));
+            }
+            assertThat(item.size(), is(expected.size()));
+        }
+
+        assertEquals(expected, item);
+        assertEquals(item, expected);
+        assertThat(item.hashCode(), is(expected.hashCode()));
+        for (String key : expected.keySet()) {
+            assertEquals(expected.get(key), item.get(key));
+        }
+    }
+
+    @Test
+    public void testIteratorRemove() {
+        CompactData item = new CompactData();
+        for (int i = 0; i < 100; i++) {
+            item.put("key:" + i, i);
+        }
+
+        Iterator<Map.Entry<String, Serializable>> entries = item.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<String, Serializable> entry = entries.next();
+            if ((int) entry.getValue() % 2 == 0) {
+                entries.remove();
+            } else {
+                entry.setValue(-(int) entry.getValue());
+            }
+        }
+
+        assertThat(item.size(), is(50));
+        for (int i = 0; i < 100; i++) {
+            assertThat(item.containsKey("key:" + i), is(i % 2 == 1));
+            if (i % 2 == 1) {
+                assertThat(item.get("key:" + i), is(-i));
+            }
+        }
+    }
+
+    @Test
+    public void testCopyIsIndependent() {
+        CompactData item = new CompactData();
+        item.put("a", 1);
+        item.put("b", 2);
+
+        Data copy = item.createCopy();
+        copy.put("a", 10);
+        copy.remove("b");
+        copy.put("c", 3);
+
+        assertThat(item.size(), is(2));
+        assertThat(item.get("a"), is(1));
+        assertThat(item.get("b"), is(2));
+        assertFalse(item.containsKey("c"));
+        assertThat(copy.size(), is(2));
+        assertThat(copy.get("a"), is(10));
+    }
+
+    @Test
+    public void testSlots() {
+        CompactData item = new CompactData();
+        int slot = Names.RAW_PHOTONS.slot(12);
+        double[] image = {1, 2, 3};
+        item.put(slot, image);
+
+        assertSame(image, item.get("telescope:12:raw:photons"));
+        assertSame(Names.RAW_PHOTONS.key(12), KeyRegistry.key(slot));
+        assertSame(Names.RAW_PHOTONS.key(500), KeyRegistry.intern("telescope:500:raw:photons"));
+    }
+
+    @Test
+    public void testJavaSerialization() throws Exception {
+        CompactData item = new CompactData();
+        item.put("a", 1);
+        item.put("b", new double[]{1, 2});
+        item.remove("a");
+        item.put("c", "three");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(item);
+        }
+        CompactData read;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            read = (CompactData) in.readObject();
+        }
+
+        assertThat(new ArrayList<>(read.keySet()), is(new ArrayList<>(item.keySet())));
+        assertArrayEquals((double[]) item.get("b"), (double[]) read.get("b"), 0);
+        assertThat(read.get("c"), is("three"));
+    }
+
+    @Test
+    public void testImageStream() throws Exception {
+        SourceURL url = new SourceURL(CompactDataTest.class.getResource("/images.json.gz"));
+        ImageStream stream = new ImageStream(url);
+        stream.init();
+        ImageStream compactStream = new ImageStream(url);
+        compactStream.setCompactData(true);
+        compactStream.init();
+
+        Data item = stream.read();
+        Data compact = compactStream.read();
+        while (item != null) {
+            assertTrue(compact instanceof CompactData);
+            assertThat(compact.keySet(), is(item.keySet()));
+            for (String key : item.keySet()) {
+                Serializable value = item.get(key);
+                if (value instanceof double[]) {
+                    assertArrayEquals((double[]) value, (double[]) compact.get(key), 0);
+                } else if (value instanceof int[]) {
+                    assertArrayEquals((int[]) value, (int[]) compact.get(key));
+                } else {
+                    assertEquals(value, compact.get(key));
+                }
+            }
+            item = stream.read();
+            compact = compactStream.read();
+        }
+        assertNull(compact);
+        stream.close();
+        compactStream.close();
+    }
+}
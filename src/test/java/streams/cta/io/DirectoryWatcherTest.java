@@ -0,0 +1,58 @@
+package streams.cta.io;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Pass on files only after they have been written completely.
+ */
+public class DirectoryWatcherTest {
+
+    @Test(timeout = 30000)
+    public void testFileWrittenWithPauses() throws Exception {
+        File root = Files.createTempDirectory("watched").toFile();
+        root.deleteOnExit();
+        Path file = root.toPath().resolve("events.dat");
+        Path noise = root.toPath().resolve("noise.tmp");
+        file.toFile().deleteOnExit();
+        noise.toFile().deleteOnExit();
+
+        Map<Path, Long> sizes = new ConcurrentHashMap<>();
+        DirectoryWatcher watcher = new DirectoryWatcher(root.toPath(), 2,
+                FileSystems.getDefault().getPathMatcher("glob:**/*.dat"), new HashSet<>(),
+                path -> sizes.put(path, path.toFile().length()), 400, false, null, 0);
+        watcher.start();
+
+        //the file grows every 100 ms while another file wakes up the watcher much more often.
+        try (FileOutputStream out = new FileOutputStream(file.toFile());
+             FileOutputStream other = new FileOutputStream(noise.toFile())) {
+            for (int i = 0; i < 100; i++) {
+                if (i % 10 == 0) {
+                    out.write(new byte[1000]);
+                    out.flush();
+                }
+                other.write(1);
+                other.flush();
+                Thread.sleep(10);
+            }
+        }
+
+        while (!sizes.containsKey(file)) {
+            Thread.sleep(50);
+        }
+        watcher.close();
+
+        assertThat(sizes.get(file), is(10000L));
+    }
+}
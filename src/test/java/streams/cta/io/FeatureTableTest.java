@@ -0,0 +1,103 @@
+package streams.cta.io;
+
+import org.junit.Test;
+import stream.Data;
+import stream.Keys;
+import stream.io.SourceURL;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Write some values of the test images into a feature table and read them back.
+ */
+public class FeatureTableTest {
+
+    private File write(List<Data> items) throws Exception {
+        File file = File.createTempFile("features", ".bin");
+        file.deleteOnExit();
+
+        FeatureTableWriter writer = new FeatureTableWriter();
+        writer.setUrl(new SourceURL(file.toURI().toURL()));
+        writer.setKeys(new Keys("event_id,source_file,mc:*,!mc:type,array:*"));
+        writer.setChunkSize(7);
+        writer.init(null);
+        for (Data item : items) {
+            writer.process(item);
+        }
+        writer.finish();
+        return file;
+    }
+
+    @Test
+    public void testColumns() throws Exception {
+        List<Data> items = ImageEvents.read();
+        File file = write(items);
+
+        List<Double> energies = new ArrayList<>();
+        List<Long> eventIds = new ArrayList<>();
+        List<String> sourceFiles = new ArrayList<>();
+        try (FeatureTableReader reader = FeatureTableReader.open(file.toPath())) {
+            //the triggered telescopes are an array and can not be stored.
+            Set<String> expectedColumns = new HashSet<>(Arrays.asList("event_id", "mc:alt", "mc:az",
+                    "mc:core_x", "mc:core_y", "mc:energy", "source_file", "array:num_triggered_telescopes"));
+            assertThat(new HashSet<>(Arrays.asList(reader.columnNames())), is(expectedColumns));
+
+            FeatureTableReader.Chunk chunk = reader.nextChunk();
+            while (chunk != null) {
+                for (int i = 0; i < chunk.numberOfRows(); i++) {
+                    energies.add(chunk.getDoubles("mc:energy")[i]);
+                    eventIds.add(chunk.getLongs("event_id")[i]);
+                    sourceFiles.add(chunk.getStrings("source_file")[i]);
+                }
+                chunk = reader.nextChunk();
+            }
+        }
+
+        assertThat(energies.size(), is(items.size()));
+        for (int i = 0; i < items.size(); i++) {
+            assertThat(energies.get(i), is(items.get(i).get("mc:energy")));
+            assertThat(eventIds.get(i), is(items.get(i).get("event_id")));
+            assertThat(sourceFiles.get(i), is(items.get(i).get("source_file")));
+        }
+    }
+
+    @Test
+    public void testSkipChunks() throws Exception {
+        List<Data> items = ImageEvents.read();
+        File file = write(items);
+
+        List<Double> sorted = new ArrayList<>();
+        for (Data item : items) {
+            sorted.add((Double) item.get("mc:energy"));
+        }
+        sorted.sort(Double::compare);
+        double threshold = sorted.get(sorted.size() - 5);
+
+        Set<Double> expected = new HashSet<>(sorted.subList(sorted.size() - 5, sorted.size()));
+        Set<Double> found = new HashSet<>();
+        try (FeatureTableReader reader = FeatureTableReader.open(file.toPath())) {
+            reader.select("mc:energy");
+            reader.where("mc:energy", threshold, Double.POSITIVE_INFINITY);
+            FeatureTableReader.Chunk chunk = reader.nextChunk();
+            while (chunk != null) {
+                for (double energy : chunk.getDoubles("mc:energy")) {
+                    if (energy >= threshold) {
+                        found.add(energy);
+                    }
+                }
+                chunk = reader.nextChunk();
+            }
+            assertTrue(reader.getSkippedChunks() > 0);
+        }
+        assertThat(found, is(expected));
+    }
+}
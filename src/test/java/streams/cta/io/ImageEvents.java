@@ -0,0 +1,31 @@
+package streams.cta.io;
+
+import stream.Data;
+import stream.io.SourceURL;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The events of the test images in images.json.gz as read by the {@link ImageStream}. Shared by the
+ * tests which need a list of real events, for example to write them and compare them after reading
+ * them back.
+ */
+public final class ImageEvents {
+
+    private ImageEvents() {
+    }
+
+    public static List<Data> read() throws Exception {
+        List<Data> items = new ArrayList<>();
+        ImageStream stream = new ImageStream(new SourceURL(ImageStream.class.getResource("/images.json.gz")));
+        stream.init();
+        Data data = stream.read();
+        while (data != null) {
+            items.add(data);
+            data = stream.read();
+        }
+        stream.close();
+        return items;
+    }
+}
@@ -1,19 +1,28 @@
 package streams.cta.io;
 
+import com.google.common.io.ByteStreams;
 import org.junit.Test;
 import stream.Data;
 import stream.Keys;
 import stream.io.SourceURL;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
 
 import static java.lang.Math.pow;
 import static java.lang.Math.sqrt;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 
 /**
@@ -74,4 +83,104 @@ public class ImageStreamTest {
         stream.close();
     }
 
+    @Test
+    public void testDecoderMatchesReflection() throws Exception {
+        String filename = "/proton_20deg_0deg_run3619___cta-prod3-merged_desert-2150m-Paranal-3HB8-NG.json.gz";
+        for (URL url : new URL[]{images, ImageStreamTest.class.getResource(filename)}) {
+            ImageStream streaming = new ImageStream(new SourceURL(url));
+            ImageStream reflection = new ImageStream(new SourceURL(url));
+            reflection.setGson(true);
+
+            streaming.init();
+            reflection.init();
+
+            Data expected = reflection.read();
+            Data actual = streaming.read();
+            while (expected != null) {
+                assertThat(actual.keySet(), is(expected.keySet()));
+                for (String key : expected.keySet()) {
+                    Object e = expected.get(key);
+                    Object a = actual.get(key);
+                    if (e instanceof double[]) {
+                        assertArrayEquals(key, (double[]) e, (double[]) a, 0.0);
+                    } else if (e instanceof int[]) {
+                        assertArrayEquals(key, (int[]) e, (int[]) a);
+                    } else {
+                        assertThat(key, a, is(e));
+                    }
+                }
+                expected = reflection.read();
+                actual = streaming.read();
+            }
+            assertThat(actual, is(nullValue()));
+
+            streaming.close();
+            reflection.close();
+        }
+    }
+
+    @Test
+    public void testReadAhead() throws Exception {
+        ImageStream direct = new ImageStream(new SourceURL(images));
+        ImageStream readAhead = new ImageStream(new SourceURL(images));
+        readAhead.setReadAhead(4);
+
+        direct.init();
+        readAhead.init();
+
+        Data expected = direct.read();
+        Data actual = readAhead.read();
+        while (expected != null) {
+            assertThat(actual.get("event_id"), is(expected.get("event_id")));
+            assertThat(actual.keySet(), is(expected.keySet()));
+            expected = direct.read();
+            actual = readAhead.read();
+        }
+        assertThat(actual, is(nullValue()));
+        assertThat(readAhead.read(), is(nullValue()));
+
+        direct.close();
+        readAhead.close();
+    }
+
+    @Test
+    public void testReadAheadClosesEarly() throws Exception {
+        ImageStream readAhead = new ImageStream(new SourceURL(images));
+        readAhead.setReadAhead(2);
+        readAhead.init();
+
+        assertThat(readAhead.read(), is(not(nullValue())));
+        readAhead.close();
+    }
+
+    /**
+     * Errors on the decoding thread have to show up in the reading thread after all events
+     * decoded before the error.
+     */
+    @Test
+    public void testReadAheadPropagatesErrors() throws Exception {
+        byte[] json;
+        try (InputStream in = new GZIPInputStream(images.openStream())) {
+            json = ByteStreams.toByteArray(in);
+        }
+        File truncated = File.createTempFile("truncated", ".json");
+        truncated.deleteOnExit();
+        Files.write(truncated.toPath(), Arrays.copyOf(json, json.length / 2));
+
+        ImageStream readAhead = new ImageStream(new SourceURL(truncated.toURI().toURL()));
+        readAhead.setReadAhead(4);
+        readAhead.init();
+
+        int events = 0;
+        try {
+            while (readAhead.read() != null) {
+                events++;
+            }
+            fail("Reading a truncated file should fail");
+        } catch (IOException e) {
+            assertTrue("Events before the error should have been read", events > 0);
+        }
+        readAhead.close();
+    }
+
 }
@@ -0,0 +1,88 @@
+package streams.cta.io;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.junit.Test;
+import stream.Data;
+import stream.Keys;
+import stream.io.SourceURL;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Write the test images as json and parse them again with Gson.
+ */
+public class JSONWriterTest {
+
+    private String write(List<Data> items, boolean writeblock) throws Exception {
+        File file = File.createTempFile("items", ".json");
+        file.deleteOnExit();
+
+        JSONWriter writer = new JSONWriter();
+        writer.setUrl(new SourceURL(file.toURI().toURL()));
+        writer.setKeys(new Keys("event_id,mc:*,array:*,telescope:*:raw:photons"));
+        writer.setWriteblock(writeblock);
+        writer.setBlockSize(7);
+        writer.init(null);
+        for (Data item : items) {
+            writer.process(item);
+        }
+        writer.finish();
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    private void compare(Data item, JsonObject json) {
+        assertThat(json.get("event_id").getAsLong(), is(item.get("event_id")));
+        assertThat(json.get("mc:energy").getAsDouble(), is(item.get("mc:energy")));
+        assertThat(json.has("timestamp"), is(false));
+
+        int[] triggered = (int[]) item.get("array:triggered_telescopes");
+        JsonArray triggeredJson = json.getAsJsonArray("array:triggered_telescopes");
+        assertThat(triggeredJson.size(), is(triggered.length));
+        for (int i = 0; i < triggered.length; i++) {
+            assertThat(triggeredJson.get(i).getAsInt(), is(triggered[i]));
+        }
+
+        double[] image = (double[]) item.get("telescope:" + triggered[0] + ":raw:photons");
+        JsonArray imageJson = json.getAsJsonArray("telescope:" + triggered[0] + ":raw:photons");
+        for (int i = 0; i < image.length; i++) {
+            assertThat(imageJson.get(i).getAsDouble(), is(image[i]));
+        }
+    }
+
+    @Test
+    public void testLines() throws Exception {
+        List<Data> items = ImageEvents.read();
+        String[] lines = write(items, false).split("\n");
+        assertThat(lines.length, is(items.size()));
+        for (int i = 0; i < items.size(); i++) {
+            compare(items.get(i), new Gson().fromJson(lines[i], JsonObject.class));
+        }
+    }
+
+    @Test
+    public void testBlock() throws Exception {
+        List<Data> items = ImageEvents.read();
+        JsonArray array = new Gson().fromJson(write(items, true), JsonArray.class);
+        assertThat(array.size(), is(items.size()));
+        int i = 0;
+        for (JsonElement element : array) {
+            compare(items.get(i++), element.getAsJsonObject());
+        }
+    }
+
+    @Test
+    public void testEmptyBlock() throws Exception {
+        JsonArray array = new Gson().fromJson(write(new ArrayList<>(), true), JsonArray.class);
+        assertThat(array.size(), is(0));
+    }
+}
@@ -0,0 +1,247 @@
+package streams.cta.io;
+
+import org.junit.Test;
+import stream.Data;
+import stream.io.SourceURL;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Write the test images with the KryoWriter and read them back with the KryoStream.
+ */
+public class KryoStreamTest {
+
+    private File write(List<Data> items, int blockSize, boolean compress) throws Exception {
+        return write(items, blockSize, compress, false);
+    }
+
+    private File write(List<Data> items, int blockSize, boolean compress, boolean keyDictionary) throws Exception {
+        File file = File.createTempFile("events", ".kryo");
+        file.deleteOnExit();
+
+        KryoWriter writer = new KryoWriter();
+        writer.setUrl(new SourceURL(file.toURI().toURL()));
+        writer.setBlockSize(blockSize);
+        writer.setCompress(compress);
+        writer.setKeyDictionary(keyDictionary);
+        writer.init(null);
+        for (Data item : items) {
+            writer.process(item);
+        }
+        writer.finish();
+        return file;
+    }
+
+    private List<Data> read(KryoStream stream) throws Exception {
+        List<Data> items = new ArrayList<>();
+        stream.init();
+        Data data = stream.read();
+        while (data != null) {
+            items.add(data);
+            data = stream.read();
+        }
+        stream.close();
+        return items;
+    }
+
+    private void assertSameEvents(List<Data> expected, List<Data> actual) {
+        assertThat(actual.size(), is(expected.size()));
+        for (int i = 0; i < expected.size(); i++) {
+            assertThat(actual.get(i).get("event_id"), is(expected.get(i).get("event_id")));
+            assertArrayEquals(
+                    (int[]) expected.get(i).get("array:triggered_telescopes"),
+                    (int[]) actual.get(i).get("array:triggered_telescopes")
+            );
+        }
+    }
+
+    @Test
+    public void testOldFormat() throws Exception {
+        List<Data> items = ImageEvents.read();
+        File file = write(items, 0, false);
+
+        assertSameEvents(items, read(new KryoStream(new SourceURL(file.toURI().toURL()))));
+    }
+
+    @Test
+    public void testParallelBlocks() throws Exception {
+        List<Data> items = ImageEvents.read();
+        File file = write(items, 7, true);
+
+        KryoStream stream = new KryoStream(new SourceURL(file.toURI().toURL()));
+        stream.setParallelBlocks(3);
+        assertSameEvents(items, read(stream));
+    }
+
+    @Test
+    public void testFirstBlock() throws Exception {
+        List<Data> items = ImageEvents.read();
+        File file = write(items, 7, false);
+
+        KryoStream stream = new KryoStream(new SourceURL(file.toURI().toURL()));
+        stream.setFirstBlock(2);
+        assertSameEvents(items.subList(14, items.size()), read(stream));
+    }
+
+    @Test
+    public void testMissingIndex() throws Exception {
+        List<Data> items = ImageEvents.read();
+        File file = write(items, 7, false);
+
+        //cut off the index and half of the last block, as if the writer crashed.
+        KryoStream stream = new KryoStream(new SourceURL(file.toURI().toURL()));
+        stream.init();
+        int numberOfBlocks = stream.getNumberOfBlocks();
+        stream.close();
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 12 - 4 - 12L * numberOfBlocks - 10);
+        }
+
+        int completeBlocks = (items.size() - 1) / 7;
+        List<Data> actual = read(new KryoStream(new SourceURL(file.toURI().toURL())));
+        assertSameEvents(items.subList(0, completeBlocks * 7), actual);
+    }
+
+    @Test(timeout = 10000, expected = DataFormatException.class)
+    public void testTruncatedCompressedBlock() throws Exception {
+        File file = write(ImageEvents.read(), 7, true);
+
+        //claim only half of the compressed payload of the first block
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(KryoBlockFormat.HEADER_SIZE);
+            int length = raf.readInt();
+            raf.seek(KryoBlockFormat.HEADER_SIZE);
+            raf.writeInt(length / 2);
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath())) {
+            KryoBlockFormat.decodeBlock(channel, new KryoBlockFormat.Block(KryoBlockFormat.HEADER_SIZE, 7), false);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testCorruptBlockThrowsIOException() throws Exception {
+        File file = write(ImageEvents.read(), 7, true);
+
+        //overwrite the compressed payload of the first block
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(KryoBlockFormat.HEADER_SIZE + KryoBlockFormat.BLOCK_HEADER_SIZE);
+            raf.write(new byte[]{-1, -1, -1, -1, -1, -1, -1, -1});
+        }
+
+        for (int parallelBlocks : new int[]{1, 3}) {
+            KryoStream stream = new KryoStream(new SourceURL(file.toURI().toURL()));
+            stream.setParallelBlocks(parallelBlocks);
+            stream.init();
+            try {
+                stream.read();
+                fail("A corrupt block has to be reported");
+            } catch (IOException e) {
+                //expected, so the file can be skipped
+            } finally {
+                stream.close();
+            }
+        }
+    }
+
+    @Test
+    public void testKeyDictionary() throws Exception {
+        List<Data> items = ImageEvents.read();
+        File file = write(items, 7, false, true);
+
+        KryoStream stream = new KryoStream(new SourceURL(file.toURI().toURL()));
+        stream.setParallelBlocks(2);
+        List<Data> actual = read(stream);
+        assertSameEvents(items, actual);
+
+        for (int i = 0; i < items.size(); i++) {
+            Data expected = items.get(i);
+            assertThat(actual.get(i).keySet(), is(expected.keySet()));
+            for (String key : expected.keySet()) {
+                Object value = expected.get(key);
+                if (value instanceof double[]) {
+                    assertArrayEquals((double[]) value, (double[]) actual.get(i).get(key), 0);
+                } else if (!(value instanceof int[])) {
+                    assertThat(key, actual.get(i).get(key), is(value));
+                }
+            }
+        }
+
+        //keys are shared between items
+        String key = actual.get(0).keySet().iterator().next();
+        for (String other : actual.get(actual.size() - 1).keySet()) {
+            if (other.equals(key)) {
+                assertTrue(other == key);
+            }
+        }
+    }
+
+    @Test
+    public void testKeyDictionaryIsSmaller() throws Exception {
+        List<Data> items = ImageEvents.read();
+        File plain = write(items, 7, false, false);
+        File withDictionary = write(items, 7, false, true);
+        assertTrue(withDictionary.length() < plain.length());
+    }
+
+    @Test
+    public void testAsyncWriter() throws Exception {
+        List<Data> items = ImageEvents.read();
+        for (int blockSize : new int[]{0, 7}) {
+            File file = File.createTempFile("events", ".kryo");
+            file.deleteOnExit();
+
+            KryoWriter writer = new KryoWriter();
+            writer.setUrl(new SourceURL(file.toURI().toURL()));
+            writer.setBlockSize(blockSize);
+            writer.setAsync(true);
+            writer.setAsyncBufferSize(5);
+            writer.setFlushInterval(10);
+            writer.setFsync(true);
+            writer.init(null);
+            for (Data item : items) {
+                writer.process(item);
+            }
+            writer.finish();
+
+            assertSameEvents(items, read(new KryoStream(new SourceURL(file.toURI().toURL()))));
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testAsyncFlushesIdleStream() throws Exception {
+        List<Data> items = ImageEvents.read().subList(0, 3);
+        File file = File.createTempFile("events", ".kryo");
+        file.deleteOnExit();
+
+        KryoWriter writer = new KryoWriter();
+        writer.setUrl(new SourceURL(file.toURI().toURL()));
+        writer.setAsync(true);
+        writer.setFlushInterval(50);
+        writer.init(null);
+        for (Data item : items) {
+            writer.process(item);
+        }
+
+        //no more items arrive. the buffer is far from full but written anyway.
+        while (file.length() == 0) {
+            Thread.sleep(10);
+        }
+        writer.finish();
+
+        assertSameEvents(items, read(new KryoStream(new SourceURL(file.toURI().toURL()))));
+    }
+}
@@ -4,12 +4,17 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import stream.Data;
+import stream.data.DataFactory;
 import stream.io.SourceURL;
 import stream.io.Stream;
 
+import java.io.Serializable;
 import java.net.URL;
 import java.util.Map;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -60,4 +65,44 @@ public class LoopStreamTest {
                     firstTel == lastTel);
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testCopiesShareEvents() throws Exception {
+        loopStream.init();
+
+        LoopStream second = new LoopStream();
+        second.addStream("imagestream", new ImageStream(new SourceURL(images)));
+        second.init();
+
+        assertSame(loopStream.items, second.items);
+        loopStream.close();
+        second.close();
+    }
+
+    @Test
+    public void testCopyOnWrite() throws Exception {
+        loopStream.events = 1;
+        loopStream.init();
+
+        Data first = loopStream.readNext();
+        int size = first.size();
+        Serializable eventId = first.get("event_id");
+
+        first.put("event_id", -1L);
+        first.put("new_key", "value");
+        first.remove("mc:energy");
+        assertEquals(-1L, first.get("event_id"));
+        assertEquals("value", first.get("new_key"));
+        assertFalse(first.containsKey("mc:energy"));
+        assertEquals(size, first.size());
+        assertEquals(size, first.entrySet().size());
+        assertEquals(first, DataFactory.create(first));
+
+        Data next = loopStream.readNext();
+        assertEquals(eventId, next.get("event_id"));
+        assertTrue(next.containsKey("mc:energy"));
+        assertFalse(next.containsKey("new_key"));
+        assertEquals(size, next.size());
+        loopStream.close();
+    }
+}
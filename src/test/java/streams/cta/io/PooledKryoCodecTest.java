@@ -0,0 +1,82 @@
+package streams.cta.io;
+
+import org.junit.Test;
+import stream.Data;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Check that the pooled codec reads what the KryoCodec writes and that it can be used from
+ * several threads.
+ */
+public class PooledKryoCodecTest {
+
+    private void assertSameEvent(Data expected, Data actual) {
+        assertThat(actual.get("event_id"), is(expected.get("event_id")));
+        assertArrayEquals(
+                (int[]) expected.get("array:triggered_telescopes"),
+                (int[]) actual.get("array:triggered_telescopes")
+        );
+    }
+
+    @Test
+    public void testCompatibleWithKryoCodec() throws Exception {
+        KryoCodec codec = new KryoCodec();
+        PooledKryoCodec pooledCodec = new PooledKryoCodec();
+
+        for (Data item : ImageEvents.read()) {
+            assertSameEvent(item, pooledCodec.decode(codec.encode(item)));
+            assertSameEvent(item, codec.decode(pooledCodec.encode(item)));
+        }
+    }
+
+    @Test
+    public void testByteBuffer() throws Exception {
+        PooledKryoCodec codec = new PooledKryoCodec();
+        ByteBuffer heap = ByteBuffer.allocate(1 << 20);
+        ByteBuffer direct = ByteBuffer.allocateDirect(1 << 20);
+
+        for (Data item : ImageEvents.read()) {
+            for (ByteBuffer buffer : new ByteBuffer[]{heap, direct}) {
+                buffer.clear();
+                int length = codec.encode(item, buffer);
+                assertThat(buffer.position(), is(length));
+                buffer.flip();
+                assertSameEvent(item, codec.decode(buffer));
+                assertThat(buffer.hasRemaining(), is(false));
+            }
+        }
+    }
+
+    @Test
+    public void testThreads() throws Exception {
+        List<Data> items = ImageEvents.read();
+        PooledKryoCodec codec = new PooledKryoCodec();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> results = new ArrayList<>();
+        for (int thread = 0; thread < 4; thread++) {
+            results.add(executor.submit(() -> {
+                for (int repetition = 0; repetition < 5; repetition++) {
+                    for (Data item : items) {
+                        assertSameEvent(item, codec.decode(codec.encode(item)));
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> result : results) {
+            result.get();
+        }
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,338 @@
+package streams.cta.io;
+
+import org.junit.Test;
+import stream.Data;
+import stream.annotations.Parameter;
+import stream.data.DataFactory;
+import stream.io.AbstractStream;
+import stream.io.SourceURL;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Read a folder of image files sequentially and concurrently.
+ */
+public class RecursiveDirectoryStreamTest {
+
+    private URL images = ImageStream.class.getResource("/images.json.gz");
+
+    /**
+     * Returns ten items for each file. Files named broken* fail after a while.
+     */
+    public static class SlowlyFailingStream extends AbstractStream {
+        private int items = 0;
+
+        @Parameter(required = false, description = "Stored in each item")
+        private String tag = "none";
+
+        public void setTag(String tag) {
+            this.tag = tag;
+        }
+
+        @Override
+        public void init() throws Exception {
+            if (url.getFile().contains("broken")) {
+                Thread.sleep(300);
+                throw new IOException("broken file");
+            }
+        }
+
+        @Override
+        public Data readNext() throws Exception {
+            if (items == 10) {
+                return null;
+            }
+            items++;
+            Data item = DataFactory.create();
+            item.put("source_file", url.getFile());
+            item.put("tag", tag);
+            return item;
+        }
+    }
+
+    private File createFolder(int numberOfFiles) throws Exception {
+        File root = Files.createTempDirectory("images").toFile();
+        root.deleteOnExit();
+        for (int i = 0; i < numberOfFiles; i++) {
+            Path sub = Files.createDirectories(root.toPath().resolve("run_" + i));
+            sub.toFile().deleteOnExit();
+            try (InputStream in = images.openStream()) {
+                Path file = sub.resolve("images_" + i + ".json.gz");
+                Files.copy(in, file);
+                file.toFile().deleteOnExit();
+            }
+        }
+        return root;
+    }
+
+    private Map<String, Integer> countEvents(File root, int parallelFiles) throws Exception {
+        RecursiveDirectoryStream stream = new RecursiveDirectoryStream(new SourceURL(root.toURI().toURL()));
+        stream.setPattern("**/*.json.gz");
+        stream.setParallelFiles(parallelFiles);
+        stream.addStream("_", new ImageStream());
+        stream.init();
+
+        Map<String, Integer> counts = new HashMap<>();
+        Data data = stream.read();
+        while (data != null) {
+            counts.merge((String) data.get("source_file"), 1, Integer::sum);
+            data = stream.read();
+        }
+        stream.close();
+        return counts;
+    }
+
+    @Test
+    public void testParallelReadsAllEvents() throws Exception {
+        File root = createFolder(4);
+
+        Map<String, Integer> sequential = countEvents(root, 1);
+        Map<String, Integer> parallel = countEvents(root, 3);
+
+        assertThat(sequential.size(), is(4));
+        assertThat(parallel, is(sequential));
+    }
+
+    @Test
+    public void testParallelSkipsBrokenFiles() throws Exception {
+        File root = createFolder(2);
+        Files.write(root.toPath().resolve("run_0").resolve("broken.json.gz"), new byte[]{1, 2, 3}).toFile().deleteOnExit();
+
+        RecursiveDirectoryStream stream = new RecursiveDirectoryStream(new SourceURL(root.toURI().toURL()));
+        stream.setPattern("**/*.json.gz");
+        stream.setParallelFiles(2);
+        stream.addStream("_", new ImageStream());
+        stream.init();
+
+        int events = 0;
+        while (stream.read() != null) {
+            events++;
+        }
+        stream.close();
+
+        assertThat(events > 0, is(true));
+        assertThat(stream.getFilesCounter(), is(3));
+        assertThat(stream.getFailedFilesCounter(), is(1));
+    }
+
+    @Test
+    public void testParallelReturnsQueuedEventsBeforeFailure() throws Exception {
+        File root = Files.createTempDirectory("files").toFile();
+        root.deleteOnExit();
+        for (String name : new String[]{"good.txt", "broken.txt"}) {
+            Files.write(root.toPath().resolve(name), new byte[]{1}).toFile().deleteOnExit();
+        }
+
+        RecursiveDirectoryStream stream = new RecursiveDirectoryStream(new SourceURL(root.toURI().toURL()));
+        stream.setPattern("*.txt");
+        stream.setParallelFiles(2);
+        stream.setSkipErrors(false);
+        stream.addStream("_", new SlowlyFailingStream());
+        stream.init();
+
+        //the broken file fails while the events of the good file wait in the queue.
+        Thread.sleep(1000);
+        int events = 0;
+        while (stream.read() != null) {
+            events++;
+        }
+        stream.close();
+
+        assertThat(events, is(10));
+    }
+
+    @Test
+    public void testWorkersUseConfiguredStream() throws Exception {
+        File root = Files.createTempDirectory("files").toFile();
+        root.deleteOnExit();
+        for (int i = 0; i < 3; i++) {
+            Files.write(root.toPath().resolve("good_" + i + ".txt"), new byte[]{1}).toFile().deleteOnExit();
+        }
+
+        SlowlyFailingStream inner = new SlowlyFailingStream();
+        inner.setTag("configured");
+        inner.setLimit(5L);
+        RecursiveDirectoryStream stream = new RecursiveDirectoryStream(new SourceURL(root.toURI().toURL()));
+        stream.setPattern("*.txt");
+        stream.setParallelFiles(2);
+        stream.addStream("_", inner);
+        stream.init();
+
+        int events = 0;
+        for (Data data = stream.read(); data != null; data = stream.read()) {
+            assertThat(data.get("tag"), is((Serializable) "configured"));
+            events++;
+        }
+        stream.close();
+
+        assertThat(events, is(15));
+    }
+
+    @Test
+    public void testCopiesReadDisjointFiles() throws Exception {
+        File root = createFolder(5);
+
+        Set<String> seen = new HashSet<>();
+        int numberOfCopies = 3;
+        for (int copy = 0; copy < numberOfCopies; copy++) {
+            RecursiveDirectoryStream stream = new RecursiveDirectoryStream(new SourceURL(root.toURI().toURL()));
+            stream.setPattern("**/*.json.gz");
+            stream.handleParallelism(copy, numberOfCopies);
+            stream.addStream("_", new ImageStream());
+            stream.init();
+
+            Set<String> filesOfCopy = new HashSet<>();
+            Data data = stream.read();
+            while (data != null) {
+                filesOfCopy.add((String) data.get("source_file"));
+                data = stream.read();
+            }
+            stream.close();
+
+            assertThat(filesOfCopy.isEmpty(), is(false));
+            for (String file : filesOfCopy) {
+                assertTrue("File " + file + " was read by more than one copy", seen.add(file));
+            }
+        }
+        assertThat(seen.size(), is(5));
+    }
+
+    @Test
+    public void testManifestSkipsFinishedFiles() throws Exception {
+        File root = createFolder(3);
+        File manifest = File.createTempFile("manifest", ".txt");
+        manifest.delete();
+        manifest.deleteOnExit();
+
+        RecursiveDirectoryStream stream = new RecursiveDirectoryStream(new SourceURL(root.toURI().toURL()));
+        stream.setPattern("**/*.json.gz");
+        stream.setManifest(new SourceURL(manifest.toURI().toURL()));
+        stream.addStream("_", new ImageStream());
+        stream.init();
+
+        //read the first file completely and stop in the middle of the second one.
+        String firstFile = (String) stream.read().get("source_file");
+        Data data = stream.read();
+        while (data.get("source_file").equals(firstFile)) {
+            data = stream.read();
+        }
+        stream.close();
+
+        stream = new RecursiveDirectoryStream(new SourceURL(root.toURI().toURL()));
+        stream.setPattern("does/not/match");
+        stream.setManifest(new SourceURL(manifest.toURI().toURL()));
+        stream.addStream("_", new ImageStream());
+        stream.init();
+
+        Set<String> filesRead = new HashSet<>();
+        data = stream.read();
+        while (data != null) {
+            filesRead.add((String) data.get("source_file"));
+            data = stream.read();
+        }
+        stream.close();
+
+        assertThat(filesRead.size(), is(2));
+        assertThat(filesRead.contains(firstFile), is(false));
+    }
+
+    @Test
+    public void testParallelManifestWaitsForProcessedEvents() throws Exception {
+        File root = createFolder(2);
+        File manifest = File.createTempFile("manifest", ".txt");
+        manifest.delete();
+        manifest.deleteOnExit();
+
+        RecursiveDirectoryStream stream = new RecursiveDirectoryStream(new SourceURL(root.toURI().toURL()));
+        stream.setPattern("**/*.json.gz");
+        stream.setManifest(new SourceURL(manifest.toURI().toURL()));
+        stream.setParallelFiles(2);
+        stream.addStream("_", new ImageStream());
+        stream.init();
+
+        //give the workers time to put all events into the queue while only one of them is taken.
+        stream.read();
+        Thread.sleep(3000);
+        stream.close();
+
+        ProcessingManifest processingManifest = ProcessingManifest.open(manifest.toPath());
+        for (Path file : processingManifest.listing()) {
+            assertThat(processingManifest.status(file), is(ProcessingManifest.Status.STARTED));
+        }
+        processingManifest.close();
+
+        //read all events. now both files are done.
+        stream = new RecursiveDirectoryStream(new SourceURL(root.toURI().toURL()));
+        stream.setPattern("**/*.json.gz");
+        stream.setManifest(new SourceURL(manifest.toURI().toURL()));
+        stream.setParallelFiles(2);
+        stream.addStream("_", new ImageStream());
+        stream.init();
+        while (stream.read() != null) {
+            //read until the end
+        }
+        stream.close();
+
+        processingManifest = ProcessingManifest.open(manifest.toPath());
+        for (Path file : processingManifest.listing()) {
+            assertThat(processingManifest.status(file), is(ProcessingManifest.Status.DONE));
+        }
+        processingManifest.close();
+    }
+
+    @Test(timeout = 30000)
+    public void testWatchReadsNewFiles() throws Exception {
+        File root = createFolder(1);
+
+        RecursiveDirectoryStream stream = new RecursiveDirectoryStream(new SourceURL(root.toURI().toURL()));
+        stream.setPattern("**/*.json.gz");
+        stream.setWatch(true);
+        stream.setPollInterval(100);
+        stream.setStopFile("STOP");
+        stream.addStream("_", new ImageStream());
+        stream.init();
+
+        Thread writer = new Thread(() -> {
+            try {
+                Thread.sleep(300);
+                Path sub = Files.createDirectories(root.toPath().resolve("run_new"));
+                sub.toFile().deleteOnExit();
+                Path file = sub.resolve("images_new.json.gz");
+                try (InputStream in = images.openStream()) {
+                    Files.copy(in, file);
+                }
+                file.toFile().deleteOnExit();
+                Thread.sleep(1000);
+                Files.createFile(root.toPath().resolve("STOP")).toFile().deleteOnExit();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        writer.start();
+
+        Set<String> filesRead = new HashSet<>();
+        Data data = stream.read();
+        while (data != null) {
+            filesRead.add((String) data.get("source_file"));
+            data = stream.read();
+        }
+        stream.close();
+        writer.join();
+
+        assertThat(filesRead.size(), is(2));
+    }
+}
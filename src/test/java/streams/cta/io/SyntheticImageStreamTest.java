@@ -0,0 +1,132 @@
+package streams.cta.io;
+
+import org.junit.Test;
+import stream.Data;
+import stream.flow.ForEach;
+import stream.io.SourceURL;
+import streams.cta.MergeByTelescope;
+import streams.cta.SplitByTelescope;
+import streams.cta.cleaning.TailCut;
+import streams.cta.features.Moments;
+import streams.hexmap.CameraMapping;
+import streams.hexmap.TelescopeGeometry;
+
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Check the generated events against the keys of the ImageStream and the Hillas parameters.
+ */
+public class SyntheticImageStreamTest {
+
+    private SyntheticImageStream stream(long seed) throws Exception {
+        SyntheticImageStream stream = new SyntheticImageStream();
+        stream.setSeed(seed);
+        stream.init();
+        return stream;
+    }
+
+    @Test
+    public void testSameKeysAsImageStream() throws Exception {
+        ImageStream images = new ImageStream(new SourceURL(ImageStream.class.getResource("/images.json.gz")));
+        images.init();
+        Data image = images.read();
+        images.close();
+
+        Data synthetic = stream(1).read();
+        for (String key : image.keySet()) {
+            if (key.startsWith("telescope:")) {
+                continue;
+            }
+            assertTrue("Missing key " + key, synthetic.containsKey(key));
+        }
+
+        int[] triggered = (int[]) synthetic.get(Names.TRIGGERED_TELESCOPE_IDS);
+        assertEquals(triggered.length, synthetic.get(Names.NUM_TRIGGERED_TELESCOPES));
+        assertTrue(triggered.length >= 2);
+        for (int id : triggered) {
+            double[] photons = (double[]) synthetic.get("telescope:" + id + ":raw:photons");
+            assertEquals(CameraMapping.getInstance().geometryFromId(id).numberOfPixel, photons.length);
+            assertTrue(synthetic.containsKey("telescope:" + id + ":type:id"));
+            assertTrue(synthetic.containsKey("telescope:" + id + ":type:name"));
+        }
+    }
+
+    @Test
+    public void testSeed() throws Exception {
+        SyntheticImageStream first = stream(42);
+        SyntheticImageStream second = stream(42);
+        for (int i = 0; i < 10; i++) {
+            Data a = first.read();
+            Data b = second.read();
+            assertEquals(new TreeSet<>(a.keySet()), new TreeSet<>(b.keySet()));
+            assertEquals(a.get("mc:energy"), b.get("mc:energy"));
+            int[] triggered = (int[]) a.get(Names.TRIGGERED_TELESCOPE_IDS);
+            assertArrayEquals(triggered, (int[]) b.get(Names.TRIGGERED_TELESCOPE_IDS));
+            String key = "telescope:" + triggered[0] + ":raw:photons";
+            assertArrayEquals((double[]) a.get(key), (double[]) b.get(key), 0);
+        }
+    }
+
+    @Test
+    public void testMultiplicity() throws Exception {
+        SyntheticImageStream stream = new SyntheticImageStream();
+        stream.setMultiplicity(40);
+        stream.init();
+        for (int i = 0; i < 5; i++) {
+            assertEquals(40, ((int[]) stream.read().get(Names.TRIGGERED_TELESCOPE_IDS)).length);
+        }
+    }
+
+    /**
+     * The major axis of bright images has to point in the direction of the impact point.
+     */
+    @Test
+    public void testHillasOrientation() throws Exception {
+        SyntheticImageStream stream = stream(7);
+        stream.setLimit(50L);
+
+        SplitByTelescope split = new SplitByTelescope();
+        split.setKey("@telescopes");
+        ForEach forEach = new ForEach();
+        forEach.setKey("@telescopes");
+        forEach.add(new TailCut());
+        forEach.add(new Moments());
+        MergeByTelescope merge = new MergeByTelescope();
+        merge.setKey("@telescopes");
+
+        int checked = 0;
+        int aligned = 0;
+        Data data = stream.read();
+        while (data != null) {
+            double coreX = (double) data.get("mc:core_x");
+            double coreY = (double) data.get("mc:core_y");
+            data = merge.process(forEach.process(split.process(data)));
+
+            for (int id : (int[]) data.get(Names.TRIGGERED_TELESCOPE_IDS)) {
+                double size = (double) data.get("telescope:" + id + ":shower:size");
+                double length = (double) data.get("telescope:" + id + ":shower:length");
+                double width = (double) data.get("telescope:" + id + ":shower:width");
+                if (!(size > 500) || !(length > 2 * width)) {
+                    continue;
+                }
+                TelescopeGeometry telescope = CameraMapping.getInstance().geometryFromId(id);
+                double expected = Math.atan2(coreY - telescope.positionY, coreX - telescope.positionX);
+                double delta = (double) data.get("telescope:" + id + ":shower:delta");
+                //delta is the orientation of the axis. It is only defined modulo pi.
+                double difference = Math.abs(Math.sin(delta - expected));
+                if (difference < 0.2) {
+                    aligned++;
+                }
+                checked++;
+            }
+            data = stream.read();
+        }
+        //noise and cleaning disturb some of the images.
+        assertTrue(checked > 10);
+        assertTrue(aligned + " of " + checked + " images are aligned", aligned > 0.7 * checked);
+    }
+}
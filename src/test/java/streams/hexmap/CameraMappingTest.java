@@ -0,0 +1,101 @@
+package streams.hexmap;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test whether the id-indexed geometry table contains the same information as the camera and
+ * telescope definitions it was built from.
+ */
+public class CameraMappingTest {
+
+    private final CameraMapping mapping = CameraMapping.getInstance();
+
+    @Test
+    public void testNeighboursInTable() throws Exception {
+        for (int id : new int[]{1, 5, 20, 100}) {
+            CameraGeometry camera = mapping.cameraFromId(id);
+            TelescopeGeometry geometry = mapping.geometryFromId(id);
+
+            assertEquals(camera.pixelXPositions.length, geometry.numberOfPixel);
+            assertEquals(geometry.numberOfPixel + 1, geometry.neighbourOffsets.length);
+
+            for (int pixel = 0; pixel < geometry.numberOfPixel; pixel++) {
+                int[] neighbours = Arrays.copyOfRange(
+                        geometry.neighbourIds,
+                        geometry.neighbourOffsets[pixel],
+                        geometry.neighbourOffsets[pixel + 1]
+                );
+                assertArrayEquals(camera.neighbours[pixel], neighbours);
+            }
+            assertArrayEquals(camera.pixelXPositions, geometry.pixelXPositions, 0.0);
+            assertArrayEquals(camera.pixelYPositions, geometry.pixelYPositions, 0.0);
+        }
+    }
+
+    @Test
+    public void testTelescopeInTable() throws Exception {
+        for (int id : new int[]{1, 5, 20, 100}) {
+            TelescopeDefinition telescope = mapping.telescopeFromId(id);
+            TelescopeGeometry geometry = mapping.geometryFromId(id);
+
+            assertEquals(id, geometry.telescopeId);
+            assertEquals(telescope.cameraName, geometry.cameraName);
+            assertEquals(telescope.opticalFocalLength, geometry.opticalFocalLength, 0.0);
+            assertEquals(telescope.telescopePositionX, geometry.positionX, 0.0);
+            assertEquals(telescope.telescopePositionY, geometry.positionY, 0.0);
+            assertEquals(telescope.telescopePositionZ, geometry.positionZ, 0.0);
+        }
+    }
+
+    @Test
+    public void testCamerasShareArrays() throws Exception {
+        TelescopeGeometry first = mapping.geometryFromId(1);
+        TelescopeGeometry second = mapping.geometryFromId(2);
+
+        assertEquals(first.cameraName, second.cameraName);
+        assertSame(first.pixelXPositions, second.pixelXPositions);
+        assertSame(first.neighbourIds, second.neighbourIds);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCameraFromIdZero() throws Exception {
+        mapping.cameraFromId(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCameraFromUnknownId() throws Exception {
+        mapping.cameraFromId(mapping.numberOfTelescopes() + 1);
+    }
+
+    @Test
+    public void testShowerIsSerializedWithoutGeometry() throws Exception {
+        Shower shower = new Shower(1);
+        shower.addPixel(42, 10.0);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(shower);
+        }
+        //ids and weights take 12 bytes per pixel. The pixel positions would add 16 more.
+        assertTrue(bytes.size() < 16 * shower.geometry().numberOfPixel);
+
+        Shower copy;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = (Shower) in.readObject();
+        }
+        assertSame(mapping.geometryFromId(1), copy.geometry());
+        assertTrue(copy.contains(42));
+        assertEquals(1, copy.size());
+    }
+}